@@ -0,0 +1,161 @@
+package io.thorenkoder.android.api.library;
+
+import io.thorenkoder.android.util.SDKUtil;
+import io.thorenkoder.android.util.SDKUtil.API;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A global cache of dexed libraries shared by every library folder and output directory.
+ *
+ * <p>Entries are keyed by the SHA-256 of the input jar together with the dexer, min API level and
+ * compilation mode, so an identical jar is only ever dexed once. Cached dex files are hard linked
+ * into a library folder when both live on the same file system and copied otherwise. The least
+ * recently used entries are evicted once the cache grows past its size limit.
+ *
+ * @author EUP
+ */
+public class DexCache {
+
+  private static final String DEX_EXTENSION = ".dex";
+
+  private final File directory;
+  private final long maxSize;
+
+  /**
+   * @param directory the folder holding the cache entries
+   * @param maxSize the total size in bytes the cache is trimmed to after every store
+   */
+  public DexCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Creates the key of a cache entry.
+   *
+   * @param jarHash the SHA-256 of the jar being dexed
+   * @param dexer the dexer used
+   * @param minApiLevel the min API level used
+   * @param mode the compilation mode used
+   */
+  public static String key(String jarHash, String dexer, int minApiLevel, String mode) {
+    return String.format("%s-%s-%d-%s", jarHash, dexer, minApiLevel, mode);
+  }
+
+  /**
+   * Places the cached dex files of an entry into a library folder.
+   *
+   * @param key the entry key
+   * @param targetDirectory the library folder to place the dex files in
+   * @return true if the entry was cached and restored
+   */
+  public synchronized boolean restore(String key, File targetDirectory) throws IOException {
+    File entry = new File(directory, key);
+    File[] dexFiles = listDexFiles(entry);
+    if (dexFiles.length == 0) {
+      return false;
+    }
+    for (File dexFile : dexFiles) {
+      File target = new File(targetDirectory, dexFile.getName());
+      FileUtils.deleteQuietly(target);
+      if (!link(dexFile, target)) {
+        FileUtils.copyFile(dexFile, target);
+      }
+    }
+    // mark as recently used
+    entry.setLastModified(System.currentTimeMillis());
+    return true;
+  }
+
+  /**
+   * Stores the dex files of a library folder under a key and trims the cache.
+   *
+   * @param key the entry key
+   * @param sourceDirectory the library folder holding freshly dexed files
+   */
+  public synchronized void store(String key, File sourceDirectory) throws IOException {
+    File[] dexFiles = listDexFiles(sourceDirectory);
+    if (dexFiles.length == 0) {
+      return;
+    }
+    File entry = new File(directory, key);
+    File staging = new File(directory, key + ".tmp");
+    FileUtils.deleteQuietly(staging);
+    FileUtils.forceMkdir(staging);
+    for (File dexFile : dexFiles) {
+      File target = new File(staging, dexFile.getName());
+      if (!link(dexFile, target)) {
+        FileUtils.copyFile(dexFile, target);
+      }
+    }
+    FileUtils.deleteQuietly(entry);
+    // a half written entry must never be visible under its key
+    if (!staging.renameTo(entry)) {
+      FileUtils.deleteQuietly(staging);
+      throw new IOException("Failed to store dex cache entry " + key);
+    }
+    entry.setLastModified(System.currentTimeMillis());
+    evict();
+  }
+
+  /** Deletes the least recently used entries until the cache fits in its size limit. */
+  private void evict() {
+    File[] entries = directory.listFiles(File::isDirectory);
+    if (entries == null) {
+      return;
+    }
+    trim(entries, maxSize);
+  }
+
+  /**
+   * Deletes the least recently used of the given entries until the rest fit in a size limit.
+   * Entries may be files or folders, their last modified time marks when they were last used.
+   *
+   * @param entries the cache entries
+   * @param maxSize the total size in bytes the entries are trimmed to
+   */
+  static void trim(File[] entries, long maxSize) {
+    Arrays.sort(entries, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+    List<Long> sizes = new ArrayList<>();
+    long totalSize = 0;
+    for (File entry : entries) {
+      long size = FileUtils.sizeOf(entry);
+      sizes.add(size);
+      totalSize += size;
+    }
+    for (int i = 0; i < entries.length && totalSize > maxSize; i++) {
+      FileUtils.deleteQuietly(entries[i]);
+      totalSize -= sizes.get(i);
+    }
+  }
+
+  private static File[] listDexFiles(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(DEX_EXTENSION));
+    return files != null ? files : new File[0];
+  }
+
+  /**
+   * Hard links a file, java.nio.file is only available from Android 8.
+   *
+   * @return false if the file has to be copied instead
+   */
+  private static boolean link(File source, File target) {
+    if (!SDKUtil.isAtLeast(API.ANDROID_8)) {
+      return false;
+    }
+    try {
+      Files.createLink(target.toPath(), source.toPath());
+      return true;
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      // different file systems or no link support on external storage
+      return false;
+    }
+  }
+}
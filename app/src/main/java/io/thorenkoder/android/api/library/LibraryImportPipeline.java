@@ -0,0 +1,224 @@
+package io.thorenkoder.android.api.library;
+
+import eup.dependency.haven.api.CachedLibrary;
+import eup.dependency.haven.callback.ResolutionListener;
+import eup.dependency.haven.model.Dependency;
+import eup.dependency.haven.repository.StorageFactory;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports libraries as a pipeline of concurrent stages: download, extract and dex.
+ *
+ * <p>Attached to a resolver as its {@link ResolutionListener}, a library is downloaded as soon as
+ * it resolves, extracted as soon as its download completes and dexed as soon as it is extracted.
+ * Stages are connected by bounded queues, so a slow stage holds back the ones before it instead
+ * of piling up work, and network latency is hidden behind dexing.
+ *
+ * @author EUP
+ */
+public class LibraryImportPipeline implements ResolutionListener {
+
+    public interface Callback {
+        /**
+         * Called once every stage has drained.
+         *
+         * @param processedCount the number of libraries that were extracted and dexed
+         * @param skippedCount the number of libraries skipped since they were already processed
+         * @param success true if no library failed in any stage
+         */
+        void done(int processedCount, int skippedCount, boolean success);
+    }
+
+    /** Libraries waiting in front of a stage before the previous stage blocks. */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /** Downloads are network bound, a few run at once to hide latency. */
+    private static final int DOWNLOAD_WORKERS = 4;
+
+    /** Extraction is disk bound and short. */
+    private static final int EXTRACT_WORKERS = 2;
+
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final StorageFactory storageFactory;
+    private final LocalLibraryManager libraryManager;
+    private final Callback callback;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // dependencies are submitted once by coordinates, the resolver may see the same one twice
+    private final Set<String> submitted = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger processedCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private final AtomicBoolean success = new AtomicBoolean(true);
+    private volatile boolean cancelled;
+
+    private final Stage<LocalLibrary> dexStage;
+    private final Stage<CachedLibrary> extractStage;
+    private final Stage<Dependency> downloadStage;
+
+    public LibraryImportPipeline(
+            StorageFactory storageFactory, LocalLibraryManager libraryManager, Callback callback) {
+        this.storageFactory = storageFactory;
+        this.libraryManager = libraryManager;
+        this.callback = callback;
+
+        dexStage = new Stage<>("dex", libraryManager.getDexParallelism(), null, this::dex);
+        extractStage = new Stage<>("extract", EXTRACT_WORKERS, dexStage, this::extract);
+        downloadStage = new Stage<>("download", DOWNLOAD_WORKERS, extractStage, this::download);
+        dexStage.start();
+        extractStage.start();
+        downloadStage.start();
+    }
+
+    @Override
+    public void onDependencyResolved(Dependency dependency) {
+        if (dependency == null || cancelled || !submitted.add(dependency.toString())) {
+            return;
+        }
+        try {
+            // blocks the resolver while the downloads are backed up
+            downloadStage.submit(dependency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onResolutionFinished() {
+        downloadStage.close();
+    }
+
+    /** Stops every stage, libraries that are still in flight are abandoned. */
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+    }
+
+    private void download(Dependency dependency) throws InterruptedException {
+        CachedLibrary cachedLibrary = storageFactory.downloadLibrary(dependency);
+        if (cachedLibrary == null) {
+            // the storage factory has already reported why
+            success.set(false);
+            return;
+        }
+        extractStage.submit(cachedLibrary);
+    }
+
+    private void extract(CachedLibrary cachedLibrary) throws InterruptedException {
+        LocalLibrary localLibrary = libraryManager.createLocalLibrary(cachedLibrary);
+        try {
+            if (libraryManager.extractLibrary(localLibrary)) {
+                processedCount.incrementAndGet();
+                dexStage.submit(localLibrary);
+            } else if (libraryManager.isProcessed(localLibrary)) {
+                skippedCount.incrementAndGet();
+            } else {
+                processedCount.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            libraryManager.reportError("Failed to process " + localLibrary.getLibraryName() + ": " + e.getMessage());
+            success.set(false);
+        }
+    }
+
+    private void dex(LocalLibrary localLibrary) {
+        if (!libraryManager.dexLibrary(localLibrary)) {
+            success.set(false);
+        }
+    }
+
+    private void finish() {
+        executor.shutdown();
+        if (!cancelled && callback != null) {
+            callback.done(processedCount.get(), skippedCount.get(), success.get());
+        }
+    }
+
+    private interface Worker<T> {
+        void process(T item) throws InterruptedException;
+    }
+
+    /**
+     * A bounded queue drained by a fixed number of workers. Closing a stage lets its workers finish
+     * the queued items, the last worker to stop closes the next stage.
+     */
+    private final class Stage<T> {
+
+        private final Object endOfInput = new Object();
+        private final String name;
+        private final int workers;
+        private final Stage<?> next;
+        private final Worker<T> worker;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicInteger running = new AtomicInteger();
+
+        Stage(String name, int workers, Stage<?> next, Worker<T> worker) {
+            this.name = name;
+            this.workers = Math.max(1, workers);
+            this.next = next;
+            this.worker = worker;
+        }
+
+        void start() {
+            running.set(workers);
+            for (int i = 0; i < workers; i++) {
+                executor.execute(this::run);
+            }
+        }
+
+        void submit(T item) throws InterruptedException {
+            put(item);
+        }
+
+        void close() {
+            try {
+                for (int i = 0; i < workers; i++) {
+                    put(endOfInput);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(Object item) throws InterruptedException {
+            // the resolver thread is not interrupted on cancel, so never block on a dead stage
+            while (!cancelled && !queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                // wait for room
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void run() {
+            Thread.currentThread().setName("library-import-" + name);
+            try {
+                Object item;
+                while ((item = queue.take()) != endOfInput) {
+                    try {
+                        worker.process((T) item);
+                    } catch (RuntimeException e) {
+                        libraryManager.reportError("Library " + name + " failed: " + e);
+                        success.set(false);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // cancelled
+                return;
+            }
+            if (running.decrementAndGet() == 0) {
+                if (next != null) {
+                    next.close();
+                } else {
+                    finish();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.thorenkoder.android.api.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Records how a local library was produced.
+ *
+ * <p>The manifest is stored as {@code manifest.json} in every processed library folder and keeps
+ * the library coordinates, the hash of the artifact it was extracted from, the dexer and min API
+ * level used and the direct dependencies of the library, so an already processed library can be
+ * recognised without resolving or downloading it again.
+ *
+ * @author EUP
+ */
+public class LibraryManifest {
+
+  public static final String FILE_NAME = "manifest.json";
+
+  private String coordinates;
+  private String sourceHash;
+  private String dexer;
+  private int minApiLevel;
+  private final List<String> dependencies = new ArrayList<>();
+
+  public String getCoordinates() {
+    return this.coordinates;
+  }
+
+  public void setCoordinates(String coordinates) {
+    this.coordinates = coordinates;
+  }
+
+  /**
+   * @return the SHA-256 of the source artifact (aar or jar)
+   */
+  public String getSourceHash() {
+    return this.sourceHash;
+  }
+
+  public void setSourceHash(String sourceHash) {
+    this.sourceHash = sourceHash;
+  }
+
+  public String getDexer() {
+    return this.dexer;
+  }
+
+  public void setDexer(String dexer) {
+    this.dexer = dexer;
+  }
+
+  public int getMinApiLevel() {
+    return this.minApiLevel;
+  }
+
+  public void setMinApiLevel(int minApiLevel) {
+    this.minApiLevel = minApiLevel;
+  }
+
+  /**
+   * @return the coordinates of the direct dependencies of the library
+   */
+  public List<String> getDependencies() {
+    return this.dependencies;
+  }
+
+  public void addDependency(String coordinates) {
+    this.dependencies.add(coordinates);
+  }
+
+  /**
+   * Checks whether the library was dexed with the given configuration.
+   *
+   * @param dexer the dexer that would be used now
+   * @param minApiLevel the min API level that would be used now
+   * @return true if the recorded output can be reused as is
+   */
+  public boolean isCurrent(String dexer, int minApiLevel) {
+    return Objects.equals(this.dexer, dexer) && this.minApiLevel == minApiLevel;
+  }
+
+  /**
+   * Reads the manifest of a library folder.
+   *
+   * @param libraryDirectory the processed library folder
+   * @return the manifest, or null if it is missing or unreadable
+   */
+  public static LibraryManifest read(File libraryDirectory) {
+    File file = new File(libraryDirectory, FILE_NAME);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      JSONObject json = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+      LibraryManifest manifest = new LibraryManifest();
+      manifest.setCoordinates(json.getString("coordinates"));
+      manifest.setSourceHash(json.optString("sourceHash", null));
+      manifest.setDexer(json.getString("dexer"));
+      manifest.setMinApiLevel(json.getInt("minApiLevel"));
+      JSONArray array = json.optJSONArray("dependencies");
+      if (array != null) {
+        for (int i = 0; i < array.length(); i++) {
+          manifest.addDependency(array.getString(i));
+        }
+      }
+      return manifest;
+    } catch (IOException | JSONException e) {
+      // treat a corrupt manifest as a library that has to be processed again
+      return null;
+    }
+  }
+
+  /**
+   * Writes the manifest into a library folder.
+   *
+   * @param libraryDirectory the processed library folder
+   */
+  public void write(File libraryDirectory) throws IOException {
+    JSONObject json = new JSONObject();
+    json.put("coordinates", coordinates);
+    json.put("sourceHash", sourceHash);
+    json.put("dexer", dexer);
+    json.put("minApiLevel", minApiLevel);
+    json.put("dependencies", new JSONArray(dependencies));
+    FileUtils.write(new File(libraryDirectory, FILE_NAME), json.toString(2), StandardCharsets.UTF_8);
+  }
+}
@@ -1,18 +1,20 @@
 package io.thorenkoder.android.api.library;
 
+import android.util.Xml;
 import eup.dependency.haven.api.CachedLibrary;
 import eup.dependency.haven.model.Coordinates;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.commons.io.FileUtils;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import org.apache.commons.io.FilenameUtils;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Representation of a local library in Sketchware Pro.
@@ -26,6 +28,13 @@ import org.apache.commons.io.FilenameUtils;
  */
 public class LocalLibrary extends CachedLibrary {
 
+  // top-level files and folders of an aar that make up a local library, classes.jar stays
+  // extracted because Sketchware Pro puts it on the javac classpath of projects using the library
+  private static final List<String> AAR_FILES =
+      Arrays.asList("classes.jar", "AndroidManifest.xml", "proguard.txt");
+  private static final List<String> AAR_DIRECTORIES = Arrays.asList("res", "jni", "assets");
+  private static final String MANIFEST_FILE = "AndroidManifest.xml";
+
   private File sourcePath;
   private String libraryName;
 
@@ -104,52 +113,76 @@ public class LocalLibrary extends CachedLibrary {
   /**
    * Finds the package name for an aar file.
    *
+   * <p>Only the top-level AndroidManifest.xml is read, straight from the aar when it is still
+   * available, and parsing stops at the manifest start tag.
+   *
    * @return the packaging
    */
   public String findPackageName() throws IOException {
-    // List all files in the directory, if true search all subdirectories
-    Collection<File> fileCollection = FileUtils.listFiles(sourcePath, new String[] {"xml"}, true);
     // Step 1: Check the AndroidManifest.xml file
-    for (File manifestFile : fileCollection) {
-      if (manifestFile.getName().equals("AndroidManifest.xml")) {
-        String content = FileUtils.readFileToString(manifestFile, StandardCharsets.UTF_8);
-        Pattern packagingPattern = Pattern.compile("<manifest.*package=\"(.*?)\"", Pattern.DOTALL);
-        Matcher m = packagingPattern.matcher(content);
-        if (m.find()) {
-          if (m.group(1) != null) return m.group(1);
+    String packageName = null;
+    File sourceFile = getSourceFile();
+    if (sourceFile != null && sourceFile.isFile() && isAar()) {
+      try (ZipFile aar = new ZipFile(sourceFile)) {
+        ZipEntry manifestEntry = aar.getEntry(MANIFEST_FILE);
+        if (manifestEntry != null) {
+          try (InputStream inputStream = aar.getInputStream(manifestEntry)) {
+            packageName = readPackageName(inputStream);
+          }
+        }
+      }
+    } else {
+      File manifestFile = new File(sourcePath, MANIFEST_FILE);
+      if (manifestFile.isFile()) {
+        try (InputStream inputStream = new FileInputStream(manifestFile)) {
+          packageName = readPackageName(inputStream);
         }
       }
     }
+    if (packageName != null && !packageName.isEmpty()) {
+      return packageName;
+    }
     // Step 2: Use dependency coordinates as a fallback
     return getLibraryPom().getCoordinates().getGroupId();
   }
 
-  public void deleteUnnecessaryFiles() throws IOException {
-    // Define the list of valid top-level files and directories
-    List<String> validTopLevel =
-        Arrays.asList(
-            "res",
-            "classes.dex",
-            "classes.jar",
-            "config",
-            "AndroidManifest.xml",
-            "jni",
-            "assets",
-            "proguard.txt");
-
-    // List all files in the top-level directory (not recursively)
-    File[] topLevelFiles = sourcePath.listFiles();
-
-    if (topLevelFiles != null) {
-      for (File file : topLevelFiles) {
-        if (!validTopLevel.contains(file.getName())) {
-          if (file.isFile()) {
-            FileUtils.forceDelete(file);
-          } else if (file.isDirectory()) {
-            FileUtils.deleteDirectory(file);
-          }
+  /**
+   * Reads the package attribute of a manifest.
+   *
+   * @return the package, or null if the manifest has none or cannot be parsed
+   */
+  private static String readPackageName(InputStream inputStream) throws IOException {
+    try {
+      XmlPullParser parser = Xml.newPullParser();
+      parser.setInput(inputStream, null);
+      int eventType;
+      while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+        if (eventType == XmlPullParser.START_TAG) {
+          // the package is on the root element, nothing after it is needed
+          return "manifest".equals(parser.getName())
+              ? parser.getAttributeValue(null, "package")
+              : null;
         }
       }
+      return null;
+    } catch (XmlPullParserException e) {
+      // a malformed manifest falls back to the groupId like a missing one, read errors still fail
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether an aar entry is needed by a local library, so unneeded entries are never
+   * extracted.
+   *
+   * @param entryName the name of the entry in the aar
+   * @return true if the entry should be extracted
+   */
+  public static boolean isLibraryEntry(String entryName) {
+    int slash = entryName.indexOf('/');
+    if (slash == -1) {
+      return AAR_FILES.contains(entryName);
     }
+    return AAR_DIRECTORIES.contains(entryName.substring(0, slash));
   }
 }
@@ -6,7 +6,12 @@ import com.android.tools.r8.CompilationMode;
 import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.OutputMode;
+import com.android.tools.r8.origin.ArchiveEntryOrigin;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
 import eup.dependency.haven.api.CachedLibrary;
+import eup.dependency.haven.api.ProcessedLibraryIndex;
+import eup.dependency.haven.model.Dependency;
 import eup.dependency.haven.repository.StorageFactory; // FIX: Added the missing import
 import io.thorenkoder.android.api.exception.DexFailedException;
 import io.thorenkoder.android.util.BaseUtil;
@@ -14,36 +19,79 @@ import io.thorenkoder.android.util.SDKUtil;
 import io.thorenkoder.android.util.SDKUtil.API;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import mod.agus.jcoderz.dex.DexException;
+import mod.agus.jcoderz.dex.DexFormat;
 import mod.agus.jcoderz.dx.command.dexer.Main;
 import mod.hey.studios.lib.JarCheck;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 /**
  * A local library manager for Sketchware Pro.
  *
  * @author EUP
  */
-public class LocalLibraryManager {
+public class LocalLibraryManager implements ProcessedLibraryIndex {
 
     public interface TaskListener {
         void info(String message);
         void error(String message);
     }
 
+    /** Rough heap needed by a single dexer run on a typical library jar. */
+    private static final long DEX_MEMORY_PER_TASK = 64L * 1024 * 1024;
+
+    /** Newest class file version dx takes without desugaring, Java 8. */
+    private static final int DX_MAX_CLASS_VERSION = 52;
+
+    /** Total size the shared dex cache is trimmed to. */
+    private static final long DEX_CACHE_MAX_SIZE = 512L * 1024 * 1024;
+
+    /** Total size the dx per-class cache is trimmed to. */
+    private static final long CLASS_DEX_CACHE_MAX_SIZE = 256L * 1024 * 1024;
+
     private TaskListener listener;
     private File newDirectory;
     private File androidJar;
     private File lambdaStubs;
-    private Map<String, File> localLibraryJar = new HashMap<>();
+    private DexCache dexCache;
+    private File classDexCacheDirectory;
+    /** Held shared by dx runs using the per-class cache, exclusively while trimming it. */
+    private final ReadWriteLock classDexCacheLock = new ReentrantReadWriteLock();
+    private Map<String, LocalLibrary> localLibraries = new HashMap<>();
 
     public LocalLibraryManager(StorageFactory storageFactory, File newDirectory) {
         this.newDirectory = newDirectory;
+        if (storageFactory != null && storageFactory.getCacheDirectory() != null) {
+            File cacheDirectory = storageFactory.getCacheDirectory();
+            // every folder under the cache directory is taken for a repository, keep ours beside it
+            FileUtils.deleteQuietly(new File(cacheDirectory, "dex"));
+            FileUtils.deleteQuietly(new File(cacheDirectory, "dx-classes"));
+            this.dexCache = new DexCache(getCacheSibling(cacheDirectory, "dex"), DEX_CACHE_MAX_SIZE);
+            this.classDexCacheDirectory = getCacheSibling(cacheDirectory, "dx-classes");
+        }
+    }
+
+    private static File getCacheSibling(File cacheDirectory, String name) {
+        File absolute = cacheDirectory.getAbsoluteFile();
+        return new File(absolute.getParentFile(), absolute.getName() + "-" + name);
     }
 
     public void setCompileResourcesClassPath(File androidJar, File lambdaStubs) {
@@ -55,109 +103,456 @@ public class LocalLibraryManager {
         this.listener = listener;
     }
 
+    void reportError(String message) {
+        if (listener != null) listener.error(message);
+    }
+
     public boolean copyCachedLibrary(List<CachedLibrary> cachedLibraries) {
         if (cachedLibraries == null || cachedLibraries.isEmpty()) {
             return true;
         }
 
-        localLibraryJar.clear();
+        localLibraries.clear();
         boolean allLibrariesProcessedSuccessfully = true;
 
         for (CachedLibrary cachedLibrary : cachedLibraries) {
-            LocalLibrary localLibrary = new LocalLibrary();
-            localLibrary.setLibraryName(cachedLibrary.getLibraryPom().getCoordinates().toString());
-            localLibrary.setLibraryPom(cachedLibrary.getLibraryPom());
-            localLibrary.setSourceFile(cachedLibrary.getSourceFile());
-
-            File finalLibraryDir = new File(newDirectory, localLibrary.getLibraryName());
-            localLibrary.setSourcePath(finalLibraryDir);
-
+            LocalLibrary localLibrary = createLocalLibrary(cachedLibrary);
             try {
-                if (finalLibraryDir.exists()) {
-                    if (new File(finalLibraryDir, "classes.dex").exists()) {
-                         if (listener != null) listener.info("Library " + localLibrary.getLibraryName() + " already processed. Skipping.");
-                         continue;
-                    }
-                    FileUtils.deleteDirectory(finalLibraryDir);
-                }
-                FileUtils.forceMkdir(finalLibraryDir);
-
-                File sourceFile = cachedLibrary.getSourceFile();
-                if (listener != null) listener.info("Processing: " + localLibrary.getLibraryName());
-
-                if (localLibrary.isJar()) {
-                    if (listener != null) listener.info("Copying and renaming " + sourceFile.getName());
-                    FileUtils.copyFile(sourceFile, new File(finalLibraryDir, "classes.jar"));
-                } else if (localLibrary.isAar()) {
-                    if (listener != null) listener.info("Decompressing " + sourceFile.getName());
-                    BaseUtil.unzip(sourceFile.getAbsolutePath(), finalLibraryDir.getAbsolutePath());
-                    File config = new File(finalLibraryDir, "config");
-                    FileUtils.write(config, localLibrary.findPackageName(), StandardCharsets.UTF_8);
-                    localLibrary.deleteUnnecessaryFiles();
+                if (extractLibrary(localLibrary)) {
+                    localLibraries.put(localLibrary.getLibraryName(), localLibrary);
                 }
+            } catch (IOException | RuntimeException e) {
+                if (listener != null) listener.error("Failed to process " + localLibrary.getLibraryName() + ": " + e.getMessage());
+                allLibrariesProcessedSuccessfully = false;
+            }
+        }
+
+        if (!localLibraries.isEmpty() && !dexLibraries(new ArrayList<>(localLibraries.values()))) {
+            allLibrariesProcessedSuccessfully = false;
+        }
 
-                File classesJar = localLibrary.getJarFile();
-                if (classesJar.exists()) {
-                    localLibraryJar.put(localLibrary.getLibraryName(), classesJar);
-                } else if (localLibrary.isAar()) {
-                    if (listener != null) listener.error("Critical error: classes.jar not found in " + localLibrary.getLibraryName());
-                    allLibrariesProcessedSuccessfully = false;
+        return allLibrariesProcessedSuccessfully;
+    }
+
+    /**
+     * Creates the local library a downloaded library is processed into.
+     */
+    public LocalLibrary createLocalLibrary(CachedLibrary cachedLibrary) {
+        LocalLibrary localLibrary = new LocalLibrary();
+        localLibrary.setLibraryName(cachedLibrary.getLibraryPom().getCoordinates().toString());
+        localLibrary.setLibraryPom(cachedLibrary.getLibraryPom());
+        localLibrary.setSourceFile(cachedLibrary.getSourceFile());
+        localLibrary.setSourcePath(new File(newDirectory, localLibrary.getLibraryName()));
+        return localLibrary;
+    }
+
+    /**
+     * Copies or extracts a downloaded library into its folder.
+     *
+     * @return true if the library has to be dexed, false if its output is already current
+     * @throws IOException if the library cannot be processed, its folder is removed again
+     */
+    public boolean extractLibrary(LocalLibrary localLibrary) throws IOException {
+        File finalLibraryDir = localLibrary.getSourcePath();
+        File sourceFile = localLibrary.getSourceFile();
+        LibraryManifest manifest = readCurrentManifest(finalLibraryDir);
+        if (manifest != null
+                && (sourceFile == null || BaseUtil.sha256(sourceFile).equals(manifest.getSourceHash()))) {
+            if (listener != null) listener.info("Library " + localLibrary.getLibraryName() + " already processed. Skipping.");
+            return false;
+        }
+        if (sourceFile == null) {
+            throw new IOException("No artifact available to process " + localLibrary.getLibraryName());
+        }
+
+        try {
+            if (finalLibraryDir.exists()) {
+                if (manifest == null && LibraryManifest.read(finalLibraryDir) == null
+                        && localLibrary.getDexFile().exists()) {
+                    // Processed before manifests were recorded, adopt the existing output
+                    writeManifest(localLibrary);
+                    if (listener != null) listener.info("Library " + localLibrary.getLibraryName() + " already processed. Skipping.");
+                    return false;
                 }
+                FileUtils.deleteDirectory(finalLibraryDir);
+            }
+            FileUtils.forceMkdir(finalLibraryDir);
 
-            } catch (Exception e) {
-                if (listener != null) listener.error("Failed to process " + localLibrary.getLibraryName() + ": " + e.getMessage());
-                allLibrariesProcessedSuccessfully = false;
-                try {
-                    if (finalLibraryDir.exists()) FileUtils.deleteDirectory(finalLibraryDir);
-                } catch (IOException ex) { /* Ignore cleanup error */ }
+            if (listener != null) listener.info("Processing: " + localLibrary.getLibraryName());
+
+            if (localLibrary.isJar()) {
+                if (listener != null) listener.info("Copying and renaming " + sourceFile.getName());
+                FileUtils.copyFile(sourceFile, new File(finalLibraryDir, "classes.jar"));
+            } else if (localLibrary.isAar()) {
+                if (listener != null) listener.info("Decompressing " + sourceFile.getName());
+                // only the entries a local library keeps are extracted
+                BaseUtil.unzip(sourceFile, finalLibraryDir, LocalLibrary::isLibraryEntry);
+                File config = new File(finalLibraryDir, "config");
+                FileUtils.write(config, localLibrary.findPackageName(), StandardCharsets.UTF_8);
+            }
+
+            if (localLibrary.getJarFile().exists()) {
+                return true;
             }
+            if (localLibrary.isAar()) {
+                throw new IOException("Critical error: classes.jar not found in " + localLibrary.getLibraryName());
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(finalLibraryDir);
+            throw e;
         }
+    }
+
+    /**
+     * Dexes the given libraries concurrently, reporting the outcome of every library as soon as
+     * it completes.
+     *
+     * @return true if every library was dexed successfully
+     */
+    private boolean dexLibraries(List<LocalLibrary> libraries) {
+        // Largest jars first so the longest tasks do not end up trailing on a single worker
+        libraries.sort((a, b) -> Long.compare(b.getJarFile().length(), a.getJarFile().length()));
+
+        int parallelism = Math.min(getDexParallelism(), libraries.size());
+        if (listener != null) listener.info("Starting dexing for " + libraries.size() + " libraries using " + parallelism + " worker(s)...");
 
-        if (!localLibraryJar.isEmpty()) {
-            if (listener != null) listener.info("Starting dexing for " + localLibraryJar.size() + " libraries...");
-            for (Map.Entry<String, File> entry : localLibraryJar.entrySet()) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+        for (LocalLibrary localLibrary : libraries) {
+            completionService.submit(() -> dexLibrary(localLibrary));
+        }
+
+        boolean success = true;
+        try {
+            for (int i = 0; i < libraries.size(); i++) {
                 try {
-                    compileJar(entry.getValue());
-                } catch (Exception e) {
-                    if (listener != null) listener.error("Dexing failed for " + entry.getKey() + ": " + e.getMessage());
-                    allLibrariesProcessedSuccessfully = false;
+                    success &= completionService.take().get();
+                } catch (ExecutionException e) {
+                    if (listener != null) listener.error("Dexing failed: " + e.getCause());
+                    success = false;
                 }
             }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
         }
+        executor.shutdown();
+        return success;
+    }
 
-        return allLibrariesProcessedSuccessfully;
+    /**
+     * Dexes a single extracted library, reusing cached output when the same classes were dexed
+     * before, and records its manifest.
+     *
+     * @return true if the library was dexed successfully
+     */
+    public boolean dexLibrary(LocalLibrary localLibrary) {
+        long startTime = System.currentTimeMillis();
+        try {
+            String cacheKey = null;
+            if (dexCache != null) {
+                cacheKey = DexCache.key(hashClasses(localLibrary), getDexer(), getMinApiLevel(), getDexMode());
+            }
+            if (cacheKey != null && dexCache.restore(cacheKey, localLibrary.getSourcePath())) {
+                if (listener != null) listener.info("Reused cached dex output for " + localLibrary.getLibraryName());
+            } else {
+                compileLibrary(localLibrary);
+                if (cacheKey != null) {
+                    dexCache.store(cacheKey, localLibrary.getSourcePath());
+                }
+            }
+            writeManifest(localLibrary);
+            if (listener != null) listener.info("Dexed " + localLibrary.getLibraryName() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+            return true;
+        } catch (Exception e) {
+            if (listener != null) listener.error("Dexing failed for " + localLibrary.getLibraryName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Number of libraries to dex at once, bounded by the cores and the heap that is still free.
+     */
+    public int getDexParallelism() {
+        Runtime runtime = Runtime.getRuntime();
+        long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        int byMemory = (int) Math.max(1, freeMemory / DEX_MEMORY_PER_TASK);
+        return Math.max(1, Math.min(runtime.availableProcessors(), byMemory));
+    }
+
+    @Override
+    public List<Dependency> getProcessedDependencies(Dependency dependency) {
+        LocalLibrary localLibrary = new LocalLibrary();
+        localLibrary.setLibraryName(dependency.getCoordinates().toString());
+        LibraryManifest manifest = readCurrentManifest(new File(newDirectory, localLibrary.getLibraryName()));
+        if (manifest == null) {
+            return null;
+        }
+        List<Dependency> dependencies = new ArrayList<>();
+        for (String declaration : manifest.getDependencies()) {
+            try {
+                dependencies.add(new Dependency(declaration));
+            } catch (IllegalArgumentException e) {
+                // a malformed child would not have resolved either
+            }
+        }
+        return dependencies;
     }
 
-    private void compileJar(File jarFile) throws CompilationFailedException, IOException {
+    /**
+     * Returns whether the folder of a library holds processed output that is current, which is
+     * the case after {@link #extractLibrary} skipped an already processed library.
+     */
+    public boolean isProcessed(LocalLibrary localLibrary) {
+        return readCurrentManifest(localLibrary.getSourcePath()) != null;
+    }
+
+    /**
+     * Reads the manifest of a processed library folder, if its output is current.
+     *
+     * @return the manifest, or null if the library has to be processed again
+     */
+    private LibraryManifest readCurrentManifest(File libraryDir) {
+        LibraryManifest manifest = LibraryManifest.read(libraryDir);
+        if (manifest == null
+                || !manifest.isCurrent(getDexer(), getMinApiLevel())
+                || !new File(libraryDir, "classes.dex").exists()) {
+            return null;
+        }
+        return manifest;
+    }
+
+    private void writeManifest(LocalLibrary localLibrary) throws IOException {
+        LibraryManifest manifest = new LibraryManifest();
+        manifest.setCoordinates(localLibrary.getLibraryPom().getCoordinates().toString());
+        manifest.setSourceHash(BaseUtil.sha256(localLibrary.getSourceFile()));
+        manifest.setDexer(getDexer());
+        manifest.setMinApiLevel(getMinApiLevel());
+        for (Dependency dependency : localLibrary.getLibraryPom().getDependencies()) {
+            if (dependency != null && dependency.getCoordinates() != null) {
+                manifest.addDependency(dependency.getCoordinates().toString());
+            }
+        }
+        manifest.write(localLibrary.getSourcePath());
+    }
+
+    private String getDexer() {
+        return SDKUtil.isAtLeast(API.ANDROID_8) ? "d8" : "dx";
+    }
+
+    private String getDexMode() {
+        // dx has no release mode and always keeps debug info
+        return SDKUtil.isAtLeast(API.ANDROID_8) ? "release" : "debug";
+    }
+
+    private int getMinApiLevel() {
+        return SDKUtil.isAtLeast(API.ANDROID_8) ? Build.VERSION.SDK_INT : DexFormat.API_NO_EXTENDED_OPCODES;
+    }
+
+    /**
+     * Dexes a library into its folder. Classes are read from the downloaded artifact itself, for an
+     * aar the nested classes.jar is streamed straight out of it, so the extracted copy is never
+     * read back.
+     */
+    private void compileLibrary(LocalLibrary localLibrary) throws CompilationFailedException, IOException {
+        File sourceFile = localLibrary.getSourceFile();
+        File outputDir = localLibrary.getSourcePath();
+
         if (SDKUtil.isAtLeast(API.ANDROID_8)) {
             D8Command.Builder commandBuilder = D8Command.builder()
                 .setIntermediate(true)
                 .setMode(CompilationMode.RELEASE)
-                .addProgramFiles(jarFile.toPath())
-                .setOutput(jarFile.getParentFile().toPath(), OutputMode.DexIndexed);
+                .setOutput(outputDir.toPath(), OutputMode.DexIndexed);
 
+            if (localLibrary.isAar()) {
+                addAarClasses(commandBuilder, sourceFile);
+            } else {
+                commandBuilder.addProgramFiles(sourceFile.toPath());
+            }
             commandBuilder.setMinApiLevel(Build.VERSION.SDK_INT);
 
-            listener.info("Dexing jar " + jarFile.getParentFile().getName() + " using D8 with API " + Build.VERSION.SDK_INT);
+            listener.info("Dexing jar " + outputDir.getName() + " using D8 with API " + Build.VERSION.SDK_INT);
             D8.run(commandBuilder.build());
 
         } else {
-            if (!JarCheck.checkJar(jarFile.getAbsolutePath(), 41, 51)) {
-                Main.clearInternTables();
-                listener.info("Dexing jar " + jarFile.getParentFile().getName() + " using DX");
-                Main.main(new String[] {
-                    "--debug", "--verbose", "--multi-dex",
-                    "--output=" + jarFile.getParentFile().getAbsolutePath(),
-                    jarFile.getAbsolutePath()
-                });
-            } else {
-                throw new DexFailedException(
-                    jarFile.getParentFile().getName() +
-                    " uses Java >= 1.8 features and cannot be compiled on this device.");
+            checkDexable(localLibrary);
+            // every dx run interns into the tables of its own context, runs may overlap
+            listener.info("Dexing jar " + outputDir.getName() + " using DX");
+            if (compileWithClassCache(sourceFile, outputDir)) {
+                return;
+            }
+            Main.main(new String[] {
+                "--debug", "--verbose", "--multi-dex",
+                "--output=" + outputDir.getAbsolutePath(),
+                sourceFile.getAbsolutePath()
+            });
+        }
+    }
+
+    /**
+     * Checks from the class file headers and attributes alone whether dx can handle a library,
+     * dx on these devices has no desugaring. Like the dexers it reads the downloaded artifact, for
+     * an aar its nested classes.jar.
+     */
+    private void checkDexable(LocalLibrary localLibrary) throws IOException {
+        JarCheck.Report report;
+        if (localLibrary.isAar()) {
+            try (ZipFile aar = new ZipFile(localLibrary.getSourceFile())) {
+                ZipEntry classesJar = aar.getEntry("classes.jar");
+                if (classesJar == null) {
+                    return;
+                }
+                try (InputStream inputStream = aar.getInputStream(classesJar)) {
+                    report = JarCheck.scan(inputStream, DX_MAX_CLASS_VERSION, true);
+                }
+            }
+        } else {
+            // the scan is short next to dexing, it can use every core
+            report = JarCheck.scan(localLibrary.getSourceFile().getAbsolutePath(),
+                DX_MAX_CLASS_VERSION, true, Runtime.getRuntime().availableProcessors());
+        }
+        if (report.isMalformed()) {
+            throw new DexFailedException(localLibrary.getLibraryName() +
+                " contains a malformed class " + report.getFirstOffender() + ".");
+        }
+        String reason = getUndexableReason(report);
+        if (reason != null) {
+            throw new DexFailedException(localLibrary.getLibraryName() + " " + reason + ", first in " +
+                report.getFirstOffender() + ". It cannot be compiled on this device.");
+        }
+    }
+
+    /**
+     * Names what stopped a scan for dx. dx is only used below API 26, where it cannot dex
+     * invokedynamic, so Java 8 lambdas are rejected as well.
+     *
+     * @return the reason, or null if dx can handle every class
+     */
+    private static String getUndexableReason(JarCheck.Report report) {
+        if (report.getMaxMajorVersion() > DX_MAX_CLASS_VERSION) {
+            return "has class file version " + report.getMaxMajorVersion() +
+                " while dx takes up to " + DX_MAX_CLASS_VERSION;
+        }
+        if (report.usesInvokeDynamic()) {
+            return "uses invokedynamic, which dx cannot dex below API 26";
+        }
+        if (report.hasNestAttributes()) {
+            return "uses NestHost/NestMembers attributes";
+        }
+        if (report.hasRecordAttribute()) {
+            return "uses a Record attribute";
+        }
+        return null;
+    }
+
+    /**
+     * Feeds the classes of the classes.jar nested in an aar to D8 without extracting it.
+     */
+    private void addAarClasses(D8Command.Builder commandBuilder, File aarFile) throws IOException {
+        Origin aarOrigin = new PathOrigin(aarFile.toPath());
+        try (ZipFile aar = new ZipFile(aarFile)) {
+            ZipEntry classesJar = aar.getEntry("classes.jar");
+            if (classesJar == null) {
+                return;
+            }
+            try (ZipInputStream inputStream = new ZipInputStream(aar.getInputStream(classesJar))) {
+                ZipEntry entry;
+                while ((entry = inputStream.getNextEntry()) != null) {
+                    String name = entry.getName();
+                    // same entries D8 itself would take from a jar
+                    if (entry.isDirectory() || !name.endsWith(".class")
+                            || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                        continue;
+                    }
+                    commandBuilder.addClassProgramData(
+                        IOUtils.toByteArray(inputStream), new ArchiveEntryOrigin(name, aarOrigin));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes the classes of a library, for an aar that is its nested classes.jar.
+     */
+    private String hashClasses(LocalLibrary localLibrary) throws IOException {
+        if (!localLibrary.isAar()) {
+            return BaseUtil.sha256(localLibrary.getSourceFile());
+        }
+        try (ZipFile aar = new ZipFile(localLibrary.getSourceFile())) {
+            ZipEntry classesJar = aar.getEntry("classes.jar");
+            if (classesJar == null) {
+                throw new IOException("classes.jar not found in " + localLibrary.getSourceFile().getName());
+            }
+            try (InputStream inputStream = aar.getInputStream(classesJar)) {
+                return BaseUtil.sha256(inputStream);
             }
         }
     }
-    
+
+    /**
+     * Dexes a jar or aar into a single dex through the dx per-class cache, so only classes that
+     * changed since any earlier version of the library are translated again.
+     *
+     * @return false if the classes do not fit a single dex and have to be dexed as multi-dex
+     */
+    private boolean compileWithClassCache(File sourceFile, File outputDir) throws IOException {
+        if (classDexCacheDirectory == null) {
+            return false;
+        }
+        File dexFile = new File(outputDir, "classes.dex");
+        Main.Arguments arguments = new Main.Arguments();
+        arguments.parseFlags(new String[] {
+            "--debug",
+            "--class-cache=" + classDexCacheDirectory.getAbsolutePath(),
+            "--output=" + dexFile.getAbsolutePath()
+        });
+        arguments.fileNames = new String[] {sourceFile.getAbsolutePath()};
+        boolean success = false;
+        classDexCacheLock.readLock().lock();
+        try {
+            success = Main.run(arguments) == 0;
+        } catch (DexException e) {
+            // too many method or field references for a single dex
+        } finally {
+            classDexCacheLock.readLock().unlock();
+        }
+        trimClassDexCache();
+        if (!success) {
+            FileUtils.deleteQuietly(dexFile);
+        }
+        return success;
+    }
+
+    /**
+     * Trims the dx per-class cache to its size limit, least recently used classes first. Skipped
+     * while other dx runs still use the cache, the last of them to finish trims it.
+     */
+    private void trimClassDexCache() {
+        if (!classDexCacheLock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            List<File> entries = new ArrayList<>();
+            File[] shards = classDexCacheDirectory.listFiles(File::isDirectory);
+            if (shards == null) {
+                return;
+            }
+            for (File shard : shards) {
+                File[] files = shard.listFiles(File::isFile);
+                if (files != null) {
+                    for (File file : files) {
+                        entries.add(file);
+                    }
+                }
+            }
+            DexCache.trim(entries.toArray(new File[0]), CLASS_DEX_CACHE_MAX_SIZE);
+        } finally {
+            classDexCacheLock.writeLock().unlock();
+        }
+    }
+
     private List<Path> getCompileResources() {
         List<Path> resources = new ArrayList<>();
         if (lambdaStubs != null) resources.add(lambdaStubs.toPath());
@@ -14,7 +14,6 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import com.google.android.material.transition.MaterialSharedAxis;
-import eup.dependency.haven.api.CachedLibrary;
 import eup.dependency.haven.callback.DependencyResolutionCallback;
 import eup.dependency.haven.callback.DownloadCallback;
 import eup.dependency.haven.model.Coordinates;
@@ -25,6 +24,7 @@ import eup.dependency.haven.repository.LocalStorageFactory;
 import eup.dependency.haven.repository.RemoteRepository;
 import eup.dependency.haven.resolver.DependencyResolver;
 import io.thorenkoder.android.SharedPreferenceKeys;
+import io.thorenkoder.android.api.library.LibraryImportPipeline;
 import io.thorenkoder.android.api.library.LocalLibraryManager;
 import io.thorenkoder.android.databinding.FragmentDependencyManagerBinding;
 import io.thorenkoder.android.logging.LogAdapter;
@@ -65,6 +65,7 @@ public class DependencyManagerFragment extends Fragment
   private LocalStorageFactory storageFactory;
   private LocalLibraryManager libraryManager;
   private DependencyResolver resolver;
+  private LibraryImportPipeline importPipeline;
 
   public static DependencyManagerFragment newInstance() {
     return new DependencyManagerFragment();
@@ -120,6 +121,9 @@ public class DependencyManagerFragment extends Fragment
             // IMPORTANT: You need to implement a cancel() method in your DependencyResolver class
             resolver.cancel();
           }
+          if (importPipeline != null) {
+            importPipeline.cancel();
+          }
           logger.e("CANCELLED", "Download cancelled by user.");
           setDownloadingUIState(false); // Reset UI
         });
@@ -257,6 +261,8 @@ public void onResume() {
     resolver = new DependencyResolver(storageFactory, coordinates);
     storageFactory.attach(resolver);
     configureRepositories(resolver, logger);
+    // libraries already in the output directory skip POM resolution and download
+    resolver.setProcessedLibraryIndex(libraryManager);
 
     boolean includeTransitive = binding.transitiveDependenciesSwitch.isChecked();
     resolver.skipInnerDependencies(!includeTransitive);
@@ -299,25 +305,23 @@ public void onResume() {
             if (getActivity() == null) return;
             getActivity().runOnUiThread(() -> logger.w("WARNING", message));
         }
+    });
 
-        @Override
-        public void done(List<CachedLibrary> cachedLibraryList) {
-            if (getActivity() == null) return;
-            
-            if (cachedLibraryList == null || cachedLibraryList.isEmpty()) {
-                getActivity().runOnUiThread(() -> {
-                    logger.e("FAILURE", "Download finished, but no library files were successfully retrieved.");
-                    setDownloadingUIState(false);
-                });
-                return;
-            }
-
-            new Thread(() -> {
-                // This block runs in the background.
-                final boolean success = libraryManager.copyCachedLibrary(cachedLibraryList);
-
-                // After the background task is finished, update the UI on the main thread.
+    // each library is downloaded, extracted and dexed as soon as it resolves
+    importPipeline =
+        new LibraryImportPipeline(
+            storageFactory,
+            libraryManager,
+            (processedCount, skippedCount, success) -> {
+                if (getActivity() == null) return;
                 getActivity().runOnUiThread(() -> {
+                    if (processedCount == 0 && skippedCount == 0) {
+                        if (!success) {
+                            logger.e("FAILURE", "Download finished, but no library files were successfully retrieved.");
+                        }
+                        setDownloadingUIState(false);
+                        return;
+                    }
                     if (success) {
                         String savePath =
                             PreferencesUtils.getDefaultPreferences()
@@ -327,7 +331,8 @@ public void onResume() {
                         String successMessage =
                             "\n========================================\n"
                                 + "✅ DOWNLOAD & COMPILE SUCCESSFUL!\n"
-                                + "Total Libraries Processed: " + cachedLibraryList.size() + "\n"
+                                + "Total Libraries Processed: " + processedCount + "\n"
+                                + "Already Up To Date: " + skippedCount + "\n"
                                 + "Saved in: "
                                 + savePath
                                 + "\n========================================";
@@ -336,16 +341,15 @@ public void onResume() {
                         String failureMessage =
                             "\n========================================\n"
                                 + "❌ PROCESS FAILED\n"
-                                + "Libraries were downloaded, but one or more failed during processing (copying, unzipping, or dexing).\n"
+                                + "One or more libraries failed during processing (downloading, copying, unzipping, or dexing).\n"
                                 + "Check the logs above for specific errors."
                                 + "\n========================================";
                         logger.e("FAILURE", failureMessage);
                     }
                     setDownloadingUIState(false);
                 });
-            }).start();
-        }
-    });
+            });
+    resolver.setResolutionListener(importPipeline);
 
     resolver.resolve(
         new DependencyResolutionCallback() {
@@ -391,16 +395,7 @@ public void onResume() {
                             if (resolutionSize == 0) {
                                 logger.w("Incomplete", "Resolution was successful but found no dependencies to download.");
                                 setDownloadingUIState(false);
-                                return;
                             }
-
-                            new Thread(
-                                () -> {
-                                    Pom resolvedPom = new Pom();
-                                    resolvedPom.setDependencies(resolvedDependencies);
-                                    storageFactory.downloadLibraries(resolvedPom);
-                                })
-                            .start();
                         });
             }
 
@@ -21,7 +21,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FileUtils;
 
@@ -122,6 +134,89 @@ public class BaseUtil {
     zipInputStream.close();
   }
 
+  /** Decides which entries of an archive get extracted */
+  public interface EntryFilter {
+    boolean accept(String entryName);
+  }
+
+  /**
+   * Extracts only the accepted entries of an archive.
+   *
+   * <p>Entries are looked up through the central directory, so rejected entries are never
+   * inflated, and the accepted ones are written in parallel.
+   *
+   * @param sourceFile the archive to extract
+   * @param destinationFolder the folder to extract into
+   * @param filter the entries to extract
+   */
+  public static void unzip(File sourceFile, File destinationFolder, EntryFilter filter)
+      throws IOException {
+    String destinationPath = destinationFolder.getCanonicalPath() + File.separator;
+    try (ZipFile zipFile = new ZipFile(sourceFile)) {
+      List<ZipEntry> entries = new ArrayList<>();
+      Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+      while (enumeration.hasMoreElements()) {
+        ZipEntry entry = enumeration.nextElement();
+        if (!entry.isDirectory() && filter.accept(entry.getName())) {
+          entries.add(entry);
+        }
+      }
+      if (entries.isEmpty()) {
+        return;
+      }
+
+      int threads = Math.min(Runtime.getRuntime().availableProcessors(), entries.size());
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+          futures.add(
+              executor.submit(
+                  () -> {
+                    File file = new File(destinationFolder, entry.getName());
+                    // reject entries escaping the destination (zip slip)
+                    if (!file.getCanonicalPath().startsWith(destinationPath)) {
+                      throw new IOException("Entry is outside of the target dir: " + entry.getName());
+                    }
+                    extractEntry(zipFile, entry, file);
+                    return null;
+                  }));
+        }
+        for (Future<Void> future : futures) {
+          future.get();
+        }
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Extraction of " + sourceFile.getName() + " was interrupted", e);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static void extractEntry(ZipFile zipFile, ZipEntry entry, File file) throws IOException {
+    File parent = file.getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Failed to create " + parent);
+    }
+    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+      if (SDKUtil.isAtLeast(SDKUtil.API.ANDROID_8)) {
+        Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+          byte[] buffer = new byte[65536];
+          int len;
+          while ((len = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, len);
+          }
+        }
+      }
+    }
+  }
+
   public static void unzipX(String sourceFilePath, String destinationFolder) throws IOException {
     int BYTE_SIZE = 10240; // 10MB Cap
     byte[] buffer = new byte[BYTE_SIZE];
@@ -152,6 +247,43 @@ public class BaseUtil {
     zipInputStream.close();
   }
 
+  /**
+   * Computes the SHA-256 of a file.
+   *
+   * @param file the file to hash
+   * @return the hash as a lowercase hex string
+   */
+  public static String sha256(File file) throws IOException {
+    try (InputStream inputStream = new FileInputStream(file)) {
+      return sha256(inputStream);
+    }
+  }
+
+  /**
+   * Computes the SHA-256 of a stream, reading it to its end.
+   *
+   * @param inputStream the stream to hash
+   * @return the hash as a lowercase hex string
+   */
+  public static String sha256(InputStream inputStream) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available", e);
+    }
+    byte[] buffer = new byte[65536];
+    int len;
+    while ((len = inputStream.read(buffer)) > 0) {
+      digest.update(buffer, 0, len);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
   public static class Path {
     public static final File RESOURCE_FOLDER = context.getExternalFilesDir("resources");
     public static final File ANDROID_JAR = new File(RESOURCE_FOLDER, "android.jar");
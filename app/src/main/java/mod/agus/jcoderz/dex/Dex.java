@@ -22,16 +22,17 @@ import mod.agus.jcoderz.dex.MethodHandle.MethodHandleType;
 import mod.agus.jcoderz.dex.util.ByteInput;
 import mod.agus.jcoderz.dex.util.ByteOutput;
 import mod.agus.jcoderz.dex.util.FileUtils;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractList;
@@ -53,6 +54,7 @@ public final class Dex {
     private static final int CHECKSUM_SIZE = 4;
     private static final int SIGNATURE_OFFSET = CHECKSUM_OFFSET + CHECKSUM_SIZE;
     private static final int SIGNATURE_SIZE = 20;
+    private static final int FILE_SIZE_OFFSET = SIGNATURE_OFFSET + SIGNATURE_SIZE;
     // Provided as a convenience to avoid a memory allocation to benefit Dalvik.
     // Note: libcore.util.EmptyArray cannot be accessed when this code isn't run on Dalvik.
     static final short[] EMPTY_SHORT_ARRAY = new short[0];
@@ -94,53 +96,109 @@ public final class Dex {
      */
     public Dex(InputStream in) throws IOException {
         try {
-            loadFrom(in);
+            loadFrom(in, -1);
         } finally {
             in.close();
         }
     }
 
     /**
-     * Creates a new dex buffer from the dex file {@code file}.
+     * Creates a new dex buffer from the dex file {@code file}. A {@code .dex}
+     * file is memory mapped rather than copied to the heap, so only the
+     * sections that are read get paged in; such a dex is read-only.
+     *
+     * <p>The mapping lives until this dex is garbage collected, not just
+     * while it is in use. The file must not be truncated or rewritten in
+     * place meanwhile: reads then fault, or on Windows the write fails. A
+     * caller that writes over one of its inputs reads that input through
+     * {@link #Dex(InputStream)} instead.
      */
     public Dex(File file) throws IOException {
         if (FileUtils.hasArchiveSuffix(file.getName())) {
-            ZipFile zipFile = new ZipFile(file);
-            ZipEntry entry = zipFile.getEntry(mod.agus.jcoderz.dex.DexFormat.DEX_IN_JAR_NAME);
-            if (entry != null) {
+            try (ZipFile zipFile = new ZipFile(file)) {
+                ZipEntry entry = zipFile.getEntry(mod.agus.jcoderz.dex.DexFormat.DEX_IN_JAR_NAME);
+                if (entry == null) {
+                    throw new DexException("Expected " + DexFormat.DEX_IN_JAR_NAME + " in " + file);
+                }
                 try (InputStream inputStream = zipFile.getInputStream(entry)) {
-                    loadFrom(inputStream);
+                    loadFrom(inputStream, entry.getSize());
                 }
-                zipFile.close();
-            } else {
-                throw new DexException("Expected " + DexFormat.DEX_IN_JAR_NAME + " in " + file);
             }
         } else if (file.getName().endsWith(".dex")) {
-            try (InputStream inputStream = new FileInputStream(file)) {
-                loadFrom(inputStream);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                // the mapping stays valid after the channel is closed
+                this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
             }
+            this.data.order(ByteOrder.LITTLE_ENDIAN);
+            this.tableOfContents.readFrom(this);
         } else {
             throw new DexException("unknown output extension: " + file);
         }
     }
 
     /**
-     * It is the caller's responsibility to close {@code in}.
+     * Reads the dex straight into an array of its final size, which is
+     * {@code size} if known or else the file size from the header, so the
+     * bytes are copied only once. It is the caller's responsibility to
+     * close {@code in}.
+     *
+     * @param size the size of the dex in bytes, or {@code -1} if unknown
      */
-    private void loadFrom(InputStream in) throws IOException {
-        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
+    private void loadFrom(InputStream in, long size) throws IOException {
+        byte[] bytes;
+        int count = 0;
+        if (size >= 0 && size <= Integer.MAX_VALUE) {
+            bytes = new byte[(int) size];
+        } else {
+            byte[] header = new byte[FILE_SIZE_OFFSET + 4];
+            count = readFully(in, header, 0);
+            if (count < header.length) {
+                throw new EOFException("dex header is truncated");
+            }
+            int fileSize = ByteBuffer.wrap(header, FILE_SIZE_OFFSET, 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).getInt();
+            bytes = new byte[Math.max(fileSize, header.length)];
+            System.arraycopy(header, 0, bytes, 0, header.length);
+        }
 
-        int count;
-        while ((count = in.read(buffer)) != -1) {
-            bytesOut.write(buffer, 0, count);
+        count = readFully(in, bytes, count);
+        while (count == bytes.length) {
+            int next = in.read();
+            if (next == -1) {
+                break;
+            }
+            // more bytes than announced, keep them like the file has them
+            byte[] grown = new byte[bytes.length + Math.max(8192, bytes.length >> 1)];
+            System.arraycopy(bytes, 0, grown, 0, count);
+            bytes = grown;
+            bytes[count++] = (byte) next;
+            count = readFully(in, bytes, count);
         }
 
-        this.data = ByteBuffer.wrap(bytesOut.toByteArray());
+        this.data = (count == bytes.length)
+                ? ByteBuffer.wrap(bytes)
+                : ByteBuffer.wrap(bytes, 0, count).slice();
         this.data.order(ByteOrder.LITTLE_ENDIAN);
         this.tableOfContents.readFrom(this);
     }
 
+    /**
+     * Reads from {@code in} until {@code bytes} is full or the stream ends.
+     *
+     * @return the number of bytes in {@code bytes} afterwards
+     */
+    private static int readFully(InputStream in, byte[] bytes, int count) throws IOException {
+        while (count < bytes.length) {
+            int read = in.read(bytes, count, bytes.length - count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
     private static void checkBounds(int index, int length) {
         if (index < 0 || index >= length) {
             throw new IndexOutOfBoundsException("index:" + index + ", length=" + length);
@@ -148,6 +206,11 @@ public final class Dex {
     }
 
     public void writeTo(OutputStream out) throws IOException {
+        if (data.hasArray()) {
+            // no need to copy through a buffer
+            out.write(data.array(), data.arrayOffset(), data.capacity());
+            return;
+        }
         byte[] buffer = new byte[8192];
         ByteBuffer data = this.data.duplicate(); // positioned ByteBuffers aren't thread safe
         data.clear();
@@ -159,8 +222,13 @@ public final class Dex {
     }
 
     public void writeTo(File dexOut) throws IOException {
-        try (OutputStream out = new FileOutputStream(dexOut)) {
-            writeTo(out);
+        try (FileOutputStream out = new FileOutputStream(dexOut);
+             FileChannel channel = out.getChannel()) {
+            ByteBuffer data = this.data.duplicate(); // positioned ByteBuffers aren't thread safe
+            data.clear();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
         }
     }
 
@@ -72,6 +72,29 @@ public final class ExecutionStack extends MutabilityControl {
         return result;
     }
 
+    /**
+     * Overwrites this instance with the contents of another one of the
+     * same maximum size, so that a mutable instance can be reused rather
+     * than {@link #copy copied}.
+     *
+     * @param other {@code non-null;} the instance to copy from
+     */
+    public void copyFrom(ExecutionStack other) {
+        if (other.stack.length != stack.length) {
+            throw new IllegalArgumentException("mismatched maxStack values");
+        }
+
+        if (stack.length == 0) {
+            // We have to check for this before checking for immutability.
+            return;
+        }
+
+        throwIfImmutable();
+        System.arraycopy(other.stack, 0, stack, 0, stack.length);
+        System.arraycopy(other.local, 0, local, 0, local.length);
+        stackPtr = other.stackPtr;
+    }
+
     /**
      * Annotates (adds context to) the given exception with information
      * about this instance.
@@ -98,6 +98,38 @@ public final class Frame {
         return new Frame(locals.copy(), stack.copy(), subroutines);
     }
 
+    /**
+     * Returns whether {@link #copyFrom} can be used between this instance
+     * and another. That is the case when neither is nested in a subroutine
+     * and both have plain locals, as is true of all code without
+     * {@code jsr}.
+     *
+     * @param other {@code non-null;} another frame
+     * @return whether the two frames can be copied in place
+     */
+    public boolean canCopyFrom(Frame other) {
+        return subroutines.size() == 0 && other.subroutines.size() == 0
+                && locals instanceof OneLocalsArray
+                && other.locals instanceof OneLocalsArray;
+    }
+
+    /**
+     * Overwrites this mutable instance with the locals and stack of
+     * another, so that a frame can be reused for each block rather than
+     * {@link #copy copied}. Only valid when {@link #canCopyFrom} is
+     * {@code true}.
+     *
+     * @param other {@code non-null;} the frame to copy from
+     */
+    public void copyFrom(Frame other) {
+        if (!canCopyFrom(other)) {
+            throw new IllegalArgumentException("frames can't be copied in place");
+        }
+
+        ((OneLocalsArray) locals).copyFrom((OneLocalsArray) other.locals);
+        stack.copyFrom(other.stack);
+    }
+
     /**
      * Makes this instance immutable.
      */
@@ -30,8 +30,17 @@ import mod.agus.jcoderz.dx.util.Hex;
  * mod.agus.jcoderz.dx.rop.type.TypeBearer}.</p>
  */
 public class OneLocalsArray extends LocalsArray {
-    /** {@code non-null;} actual array */
-    private final mod.agus.jcoderz.dx.rop.type.TypeBearer[] locals;
+    /**
+     * {@code non-null;} actual array, shared with the instance this one
+     * was copied from while {@link #shared} is set
+     */
+    private mod.agus.jcoderz.dx.rop.type.TypeBearer[] locals;
+
+    /**
+     * whether {@link #locals} belongs to an immutable instance and must
+     * be copied before it is written to
+     */
+    private boolean shared;
 
     /**
      * Constructs an instance. The locals array initially consists of
@@ -45,9 +54,30 @@ public class OneLocalsArray extends LocalsArray {
         locals = new mod.agus.jcoderz.dx.rop.type.TypeBearer[maxLocals];
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Constructs a mutable instance that shares the array of an immutable
+     * one until it is first written to.
+     *
+     * @param locals {@code non-null;} the array to share
+     */
+    private OneLocalsArray(mod.agus.jcoderz.dx.rop.type.TypeBearer[] locals) {
+        super(locals.length != 0);
+        this.locals = locals;
+        this.shared = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The copy of an immutable instance shares its array until the
+     * copy is written to, since most blocks store to few if any locals.</p>
+     */
     @Override
     public OneLocalsArray copy() {
+        if (isImmutable()) {
+            return new OneLocalsArray(locals);
+        }
+
         OneLocalsArray result = new OneLocalsArray(locals.length);
 
         System.arraycopy(locals, 0, result.locals, 0, locals.length);
@@ -55,6 +85,45 @@ public class OneLocalsArray extends LocalsArray {
         return result;
     }
 
+    /**
+     * Overwrites this instance with the contents of another one of the
+     * same size, so that a mutable instance can be reused rather than
+     * {@link #copy copied}.
+     *
+     * @param other {@code non-null;} the instance to copy from
+     */
+    public void copyFrom(OneLocalsArray other) {
+        if (other.locals.length != locals.length) {
+            throw new IllegalArgumentException("mismatched maxLocals values");
+        }
+
+        if (locals.length == 0) {
+            // We have to check for this before checking for immutability.
+            return;
+        }
+
+        throwIfImmutable();
+
+        if (shared && other.isImmutable()) {
+            // Keep sharing rather than copy into an array of our own.
+            locals = other.locals;
+        } else {
+            unshare();
+            System.arraycopy(other.locals, 0, locals, 0, locals.length);
+        }
+    }
+
+    /**
+     * Gives this instance its own array if it still shares the array of
+     * the instance it was copied from. Called before any write.
+     */
+    private void unshare() {
+        if (shared) {
+            locals = locals.clone();
+            shared = false;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void annotate(ExceptionWithContext ex) {
@@ -95,6 +164,7 @@ public class OneLocalsArray extends LocalsArray {
 
         for (int i = 0; i < len; i++) {
             if (locals[i] == type) {
+                unshare();
                 locals[i] = initializedType;
             }
         }
@@ -122,6 +192,8 @@ public class OneLocalsArray extends LocalsArray {
             throw new IndexOutOfBoundsException("idx < 0");
         }
 
+        unshare();
+
         // Make highest possible out-of-bounds check happen first.
         if (type.getType().isCategory2()) {
             locals[idx + 1] = null;
@@ -147,6 +219,7 @@ public class OneLocalsArray extends LocalsArray {
     @Override
     public void invalidate(int idx) {
         throwIfImmutable();
+        unshare();
         locals[idx] = null;
     }
 
@@ -110,6 +110,13 @@ public final class Ropper {
      */
     private final Frame[] startFrames;
 
+    /**
+     * {@code null-ok;} mutable frame that blocks outside of subroutines are
+     * simulated in, reused from block to block until it has to be kept as
+     * (part of) the start frame of a successor
+     */
+    private Frame scratchFrame;
+
     /** {@code non-null;} output block list in-progress */
     private final ArrayList<mod.agus.jcoderz.dx.rop.code.BasicBlock> result;
 
@@ -785,11 +792,24 @@ public final class Ropper {
 
         /*
          * Using a copy of the given frame, simulate each instruction,
-         * calling into machine for each.
+         * calling into machine for each. Outside of subroutines the copy
+         * is made into the scratch frame, which only becomes immutable
+         * once a successor keeps it.
          */
-        frame = frame.copy();
+        if (scratchFrame != null && scratchFrame.canCopyFrom(frame)) {
+            scratchFrame.copyFrom(frame);
+            frame = scratchFrame;
+        } else {
+            Frame startFrame = frame;
+            frame = startFrame.copy();
+            if (scratchFrame == null && frame.canCopyFrom(startFrame)) {
+                scratchFrame = frame;
+            }
+        }
         sim.simulate(block, frame);
-        frame.setImmutable();
+        if (frame != scratchFrame) {
+            frame.setImmutable();
+        }
 
         int extraBlockCount = machine.getExtraBlockCount();
         ArrayList<mod.agus.jcoderz.dx.rop.code.Insn> insns = machine.getInsns();
@@ -917,7 +937,14 @@ public final class Ropper {
 
                 catchesAny |= (exceptionClass == CstType.OBJECT);
 
-                Frame f = frame.makeExceptionHandlerStartFrame(exceptionClass);
+                /*
+                 * The handler frame shares the locals of this block's
+                 * frame, so the scratch frame must be kept if the merge
+                 * can hold on to them.
+                 */
+                Frame source = mergeKeepsFrame(targ, null)
+                        ? keepFrame(frame) : frame;
+                Frame f = source.makeExceptionHandlerStartFrame(exceptionClass);
 
                 try {
                     mergeAndWorkAsNecessary(targ, block.getLabel(),
@@ -1073,6 +1100,10 @@ public final class Ropper {
         Frame existing = startFrames[label];
         Frame merged;
 
+        if (mergeKeepsFrame(label, calledSubroutine)) {
+            frame = keepFrame(frame);
+        }
+
         if (existing != null) {
             /*
              * Some other block also continues at this label. Merge
@@ -1101,6 +1132,42 @@ public final class Ropper {
         }
     }
 
+    /**
+     * Returns whether merging a frame into the start frame of the given
+     * block may keep a reference to (part of) it. That is the case when
+     * the block has no start frame yet, when it begins a subroutine and
+     * when its start frame has subroutine locals. Plain merges only
+     * read the incoming frame.
+     *
+     * @param label {@code >= 0;} label of the block merged into
+     * @param calledSubroutine {@code null-ok;} the subroutine that
+     * {@code label} begins, if any
+     * @return whether the incoming frame may be kept
+     */
+    private boolean mergeKeepsFrame(int label, Subroutine calledSubroutine) {
+        Frame existing = startFrames[label];
+
+        return (existing == null) || (calledSubroutine != null)
+                || !(existing.getLocals() instanceof OneLocalsArray);
+    }
+
+    /**
+     * Makes the given frame safe to keep. If it is the scratch frame, it
+     * is made immutable and a new scratch frame will be allocated for the
+     * next block.
+     *
+     * @param frame {@code non-null;} the frame to keep
+     * @return {@code frame}
+     */
+    private Frame keepFrame(Frame frame) {
+        if (frame == scratchFrame) {
+            frame.setImmutable();
+            scratchFrame = null;
+        }
+
+        return frame;
+    }
+
     /**
      * Constructs and adds the blocks that perform setup for the rest of
      * the method. This includes a first block which merely contains
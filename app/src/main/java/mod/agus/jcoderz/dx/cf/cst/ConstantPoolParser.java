@@ -31,12 +31,14 @@ import static mod.agus.jcoderz.dx.cf.cst.ConstantTags.CONSTANT_NameAndType;
 import static mod.agus.jcoderz.dx.cf.cst.ConstantTags.CONSTANT_String;
 import static mod.agus.jcoderz.dx.cf.cst.ConstantTags.CONSTANT_Utf8;
 
+import mod.agus.jcoderz.dex.util.ExceptionWithContext;
 import mod.agus.jcoderz.dx.cf.iface.ParseException;
 import mod.agus.jcoderz.dx.cf.iface.ParseObserver;
 
 import java.util.BitSet;
 
 import mod.agus.jcoderz.dx.rop.cst.Constant;
+import mod.agus.jcoderz.dx.rop.cst.ConstantPool;
 import mod.agus.jcoderz.dx.rop.cst.CstDouble;
 import mod.agus.jcoderz.dx.rop.cst.CstFieldRef;
 import mod.agus.jcoderz.dx.rop.cst.CstFloat;
@@ -56,15 +58,25 @@ import mod.agus.jcoderz.dx.util.ByteArray;
 import mod.agus.jcoderz.dx.util.Hex;
 
 /**
- * Parser for a constant pool embedded in a class file.
+ * Parser for a constant pool embedded in a class file. Only the offsets
+ * of the entries are determined up front. Each entry is parsed from the
+ * bytes of the file when it is first asked for, so entries that nothing
+ * refers to, such as the names and descriptors used only by skipped
+ * attributes, are never decoded.
  */
 public final class ConstantPoolParser {
     /** {@code non-null;} the bytes of the constant pool */
     private final mod.agus.jcoderz.dx.util.ByteArray bytes;
 
-    /** {@code non-null;} actual parsed constant pool contents */
+    /**
+     * {@code non-null;} the entries parsed so far, filled in as they are
+     * asked for
+     */
     private final mod.agus.jcoderz.dx.rop.cst.StdConstantPool pool;
 
+    /** {@code non-null;} the pool handed out, resolving entries on demand */
+    private final ConstantPool lazyPool;
+
     /** {@code non-null;} byte offsets to each cst */
     private final int[] offsets;
 
@@ -78,6 +90,13 @@ public final class ConstantPoolParser {
     /** {@code null-ok;} parse observer, if any */
     private ParseObserver observer;
 
+    /**
+     * {@code null-ok;} when there is an observer, tracks the constant
+     * value's original string type. True if constants[i] was a
+     * CONSTANT_Utf8, false for any other type including CONSTANT_string.
+     */
+    private BitSet wasUtf8;
+
     /**
      * Constructs an instance.
      *
@@ -88,6 +107,7 @@ public final class ConstantPoolParser {
 
         this.bytes = bytes;
         this.pool = new mod.agus.jcoderz.dx.rop.cst.StdConstantPool(size);
+        this.lazyPool = new LazyConstantPool();
         this.offsets = new int[size];
         this.endOffset = -1;
     }
@@ -113,13 +133,14 @@ public final class ConstantPoolParser {
     }
 
     /**
-     * Gets the actual constant pool.
+     * Gets the actual constant pool. Its entries are parsed when they are
+     * first asked for.
      *
      * @return {@code non-null;} the constant pool
      */
-    public StdConstantPool getPool() {
+    public ConstantPool getPool() {
         parseIfNecessary();
-        return pool;
+        return lazyPool;
     }
 
     /**
@@ -132,7 +153,8 @@ public final class ConstantPoolParser {
     }
 
     /**
-     * Does the actual parsing.
+     * Does the actual parsing. This only determines the offsets of the
+     * entries, unless there is an observer, which is told about every one.
      */
     private void parse() {
         determineOffsets();
@@ -142,22 +164,10 @@ public final class ConstantPoolParser {
                             "constant_pool_count: " + mod.agus.jcoderz.dx.util.Hex.u2(offsets.length));
             observer.parsed(bytes, 10, 0, "\nconstant_pool:");
             observer.changeIndent(1);
-        }
 
-        /*
-         * Track the constant value's original string type. True if constants[i] was
-         * a CONSTANT_Utf8, false for any other type including CONSTANT_string.
-         */
-        BitSet wasUtf8 = new BitSet(offsets.length);
+            wasUtf8 = new BitSet(offsets.length);
+            parseAll();
 
-        for (int i = 1; i < offsets.length; i++) {
-            int offset = offsets[i];
-            if ((offset != 0) && (pool.getOrNull(i) == null)) {
-                parse0(i, wasUtf8);
-            }
-        }
-
-        if (observer != null) {
             for (int i = 1; i < offsets.length; i++) {
                 mod.agus.jcoderz.dx.rop.cst.Constant cst = pool.getOrNull(i);
                 if (cst == null) {
@@ -184,7 +194,19 @@ public final class ConstantPoolParser {
     }
 
     /**
-     * Populates {@link #offsets} and also completely parse utf8 constants.
+     * Parses every entry that hasn't been parsed yet.
+     */
+    private void parseAll() {
+        for (int i = 1; i < offsets.length; i++) {
+            int offset = offsets[i];
+            if ((offset != 0) && (pool.getOrNull(i) == null)) {
+                parse0(i);
+            }
+        }
+    }
+
+    /**
+     * Populates {@link #offsets}.
      */
     private void determineOffsets() {
         int at = 10; // offset from the start of the file to the first cst
@@ -259,7 +281,7 @@ public final class ConstantPoolParser {
      * @param idx which constant
      * @return {@code non-null;} the parsed constant
      */
-    private mod.agus.jcoderz.dx.rop.cst.Constant parse0(int idx, BitSet wasUtf8) {
+    private mod.agus.jcoderz.dx.rop.cst.Constant parse0(int idx) {
         mod.agus.jcoderz.dx.rop.cst.Constant cst = pool.getOrNull(idx);
         if (cst != null) {
             return cst;
@@ -272,7 +294,9 @@ public final class ConstantPoolParser {
             switch (tag) {
                 case CONSTANT_Utf8: {
                     cst = parseUtf8(at);
-                    wasUtf8.set(idx);
+                    if (wasUtf8 != null) {
+                        wasUtf8.set(idx);
+                    }
                     break;
                 }
                 case CONSTANT_Integer: {
@@ -297,44 +321,44 @@ public final class ConstantPoolParser {
                 }
                 case CONSTANT_Class: {
                     int nameIndex = bytes.getUnsignedShort(at + 1);
-                    mod.agus.jcoderz.dx.rop.cst.CstString name = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(nameIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstString name = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(nameIndex);
                     cst = new mod.agus.jcoderz.dx.rop.cst.CstType(Type.internClassName(name.getString()));
                     break;
                 }
                 case CONSTANT_String: {
                     int stringIndex = bytes.getUnsignedShort(at + 1);
-                    cst = parse0(stringIndex, wasUtf8);
+                    cst = parse0(stringIndex);
                     break;
                 }
                 case CONSTANT_Fieldref: {
                     int classIndex = bytes.getUnsignedShort(at + 1);
-                    mod.agus.jcoderz.dx.rop.cst.CstType type = (mod.agus.jcoderz.dx.rop.cst.CstType) parse0(classIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstType type = (mod.agus.jcoderz.dx.rop.cst.CstType) parse0(classIndex);
                     int natIndex = bytes.getUnsignedShort(at + 3);
-                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (mod.agus.jcoderz.dx.rop.cst.CstNat) parse0(natIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (mod.agus.jcoderz.dx.rop.cst.CstNat) parse0(natIndex);
                     cst = new mod.agus.jcoderz.dx.rop.cst.CstFieldRef(type, nat);
                     break;
                 }
                 case CONSTANT_Methodref: {
                     int classIndex = bytes.getUnsignedShort(at + 1);
-                    mod.agus.jcoderz.dx.rop.cst.CstType type = (mod.agus.jcoderz.dx.rop.cst.CstType) parse0(classIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstType type = (mod.agus.jcoderz.dx.rop.cst.CstType) parse0(classIndex);
                     int natIndex = bytes.getUnsignedShort(at + 3);
-                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (mod.agus.jcoderz.dx.rop.cst.CstNat) parse0(natIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (mod.agus.jcoderz.dx.rop.cst.CstNat) parse0(natIndex);
                     cst = new mod.agus.jcoderz.dx.rop.cst.CstMethodRef(type, nat);
                     break;
                 }
                 case CONSTANT_InterfaceMethodref: {
                     int classIndex = bytes.getUnsignedShort(at + 1);
-                    mod.agus.jcoderz.dx.rop.cst.CstType type = (CstType) parse0(classIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstType type = (CstType) parse0(classIndex);
                     int natIndex = bytes.getUnsignedShort(at + 3);
-                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (mod.agus.jcoderz.dx.rop.cst.CstNat) parse0(natIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (mod.agus.jcoderz.dx.rop.cst.CstNat) parse0(natIndex);
                     cst = new mod.agus.jcoderz.dx.rop.cst.CstInterfaceMethodRef(type, nat);
                     break;
                 }
                 case CONSTANT_NameAndType: {
                     int nameIndex = bytes.getUnsignedShort(at + 1);
-                    mod.agus.jcoderz.dx.rop.cst.CstString name = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(nameIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstString name = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(nameIndex);
                     int descriptorIndex = bytes.getUnsignedShort(at + 3);
-                    mod.agus.jcoderz.dx.rop.cst.CstString descriptor = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(descriptorIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstString descriptor = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(descriptorIndex);
                     cst = new mod.agus.jcoderz.dx.rop.cst.CstNat(name, descriptor);
                     break;
                 }
@@ -347,15 +371,15 @@ public final class ConstantPoolParser {
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_getStatic:
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_putField:
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_putStatic:
-                            ref = (CstFieldRef) parse0(constantIndex, wasUtf8);
+                            ref = (CstFieldRef) parse0(constantIndex);
                             break;
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_invokeVirtual:
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_newInvokeSpecial:
-                            ref = (mod.agus.jcoderz.dx.rop.cst.CstMethodRef) parse0(constantIndex, wasUtf8);
+                            ref = (mod.agus.jcoderz.dx.rop.cst.CstMethodRef) parse0(constantIndex);
                             break;
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_invokeStatic:
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_invokeSpecial:
-                            ref = parse0(constantIndex, wasUtf8);
+                            ref = parse0(constantIndex);
                             if (!(ref instanceof CstMethodRef
                                 || ref instanceof mod.agus.jcoderz.dx.rop.cst.CstInterfaceMethodRef)) {
                               throw new ParseException(
@@ -364,7 +388,7 @@ public final class ConstantPoolParser {
                             }
                             break;
                         case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_invokeInterface:
-                            ref = (CstInterfaceMethodRef) parse0(constantIndex, wasUtf8);
+                            ref = (CstInterfaceMethodRef) parse0(constantIndex);
                             break;
                         default:
                             throw new ParseException("Unsupported MethodHandle kind: " + kind);
@@ -376,14 +400,14 @@ public final class ConstantPoolParser {
                 }
                 case CONSTANT_MethodType: {
                     int descriptorIndex = bytes.getUnsignedShort(at + 1);
-                    mod.agus.jcoderz.dx.rop.cst.CstString descriptor = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(descriptorIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstString descriptor = (mod.agus.jcoderz.dx.rop.cst.CstString) parse0(descriptorIndex);
                     cst = CstProtoRef.make(descriptor);
                     break;
                 }
                 case CONSTANT_InvokeDynamic: {
                     int bootstrapMethodIndex = bytes.getUnsignedShort(at + 1);
                     int natIndex = bytes.getUnsignedShort(at + 3);
-                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (CstNat) parse0(natIndex, wasUtf8);
+                    mod.agus.jcoderz.dx.rop.cst.CstNat nat = (CstNat) parse0(natIndex);
                     cst = CstInvokeDynamic.make(bootstrapMethodIndex, nat);
                     break;
                 }
@@ -427,6 +451,85 @@ public final class ConstantPoolParser {
         }
     }
 
+    /**
+     * Gets the entry at the given index, parsing it if that hasn't been
+     * done yet. Synchronized since a class file may be shared between
+     * threads once it has been parsed.
+     *
+     * @param idx which constant
+     * @return {@code null-ok;} the constant, or {@code null} if the index
+     * is in-range but invalid
+     */
+    private synchronized Constant resolve(int idx) {
+        if ((idx < 0) || (idx >= offsets.length)) {
+            throw new ExceptionWithContext("invalid constant pool index " +
+                                           Hex.u2(idx));
+        }
+
+        if (offsets[idx] == 0) {
+            return null;
+        }
+
+        return parse0(idx);
+    }
+
+    /**
+     * Gets all the entries, parsing those that haven't been yet.
+     *
+     * @return {@code non-null;} the entries, possibly including nulls
+     */
+    private synchronized Constant[] resolveAll() {
+        parseAll();
+        return pool.getEntries();
+    }
+
+    /**
+     * The constant pool handed out by {@link #getPool}, which parses each
+     * entry when it is first asked for.
+     */
+    private final class LazyConstantPool implements ConstantPool {
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Constant getOrNull(int n) {
+            return resolve(n);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Constant get0Ok(int n) {
+            if (n == 0) {
+                return null;
+            }
+
+            return get(n);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Constant get(int n) {
+            Constant result = resolve(n);
+
+            if (result == null) {
+                throw new ExceptionWithContext("invalid constant pool index " +
+                                               Hex.u2(n));
+            }
+
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Constant[] getEntries() {
+            return resolveAll();
+        }
+    }
+
     private static int getMethodHandleTypeForKind(int kind) {
         switch (kind) {
             case mod.agus.jcoderz.dx.cf.cst.MethodHandleKind.REF_getField:
@@ -27,14 +27,18 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 /**
  * Opens all the class files found in a class path element. Path elements
- * can point to class files, {jar,zip,apk} files, or directories containing
- * class files.
+ * can point to class files, {jar,zip,apk} files, {@code .aar} files, or
+ * directories containing class files.
  */
 public class ClassPathOpener {
 
+    /** {@code non-null;} name of the class archive nested in an {@code .aar} */
+    private static final String AAR_CLASSES_JAR = "classes.jar";
+
     /** {@code non-null;} pathname to start with */
     private final String pathname;
     /** {@code non-null;} callback interface */
@@ -164,6 +168,9 @@ public class ClassPathOpener {
                     path.endsWith(".apk")) {
                 return processArchive(file);
             }
+            if (path.endsWith(".aar")) {
+                return processAar(file);
+            }
             if (filter.accept(path)) {
                 byte[] bytes = FileUtils.readFile(file);
                 return consumer.processFileBytes(path, file.lastModified(), bytes);
@@ -289,4 +296,100 @@ public class ClassPathOpener {
         zip.close();
         return any;
     }
+
+    /**
+     * Processes the classes of an Android library ({@code .aar}). The
+     * nested {@code classes.jar} is streamed straight out of the outer
+     * archive, so it never has to be extracted to disk first.
+     *
+     * @param file {@code non-null;} aar file to process
+     * @return whether any processing actually happened
+     * @throws IOException on i/o problem
+     */
+    private boolean processAar(File file) throws IOException {
+        ZipFile aar = new ZipFile(file);
+
+        try {
+            ZipEntry classesJar = aar.getEntry(AAR_CLASSES_JAR);
+            if (classesJar == null) {
+                return false;
+            }
+
+            consumer.onProcessArchiveStart(file);
+
+            /*
+             * A nested archive can only be read sequentially, so when the
+             * entries have to be sorted like those of a plain archive they
+             * are collected first. Otherwise each one is handed on as soon
+             * as it is read.
+             */
+            ArrayList<NestedEntry> entriesList = sort ? new ArrayList<NestedEntry>() : null;
+            boolean any = false;
+            ZipInputStream in = new ZipInputStream(aar.getInputStream(classesJar));
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(40000);
+                byte[] buf = new byte[20000];
+                ZipEntry one;
+                while ((one = in.getNextEntry()) != null) {
+                    String path = one.getName();
+                    if (!filter.accept(path)) {
+                        continue;
+                    }
+                    final byte[] bytes;
+                    if (!one.isDirectory()) {
+                        baos.reset();
+                        int read;
+                        while ((read = in.read(buf)) != -1) {
+                            baos.write(buf, 0, read);
+                        }
+                        bytes = baos.toByteArray();
+                    } else {
+                        bytes = new byte[0];
+                    }
+                    if (entriesList != null) {
+                        entriesList.add(new NestedEntry(path, one.getTime(), bytes));
+                    } else {
+                        any |= consumer.processFileBytes(path, one.getTime(), bytes);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+
+            if (entriesList == null) {
+                return any;
+            }
+
+            Collections.sort(entriesList, new Comparator<NestedEntry>() {
+                @Override
+                public int compare(NestedEntry a, NestedEntry b) {
+                    return compareClassNames(a.name, b.name);
+                }
+            });
+
+            int size = entriesList.size();
+            for (int i = 0; i < size; i++) {
+                NestedEntry one = entriesList.get(i);
+                // drop each buffered class once the consumer has it
+                entriesList.set(i, null);
+                any |= consumer.processFileBytes(one.name, one.time, one.bytes);
+            }
+            return any;
+        } finally {
+            aar.close();
+        }
+    }
+
+    /** An entry read from a nested archive. */
+    private static class NestedEntry {
+        final String name;
+        final long time;
+        final byte[] bytes;
+
+        NestedEntry(String name, long time, byte[] bytes) {
+            this.name = name;
+            this.time = time;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -32,7 +32,6 @@ import mod.agus.jcoderz.dx.rop.code.AccessFlags;
 import mod.agus.jcoderz.dx.rop.cst.ConstantPool;
 import mod.agus.jcoderz.dx.rop.cst.CstString;
 import mod.agus.jcoderz.dx.rop.cst.CstType;
-import mod.agus.jcoderz.dx.rop.cst.StdConstantPool;
 import mod.agus.jcoderz.dx.rop.type.StdTypeList;
 import mod.agus.jcoderz.dx.rop.type.Type;
 import mod.agus.jcoderz.dx.rop.type.TypeList;
@@ -99,7 +98,7 @@ public class DirectClassFile implements ClassFile {
      * {@code null-ok;} the constant pool; only ever {@code null}
      * before the constant pool is successfully parsed
      */
-    private mod.agus.jcoderz.dx.rop.cst.StdConstantPool pool;
+    private ConstantPool pool;
 
     /**
      * the class file field {@code access_flags}; will be {@code -1}
@@ -517,7 +516,6 @@ public class DirectClassFile implements ClassFile {
         mod.agus.jcoderz.dx.cf.cst.ConstantPoolParser cpParser = new ConstantPoolParser(bytes);
         cpParser.setObserver(observer);
         pool = cpParser.getPool();
-        pool.setImmutable();
 
         int at = cpParser.getEndOffset();
         int accessFlags = bytes.getUnsignedShort(at); // u2 access_flags;
@@ -614,7 +612,7 @@ public class DirectClassFile implements ClassFile {
         private final int size;
 
         /** {@code non-null;} the constant pool */
-        private final mod.agus.jcoderz.dx.rop.cst.StdConstantPool pool;
+        private final ConstantPool pool;
 
         /**
          * Constructs an instance.
@@ -627,7 +625,7 @@ public class DirectClassFile implements ClassFile {
          * @param observer {@code null-ok;} parse observer to use, if any
          */
         public DcfTypeList(ByteArray bytes, int offset, int size,
-                           StdConstantPool pool, ParseObserver observer) {
+                           ConstantPool pool, ParseObserver observer) {
             if (size < 0) {
                 throw new IllegalArgumentException("size < 0");
             }
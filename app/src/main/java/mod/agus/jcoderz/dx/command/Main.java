@@ -33,6 +33,8 @@ public class Main {
         "  [--multi-dex [--main-dex-list=<file> [--minimal-main-dex]]\n" +
         "  [--input-list=<file>] [--min-sdk-version=<n>]\n" +
         "  [--allow-all-interface-method-invokes]\n" +
+        "  [--fast-optimize-insns=<n>] [--optimize-time-budget=<ms>]\n" +
+        "  [--linear-scan | --linear-scan-insns=<n>]\n" +
         "  [<file>.class | <file>.{zip,jar,apk} | <directory>] ...\n" +
         "    Convert a set of classfiles into a dex file, optionally embedded in a\n" +
         "    jar/zip. Output name must end with one of: .dex .jar .zip .apk or be a\n" +
@@ -50,16 +52,28 @@ public class Main {
         "    directory.\n" +
         "    --min-sdk-version=<n>: Enable dex file features that require at least sdk\n" +
         "    version <n>.\n" +
+        "    --fast-optimize-insns=<n>: methods of <n> or more rop insns skip the\n" +
+        "    optional optimizer steps, which grow faster than linearly with size.\n" +
+        "    --optimize-time-budget=<ms>: skip the optional optimizer steps left once a\n" +
+        "    method took <ms> milliseconds. The output then depends on timing, so this\n" +
+        "    can't be combined with --class-cache.\n" +
+        "    --linear-scan-insns=<n>: allocate registers by linear scan, which is faster\n" +
+        "    but gives slightly larger code, for methods of <n> or more rop insns\n" +
+        "    (default " + mod.agus.jcoderz.dx.dex.cf.CfOptions.DEFAULT_LINEAR_SCAN_INSN_COUNT
+                + ", 0 for none). --linear-scan: for all methods.\n" +
+        "    --statistics also prints the slowest methods to optimize, to tune these.\n" +
         "  dx --annotool --annotation=<class> [--element=<element types>]\n" +
         "  [--print=<print types>]\n" +
         "  dx --dump [--debug] [--strict] [--bytes] [--optimize]\n" +
         "  [--basic-blocks | --rop-blocks | --ssa-blocks | --dot] [--ssa-step=<step>]\n" +
         "  [--width=<n>] [<file>.class | <file>.txt] ...\n" +
         "    Dump classfiles, or transformations thereof, in a human-oriented format.\n" +
-        "  dx --find-usages <file.dex> <declaring type> <member>\n" +
+        "  dx --find-usages [--index] <file.dex | directory> <declaring type> <member>\n" +
         "    Find references and declarations to a field or method.\n" +
         "    <declaring type> is a class name in internal form, like Ljava/lang/Object;\n" +
         "    <member> is a field or method name, like hashCode.\n" +
+        "    A directory is searched through its classes*.dex files in parallel.\n" +
+        "    --index: save the index of each dex next to it, for faster later searches.\n" +
         "  dx -J<option> ... <arguments, in one of the above forms>\n" +
         "    Pass VM-specific options to the virtual machine that runs dx.\n" +
         "  dx --version\n" +
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dx.command.dexer;
+
+import mod.agus.jcoderz.dex.util.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Directory of single-class dex files, used by {@code --class-cache}.
+ * Each entry holds the translation of exactly one class file and is
+ * keyed by the hash of the class file bytes together with every option
+ * that affects translation, so an entry can be reused by any later run
+ * that sees the same class with the same options.
+ */
+final class ClassDexCache {
+
+    /** File extension of a cache entry. */
+    private static final String ENTRY_EXTENSION = ".dex";
+
+    /** {@code non-null;} root directory of the cache */
+    private final File directory;
+
+    /** {@code non-null;} digest of the options the entries are valid for */
+    private final byte[] optionsKey;
+
+    /**
+     * Constructs an instance.
+     *
+     * @param directory {@code non-null;} root directory of the cache
+     * @param options {@code non-null;} description of the translation
+     * options, entries are only shared between runs with equal options
+     */
+    ClassDexCache(File directory, String options) {
+        this.directory = directory;
+        this.optionsKey = options.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the file of the cache entry for a class.
+     *
+     * @param classBytes {@code non-null;} contents of the class file
+     * @return {@code non-null;} the entry file, which exists only if the
+     * class has been translated before
+     */
+    File getEntry(byte[] classBytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        digest.update(optionsKey);
+        digest.update(classBytes);
+
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest()) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        // shard by the first byte to keep directories small
+        return new File(new File(directory, name.substring(0, 2)),
+                name.substring(2) + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Reads a cache entry.
+     *
+     * @param entry {@code non-null;} an existing entry file
+     * @return {@code non-null;} the single-class dex
+     */
+    byte[] read(File entry) {
+        byte[] dex = FileUtils.readFile(entry);
+        // mark as recently used, for trimming the cache by last use
+        entry.setLastModified(System.currentTimeMillis());
+        return dex;
+    }
+
+    /**
+     * Stores a cache entry. The entry is written to a temporary file
+     * first, so concurrent runs never see a partial entry.
+     *
+     * @param entry {@code non-null;} the entry file
+     * @param dex {@code non-null;} the single-class dex
+     */
+    void write(File entry, byte[] dex) throws IOException {
+        File parent = entry.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("unable to create cache directory " + parent);
+        }
+        File temp = File.createTempFile(entry.getName(), ".tmp", parent);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(dex);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(entry)) {
+            temp.delete();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package mod.agus.jcoderz.dx.command.dexer;
 
 import mod.agus.jcoderz.dx.dex.cf.CodeStatistics;
 import mod.agus.jcoderz.dx.dex.cf.OptimizerOptions;
+import mod.agus.jcoderz.dx.rop.type.InternTables;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
@@ -12,6 +13,11 @@ import java.io.PrintStream;
 public class DxContext {
     public final CodeStatistics codeStatistics = new CodeStatistics();
     public final OptimizerOptions optimizerOptions = new OptimizerOptions();
+    /**
+     * Intern tables of this context. Reusing a context for several runs keeps
+     * them warm, separate contexts can run concurrently.
+     */
+    public final InternTables internTables = new InternTables();
     public final PrintStream out;
     public final PrintStream err;
 
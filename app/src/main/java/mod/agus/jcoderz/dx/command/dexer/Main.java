@@ -28,6 +28,7 @@ import mod.agus.jcoderz.dx.rop.code.RegisterSpec;
 import mod.agus.jcoderz.dx.rop.cst.CstNat;
 import mod.agus.jcoderz.dx.rop.cst.CstString;
 import mod.agus.jcoderz.dx.rop.cst.CstType;
+import mod.agus.jcoderz.dx.rop.type.InternTables;
 import mod.agus.jcoderz.dx.rop.type.Prototype;
 import mod.agus.jcoderz.dx.rop.type.Type;
 import mod.agus.jcoderz.dx.Version;
@@ -51,6 +52,7 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
@@ -67,11 +69,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -164,6 +169,13 @@ public class Main {
     /* <primitive types box class>.TYPE */
     private static final int MAX_FIELD_ADDED_DURING_DEX_CREATION = 9;
 
+    /** Number of files every input reader may read ahead of the parser. */
+    private static final int INPUT_READ_AHEAD = 64;
+
+    /** Number of class files per thread that may be parsed ahead of
+     * translation. */
+    private static final int PARSE_AHEAD_PER_THREAD = 4;
+
     /** number of errors during processing */
     private AtomicInteger errors = new AtomicInteger(0);
 
@@ -189,6 +201,18 @@ public class Main {
      * and adding classes to dex file in original input file order. */
     private ExecutorService classDefItemConsumer;
 
+    /** Thread pool used for parsing class files in parallel, or
+     * {@code null} if class files are parsed on the reading thread. */
+    private ExecutorService classParserPool;
+
+    /** Single thread executor, handing parsed class files to the
+     * translation phase in original input file order. */
+    private ExecutorService classFileConsumer;
+
+    /** Bounds the class files submitted to {@code classParserPool} that
+     * have not been handed to the translation phase yet. */
+    private Semaphore classFilesInParse;
+
     /** Futures for {@code classDefItemConsumer} tasks. */
     private List<Future<Boolean>> addToDexFutures =
             new ArrayList<Future<Boolean>>();
@@ -227,6 +251,13 @@ public class Main {
 
     private OutputStreamWriter humanOutWriter = null;
 
+    /** {@code null-ok;} per-class dex cache, used with {@code --class-cache} */
+    private ClassDexCache classDexCache;
+
+    /** Futures producing the single-class dex of every input class, in
+     * input file order. Only used with {@code --class-cache}. */
+    private List<Future<byte[]>> classDexFutures = new ArrayList<Future<byte[]>>();
+
     private final DxContext context;
 
     public Main(DxContext context) {
@@ -249,6 +280,11 @@ public class Main {
         }
     }
 
+    /**
+     * Empties the intern tables bound to the current thread. Every run
+     * interns into the tables of its own {@link DxContext}, so this is only
+     * needed to release memory held by a context that is kept around.
+     */
     public static void clearInternTables() {
         Prototype.clearInternTable();
         RegisterSpec.clearInternTable();
@@ -276,12 +312,20 @@ public class Main {
         args = arguments;
         args.makeOptionsObjects();
 
+        classDexFutures.clear();
+        classDexCache = null;
+        if (args.classCacheDir != null) {
+            classDexCache = new ClassDexCache(new File(args.classCacheDir),
+                    args.getTranslationOptionsKey());
+        }
+
         OutputStream humanOutRaw = null;
         if (args.humanOutName != null) {
             humanOutRaw = openOutput(args.humanOutName);
             humanOutWriter = new OutputStreamWriter(humanOutRaw);
         }
 
+        InternTables previousTables = context.internTables.bind();
         try {
             if (args.multiDex) {
                 return runMultiDex();
@@ -289,10 +333,32 @@ public class Main {
                 return runMonoDex();
             }
         } finally {
+            InternTables.restore(previousTables);
             closeOutput(humanOutRaw);
         }
     }
 
+    /**
+     * Creates the worker threads of this run, bound to the intern tables of
+     * its context.
+     */
+    private ThreadFactory newWorkerThreadFactory() {
+        final InternTables internTables = context.internTables;
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return defaultFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        internTables.bind();
+                        r.run();
+                    }
+                });
+            }
+        };
+    }
+
     private int runMonoDex() throws IOException {
 
         File incrementalOutFile = null;
@@ -316,6 +382,17 @@ public class Main {
             return 0; // this was a no-op incremental build
         }
 
+        if (!args.jarOutput && !args.incremental && libraryDexBuffers.isEmpty()
+                && args.outName != null && !isStandardOutput(args.outName)) {
+            // nothing to merge, stream the dex straight to its file
+            if (!outputDex.isEmpty() || (args.humanOutName != null)) {
+                if (!writeDex(outputDex, new File(args.outName))) {
+                    return 2;
+                }
+            }
+            return 0;
+        }
+
         // this array is null if no classes were defined
         byte[] outArray = null;
 
@@ -361,7 +438,8 @@ public class Main {
             readPathsFromFile(args.mainDexListFile, classesInMainDex);
         }
 
-        dexOutPool = Executors.newFixedThreadPool(args.numThreads);
+        dexOutPool = Executors.newFixedThreadPool(args.numThreads,
+                newWorkerThreadFactory());
 
         if (!processAllFiles()) {
             return 1;
@@ -374,7 +452,7 @@ public class Main {
         if (outputDex != null) {
             // this array is null if no classes were defined
 
-            dexOutputFutures.add(dexOutPool.submit(new DexWriter(outputDex)));
+            dexOutputFutures.add(dexOutPool.submit(newDexWriter(outputDex)));
 
             // Effectively free up the (often massive) DexFile memory.
             outputDex = null;
@@ -386,7 +464,10 @@ public class Main {
             }
 
             for (Future<byte[]> f : dexOutputFutures) {
-                dexOutputArrays.add(f.get());
+                byte[] dexArray = f.get();
+                if (dexArray != null) {
+                    dexOutputArrays.add(dexArray);
+                }
             }
 
         } catch (InterruptedException ex) {
@@ -406,22 +487,27 @@ public class Main {
             if (!createJar(args.outName)) {
                 return 3;
             }
-        } else if (args.outName != null) {
-            File outDir = new File(args.outName);
-            assert outDir.isDirectory();
-            for (int i = 0; i < dexOutputArrays.size(); i++) {
-                OutputStream out = new FileOutputStream(new File(outDir, getDexFileName(i)));
-                try {
-                    out.write(dexOutputArrays.get(i));
-                } finally {
-                    closeOutput(out);
-                }
-            }
         }
+        // with an output directory, every dex has been written by its DexWriter
 
         return 0;
     }
 
+    /**
+     * Creates the writer for a finished dex file. With an output directory
+     * the dex is streamed to its file as soon as it is written, so it is
+     * not kept in memory until all of them are done.
+     */
+    private DexWriter newDexWriter(DexFile dexFile) {
+        File dexOut = null;
+        if (!args.jarOutput && args.outName != null) {
+            File outDir = new File(args.outName);
+            assert outDir.isDirectory();
+            dexOut = new File(outDir, getDexFileName(dexOutputFutures.size()));
+        }
+        return new DexWriter(dexFile, dexOut);
+    }
+
     private static String getDexFileName(int i) {
         if (i == 0) {
             return DexFormat.DEX_IN_JAR_NAME;
@@ -467,7 +553,10 @@ public class Main {
         }
 
         if (base.exists()) {
-            dexB = new Dex(base);
+            // base is the output that gets overwritten, so it is not mapped
+            dexB = base.getName().endsWith(".dex")
+                    ? new Dex(new FileInputStream(base))
+                    : new Dex(base);
         }
 
         Dex result;
@@ -501,8 +590,26 @@ public class Main {
         if (dexes.isEmpty()) {
             return null;
         }
-        Dex merged = new DexMerger(dexes.toArray(new Dex[dexes.size()]), CollisionPolicy.FAIL, context).merge();
-        return merged.getBytes();
+
+        // merge groups of libraries and transform their code in parallel
+        ExecutorService mergerPool = null;
+        if (args.numThreads > 1) {
+            mergerPool = Executors.newFixedThreadPool(args.numThreads,
+                    newWorkerThreadFactory());
+        }
+
+        try {
+            DexMerger merger = new DexMerger(dexes.toArray(new Dex[dexes.size()]),
+                    CollisionPolicy.FAIL, context, mergerPool);
+            // with --class-cache every cached class is an input of its own
+            merger.setVerbose(args.verbose);
+            Dex merged = merger.merge();
+            return merged.getBytes();
+        } finally {
+            if (mergerPool != null) {
+                mergerPool.shutdownNow();
+            }
+        }
     }
 
     /**
@@ -526,9 +633,11 @@ public class Main {
         classTranslatorPool = new ThreadPoolExecutor(args.numThreads,
                args.numThreads, 0, TimeUnit.SECONDS,
                new ArrayBlockingQueue<Runnable>(2 * args.numThreads, true),
+               newWorkerThreadFactory(),
                new ThreadPoolExecutor.CallerRunsPolicy());
         // collect translated and write to dex in order
-        classDefItemConsumer = Executors.newSingleThreadExecutor();
+        classDefItemConsumer = Executors.newSingleThreadExecutor(
+                newWorkerThreadFactory());
 
 
         try {
@@ -572,8 +681,12 @@ public class Main {
             } else {
                 // without --main-dex-list
                 FileNameFilter filter = new RemoveModuleInfoFilter(ClassPathOpener.acceptAll);
-                for (int i = 0; i < fileNames.length; i++) {
-                    processOne(fileNames[i], filter);
+                if (!args.multiDex && args.numThreads > 1 && classDexCache == null) {
+                    processAllPipelined(fileNames, filter);
+                } else {
+                    for (int i = 0; i < fileNames.length; i++) {
+                        processOne(fileNames[i], filter);
+                    }
                 }
             }
         } catch (StopProcessing ex) {
@@ -584,6 +697,12 @@ public class Main {
         }
 
         try {
+            if (classParserPool != null) {
+                // the consumer feeds the translator pool, drain it first
+                classParserPool.shutdown();
+                classFileConsumer.shutdown();
+                classFileConsumer.awaitTermination(600L, TimeUnit.SECONDS);
+            }
             classTranslatorPool.shutdown();
             classTranslatorPool.awaitTermination(600L, TimeUnit.SECONDS);
             classDefItemConsumer.shutdown();
@@ -609,15 +728,37 @@ public class Main {
                 }
             }
 
+            for (Future<byte[]> f : classDexFutures) {
+                try {
+                    byte[] classDex = f.get();
+                    if (classDex != null) {
+                        libraryDexBuffers.add(classDex);
+                    }
+                } catch(ExecutionException ex) {
+                    int count = errors.incrementAndGet();
+                    if (count < 10) {
+                        if (args.debug) {
+                            context.err.println("Uncaught translation error:");
+                            ex.getCause().printStackTrace(context.err);
+                        } else {
+                            context.err.println("Uncaught translation error: " + ex.getCause());
+                        }
+                    } else {
+                        throw new InterruptedException("Too many errors");
+                    }
+                }
+            }
+
         } catch (InterruptedException ie) {
-            classTranslatorPool.shutdownNow();
-            classDefItemConsumer.shutdownNow();
+            shutdownTranslationNow();
             throw new RuntimeException("Translation has been interrupted", ie);
         } catch (Exception e) {
-            classTranslatorPool.shutdownNow();
-            classDefItemConsumer.shutdownNow();
+            shutdownTranslationNow();
             e.printStackTrace(context.out);
             throw new RuntimeException("Unexpected exception in translator thread.", e);
+        } finally {
+            classParserPool = null;
+            classFileConsumer = null;
         }
 
         int errorNum = errors.get();
@@ -643,6 +784,61 @@ public class Main {
         return true;
     }
 
+    private void shutdownTranslationNow() {
+        if (classParserPool != null) {
+            classParserPool.shutdownNow();
+            classFileConsumer.shutdownNow();
+        }
+        classTranslatorPool.shutdownNow();
+        classDefItemConsumer.shutdownNow();
+    }
+
+    /**
+     * Processes all pathname elements as a pipeline. Input files are read
+     * concurrently, each by its own reader a bounded number of files ahead,
+     * class files are parsed in parallel and handed to the translation phase
+     * by a single thread, so that the output keeps the order in which
+     * {@link #processOne} would have added the classes.
+     *
+     * @param fileNames {@code non-null;} the sorted pathnames to process
+     * @param filter {@code non-null;} A filter for excluding files.
+     */
+    private void processAllPipelined(String[] fileNames, FileNameFilter filter) {
+        classParserPool = Executors.newFixedThreadPool(args.numThreads,
+                newWorkerThreadFactory());
+        classFileConsumer = Executors.newSingleThreadExecutor(
+                newWorkerThreadFactory());
+        classFilesInParse = new Semaphore(PARSE_AHEAD_PER_THREAD * args.numThreads);
+
+        /*
+         * Readers are started in input order, so the input that is replayed
+         * next has always been started, and the ones behind it only block
+         * once their read ahead is full.
+         */
+        ExecutorService readerPool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(args.numThreads, fileNames.length)),
+                newWorkerThreadFactory());
+        try {
+            List<InputReader> readers = new ArrayList<InputReader>(fileNames.length);
+            for (String fileName : fileNames) {
+                InputReader reader = new InputReader(fileName, filter);
+                readerPool.execute(reader);
+                readers.add(reader);
+            }
+
+            FileBytesConsumer consumer = new FileBytesConsumer();
+            for (InputReader reader : readers) {
+                if (reader.replay(consumer)) {
+                    updateStatus(true);
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Reading input has been interrupted", ex);
+        } finally {
+            readerPool.shutdownNow();
+        }
+    }
+
     private void createDexFile() {
         outputDex = new DexFile(args.dexOptions);
 
@@ -654,7 +850,7 @@ public class Main {
     private void rotateDexFile() {
         if (outputDex != null) {
             if (dexOutPool != null) {
-                dexOutputFutures.add(dexOutPool.submit(new DexWriter(outputDex)));
+                dexOutputFutures.add(dexOutPool.submit(newDexWriter(outputDex)));
             } else {
                 dexOutputArrays.add(writeDex(outputDex));
             }
@@ -752,6 +948,16 @@ public class Main {
             checkClassName(name);
         }
 
+        if (classDexCache != null) {
+            processClassCached(name, bytes);
+            return true;
+        }
+
+        if (classParserPool != null) {
+            processClassPipelined(name, bytes);
+            return true;
+        }
+
         try {
             new DirectClassFileConsumer(name, bytes, null).call(
                     new ClassParserTask(name, bytes).call());
@@ -766,6 +972,77 @@ public class Main {
     }
 
 
+    /**
+     * Processes one classfile through the per-class cache. A cached
+     * translation is reused as is, otherwise the class is translated on
+     * its own into a single-class dex which is then cached. All of them
+     * are merged into the output together with the library dex files.
+     *
+     * @param name {@code non-null;} name of the file
+     * @param bytes {@code non-null;} contents of the file
+     */
+    private void processClassCached(String name, byte[] bytes) {
+        final File entry = classDexCache.getEntry(bytes);
+        if (entry.isFile()) {
+            classDexFutures.add(classTranslatorPool.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    byte[] dex = classDexCache.read(entry);
+                    updateStatus(true);
+                    return dex;
+                }
+            }));
+            return;
+        }
+
+        try {
+            DirectClassFile cf = new ClassParserTask(name, bytes).call();
+            classDexFutures.add(classTranslatorPool.submit(
+                    new ClassDexTranslatorTask(bytes, cf, entry)));
+        } catch (ParseException ex) {
+            // handled in FileBytesConsumer
+            throw ex;
+        } catch(Exception ex) {
+            throw new RuntimeException("Exception parsing classes", ex);
+        }
+    }
+
+    /**
+     * Processes one classfile in the pipeline. The class is parsed in
+     * {@code classParserPool} and handed to translation by
+     * {@code classFileConsumer}, in the order the classes are processed.
+     *
+     * @param name {@code non-null;} name of the file
+     * @param bytes {@code non-null;} contents of the file
+     */
+    private void processClassPipelined(String name, byte[] bytes) {
+        try {
+            classFilesInParse.acquire();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Translation has been interrupted", ex);
+        }
+
+        final DirectClassFileConsumer consumer = new DirectClassFileConsumer(
+                name, bytes, classParserPool.submit(new ClassParserTask(name, bytes)));
+        classFileConsumer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    consumer.call();
+                } catch (ExecutionException ex) {
+                    // report parse errors like a class parsed while reading
+                    Throwable cause = ex.getCause();
+                    new FileBytesConsumer().onException(
+                            (cause instanceof Exception) ? (Exception) cause : ex);
+                } catch (Exception ex) {
+                    new FileBytesConsumer().onException(ex);
+                } finally {
+                    classFilesInParse.release();
+                }
+            }
+        });
+    }
+
     private DirectClassFile parseClass(String name, byte[] bytes) {
 
         DirectClassFile cf = new DirectClassFile(bytes, name,
@@ -776,9 +1053,14 @@ public class Main {
     }
 
     private mod.agus.jcoderz.dx.dex.file.ClassDefItem translateClass(byte[] bytes, DirectClassFile cf) {
+        return translateClass(bytes, cf, outputDex);
+    }
+
+    private mod.agus.jcoderz.dx.dex.file.ClassDefItem translateClass(byte[] bytes, DirectClassFile cf,
+            DexFile dexFile) {
         try {
             return CfTranslator.translate(context, cf, bytes, args.cfOptions,
-                    args.dexOptions, outputDex);
+                    args.dexOptions, dexFile);
         } catch (ParseException ex) {
             context.err.println("\ntrouble processing:");
             if (args.debug) {
@@ -848,6 +1130,14 @@ public class Main {
     private byte[] writeDex(DexFile outputDex) {
         byte[] outArray = null;
 
+        // lay out and write the sections of the file in parallel
+        ExecutorService dexWriterPool = null;
+        if (args.numThreads > 1) {
+            dexWriterPool = Executors.newFixedThreadPool(args.numThreads,
+                    newWorkerThreadFactory());
+            outputDex.setExecutor(dexWriterPool);
+        }
+
         try {
             try {
                 if (args.methodToDump != null) {
@@ -870,23 +1160,94 @@ public class Main {
                     context.out.println(outputDex.getStatistics().toHuman());
                 }
             } finally {
+                if (dexWriterPool != null) {
+                    outputDex.setExecutor(null);
+                    dexWriterPool.shutdownNow();
+                }
                 if (humanOutWriter != null) {
                     humanOutWriter.flush();
                 }
             }
         } catch (Exception ex) {
-            if (args.debug) {
-                context.err.println("\ntrouble writing output:");
-                ex.printStackTrace(context.err);
-            } else {
-                context.err.println("\ntrouble writing output: " +
-                                   ex.getMessage());
-            }
+            reportWriteError(ex);
             return null;
         }
         return outArray;
     }
 
+    /**
+     * Writes the given dex file to {@code dexOut}, streaming it section by
+     * section rather than building the whole file in memory first. Dumps
+     * still need the file in memory, they go through {@link #writeDex(DexFile)}.
+     *
+     * @param outputDex {@code non-null;} the dex file to write
+     * @param dexOut {@code non-null;} the file to write to
+     * @return whether writing was successful
+     */
+    private boolean writeDex(DexFile outputDex, File dexOut) {
+        if (args.methodToDump != null || humanOutWriter != null) {
+            byte[] outArray = writeDex(outputDex);
+            if (outArray == null) {
+                return false;
+            }
+            if (args.methodToDump != null) {
+                return true;
+            }
+            try {
+                OutputStream out = new FileOutputStream(dexOut);
+                try {
+                    out.write(outArray);
+                } finally {
+                    closeOutput(out);
+                }
+                return true;
+            } catch (IOException ex) {
+                reportWriteError(ex);
+                return false;
+            }
+        }
+
+        // lay out the file in parallel, as writeDex(DexFile) does
+        ExecutorService dexWriterPool = null;
+        if (args.numThreads > 1) {
+            dexWriterPool = Executors.newFixedThreadPool(args.numThreads,
+                    newWorkerThreadFactory());
+            outputDex.setExecutor(dexWriterPool);
+        }
+
+        try {
+            FileOutputStream out = new FileOutputStream(dexOut);
+            try {
+                outputDex.writeTo(out.getChannel());
+            } finally {
+                out.close();
+            }
+
+            if (args.statistics) {
+                context.out.println(outputDex.getStatistics().toHuman());
+            }
+        } catch (Exception ex) {
+            reportWriteError(ex);
+            return false;
+        } finally {
+            if (dexWriterPool != null) {
+                outputDex.setExecutor(null);
+                dexWriterPool.shutdownNow();
+            }
+        }
+        return true;
+    }
+
+    private void reportWriteError(Exception ex) {
+        if (args.debug) {
+            context.err.println("\ntrouble writing output:");
+            ex.printStackTrace(context.err);
+        } else {
+            context.err.println("\ntrouble writing output: " +
+                               ex.getMessage());
+        }
+    }
+
     /**
      * Creates a jar file from the resources (including dex file arrays).
      *
@@ -984,14 +1345,22 @@ public class Main {
      * @return {@code non-null;} the opened file
      */
     private OutputStream openOutput(String name) throws IOException {
-        if (name.equals("-") ||
-                name.startsWith("-.")) {
+        if (isStandardOutput(name)) {
             return context.out;
         }
 
         return new FileOutputStream(name);
     }
 
+    /**
+     * Returns whether an output name stands for the standard output.
+     *
+     * @param name {@code non-null;} the output name
+     */
+    private static boolean isStandardOutput(String name) {
+        return name.equals("-") || name.startsWith("-.");
+    }
+
     /**
      * Flushes and closes the given output stream, except if it happens to be
      * {@link System#out} in which case this method does the flush but not
@@ -1264,6 +1633,8 @@ public class Main {
 
         private static final String INPUT_LIST_OPTION = "--input-list";
 
+        private static final String CLASS_CACHE_OPTION = "--class-cache";
+
         public final DxContext context;
 
         /** whether to run in debug mode */
@@ -1326,6 +1697,10 @@ public class Main {
         /** whether to merge with the output dex file if it exists. */
         public boolean incremental = false;
 
+        /** {@code null-ok;} directory of the per-class dex cache. Classes
+         * found in it are not translated again. */
+        public String classCacheDir = null;
+
         /** whether to force generation of const-string/jumbo for all indexes,
          *  to allow merges between dex files with many strings. */
         public boolean forceJumbo = false;
@@ -1345,6 +1720,15 @@ public class Main {
         /** Filename containing list of methods to NOT optimize */
         public String dontOptimizeListFile = null;
 
+        /** rop insn count from which methods get the fast optimizer tier, 0 if never */
+        public int fastOptimizeInsnCount = 0;
+
+        /** milliseconds of optional optimizer steps per method, 0 if unlimited */
+        public int optimizeTimeBudget = 0;
+
+        /** rop insn count from which registers are allocated by linear scan, 0 if never */
+        public int linearScanInsnCount = CfOptions.DEFAULT_LINEAR_SCAN_INSN_COUNT;
+
         /** Whether to print statistics to stdout at end of compile cycle */
         public boolean statistics;
 
@@ -1522,6 +1906,14 @@ public class Main {
                     }
                     optimize = true;
                     dontOptimizeListFile = parser.getLastValue();
+                } else if (parser.isArg("--fast-optimize-insns=")) {
+                    fastOptimizeInsnCount = Integer.parseInt(parser.getLastValue());
+                } else if (parser.isArg("--optimize-time-budget=")) {
+                    optimizeTimeBudget = Integer.parseInt(parser.getLastValue());
+                } else if (parser.isArg("--linear-scan")) {
+                    linearScanInsnCount = 1;
+                } else if (parser.isArg("--linear-scan-insns=")) {
+                    linearScanInsnCount = Integer.parseInt(parser.getLastValue());
                 } else if (parser.isArg("--keep-classes")) {
                     keepClassesInJar = true;
                 } else if (parser.isArg("--output=")) {
@@ -1566,6 +1958,8 @@ public class Main {
                     numThreads = Integer.parseInt(parser.getLastValue());
                 } else if (parser.isArg(INCREMENTAL_OPTION)) {
                     incremental = true;
+                } else if (parser.isArg(CLASS_CACHE_OPTION + "=")) {
+                    classCacheDir = parser.getLastValue();
                 } else if (parser.isArg("--force-jumbo")) {
                     forceJumbo = true;
                 } else if (parser.isArg(MULTI_DEX_OPTION)) {
@@ -1659,6 +2053,33 @@ public class Main {
                 throw new UsageException();
             }
 
+            if (multiDex && classCacheDir != null) {
+                context.err.println(CLASS_CACHE_OPTION + " is not supported with "
+                    + MULTI_DEX_OPTION);
+                throw new UsageException();
+            }
+
+            if (optimizeTimeBudget != 0 && classCacheDir != null) {
+                /*
+                 * The output then depends on how long each method took,
+                 * which must not be cached for later runs.
+                 */
+                context.err.println(CLASS_CACHE_OPTION + " is not supported with "
+                    + "--optimize-time-budget");
+                throw new UsageException();
+            }
+
+            if ((optimizeListFile != null || dontOptimizeListFile != null)
+                    && classCacheDir != null) {
+                /*
+                 * The output then depends on the contents of the list,
+                 * which the cached translations are not keyed by.
+                 */
+                context.err.println(CLASS_CACHE_OPTION + " is not supported with "
+                    + "--optimize-list or --no-optimize-list");
+                throw new UsageException();
+            }
+
             if (multiDex && outputIsDirectDex) {
                 context.err.println("Unsupported output \"" + outName +"\". " + MULTI_DEX_OPTION +
                         " supports only archive or directory output");
@@ -1682,6 +2103,25 @@ public class Main {
             parseFlags(new ArgumentsParser(flags));
         }
 
+        /**
+         * Describes every option that changes how a single class is
+         * translated, used to key the per-class dex cache.
+         *
+         * @return {@code non-null;} the options description
+         */
+        String getTranslationOptionsKey() {
+            return "dx " + Version.VERSION
+                    + ";minSdk=" + minSdkVersion
+                    + ";positions=" + positionInfo
+                    + ";locals=" + localInfo
+                    + ";optimize=" + optimize
+                    + ";forceJumbo=" + forceJumbo
+                    + ";allInterfaceInvokes=" + allowAllInterfaceMethodInvokes
+                    + ";fastOptimizeInsns=" + fastOptimizeInsnCount
+                    + ";linearScan=" + (linearScanInsnCount != 0)
+                    + ";linearScanInsns=" + linearScanInsnCount;
+        }
+
         /**
          * Copies relevant arguments over into CfOptions and DexOptions instances.
          */
@@ -1693,6 +2133,9 @@ public class Main {
             cfOptions.optimize = optimize;
             cfOptions.optimizeListFile = optimizeListFile;
             cfOptions.dontOptimizeListFile = dontOptimizeListFile;
+            cfOptions.fastOptimizeInsnCount = fastOptimizeInsnCount;
+            cfOptions.optimizeTimeBudget = optimizeTimeBudget;
+            cfOptions.linearScanInsnCount = linearScanInsnCount;
             cfOptions.statistics = statistics;
 
             if (warnings) {
@@ -1751,6 +2194,112 @@ public class Main {
         }
     }
 
+    /**
+     * Reads one pathname element on a worker thread, and records what it
+     * reads so it can be replayed to a {@link FileBytesConsumer} in input
+     * order. At most {@link #INPUT_READ_AHEAD} files are held at a time.
+     */
+    private class InputReader implements Runnable, ClassPathOpener.Consumer {
+
+        /** Marks the end of the input in {@code entries}. */
+        private final InputEntry end = new InputEntry(null, 0, null, null, null);
+
+        private final String pathname;
+        private final FileNameFilter filter;
+        private final BlockingQueue<InputEntry> entries =
+                new ArrayBlockingQueue<InputEntry>(INPUT_READ_AHEAD);
+
+        private InputReader(String pathname, FileNameFilter filter) {
+            this.pathname = pathname;
+            this.filter = filter;
+        }
+
+        @Override
+        public void run() {
+            try {
+                new ClassPathOpener(pathname, true, filter, this).process();
+            } catch (RuntimeException ex) {
+                onException(ex);
+            } finally {
+                put(end);
+            }
+        }
+
+        @Override
+        public boolean processFileBytes(String name, long lastModified, byte[] bytes) {
+            if (!put(new InputEntry(name, lastModified, bytes, null, null))) {
+                // processing was abandoned, ClassPathOpener stops on this
+                throw new StopProcessing();
+            }
+            // the actual result is known once the entry is replayed
+            return false;
+        }
+
+        @Override
+        public void onException(Exception ex) {
+            put(new InputEntry(null, 0, null, ex, null));
+        }
+
+        @Override
+        public void onProcessArchiveStart(File file) {
+            put(new InputEntry(null, 0, null, null, file));
+        }
+
+        private boolean put(InputEntry entry) {
+            try {
+                entries.put(entry);
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Replays what was read, waiting for the reader as needed.
+         *
+         * @return whether any file was processed successfully
+         */
+        private boolean replay(FileBytesConsumer consumer) throws InterruptedException {
+            boolean any = false;
+            InputEntry entry;
+            while ((entry = entries.take()) != end) {
+                if (entry.exception != null) {
+                    consumer.onException(entry.exception);
+                } else if (entry.archive != null) {
+                    consumer.onProcessArchiveStart(entry.archive);
+                } else {
+                    try {
+                        any |= consumer.processFileBytes(entry.name,
+                                entry.lastModified, entry.bytes);
+                    } catch (Exception ex) {
+                        consumer.onException(ex);
+                    }
+                }
+            }
+            return any;
+        }
+    }
+
+    /** A file, exception or archive start recorded by an {@link InputReader}. */
+    private static class InputEntry {
+
+        final String name;
+        final long lastModified;
+        final byte[] bytes;
+        final Exception exception;
+        final File archive;
+
+        private InputEntry(String name, long lastModified, byte[] bytes,
+                Exception exception, File archive) {
+            this.name = name;
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+            this.exception = exception;
+            this.archive = archive;
+        }
+    }
+
     /** Callable helper class to parse class bytes. */
     private class ClassParserTask implements Callable<DirectClassFile> {
 
@@ -1904,6 +2453,38 @@ public class Main {
         }
     }
 
+    /**
+     * Callable helper class to translate one class on its own into a
+     * single-class dex, and store it in the per-class cache.
+     */
+    private class ClassDexTranslatorTask implements Callable<byte[]> {
+
+        byte[] bytes;
+        DirectClassFile classFile;
+        File entry;
+
+        private ClassDexTranslatorTask(byte[] bytes, DirectClassFile classFile,
+                File entry) {
+            this.bytes = bytes;
+            this.classFile = classFile;
+            this.entry = entry;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            DexFile classDex = new DexFile(args.dexOptions);
+            ClassDefItem clazz = translateClass(bytes, classFile, classDex);
+            if (clazz == null) {
+                return null;
+            }
+            classDex.add(clazz);
+            byte[] dex = classDex.toDex(null, false);
+            classDexCache.write(entry, dex);
+            updateStatus(true);
+            return dex;
+        }
+    }
+
     /**
      * Callable helper class used to collect the results of
      * the parallel translation phase, adding the translated classes to
@@ -1958,18 +2539,32 @@ public class Main {
         }
     }
 
-    /** Callable helper class to convert dex files in worker threads */
+    /**
+     * Callable helper class to convert dex files in worker threads. If
+     * given a file, the dex is written straight to it and the result is
+     * {@code null}, otherwise the result is the dex as a byte array.
+     */
     private class DexWriter implements Callable<byte[]> {
 
         private final DexFile dexFile;
 
-        private DexWriter(DexFile dexFile) {
+        /** {@code null-ok;} file to write the dex to */
+        private final File dexOut;
+
+        private DexWriter(DexFile dexFile, File dexOut) {
             this.dexFile = dexFile;
+            this.dexOut = dexOut;
         }
 
         @Override
         public byte[] call() throws IOException {
-            return writeDex(dexFile);
+            if (dexOut == null) {
+                return writeDex(dexFile);
+            }
+            if (!writeDex(dexFile, dexOut)) {
+                throw new IOException("unable to write " + dexOut);
+            }
+            return null;
         }
     }
 }
@@ -16,14 +16,13 @@
 
 package mod.agus.jcoderz.dx.command.findusages;
 
-import mod.agus.jcoderz.dex.ClassData;
 import mod.agus.jcoderz.dex.ClassDef;
 import mod.agus.jcoderz.dex.Dex;
 import mod.agus.jcoderz.dex.FieldId;
 import mod.agus.jcoderz.dex.MethodId;
-import mod.agus.jcoderz.dx.io.CodeReader;
+import mod.agus.jcoderz.dx.io.DexUsageIndex;
 import mod.agus.jcoderz.dx.io.OpcodeInfo;
-import mod.agus.jcoderz.dx.io.instructions.DecodedInstruction;
+import mod.agus.jcoderz.dx.util.IntList;
 import java.io.PrintWriter;
 import java.util.Collections;
 import java.util.HashSet;
@@ -32,24 +31,31 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 public final class FindUsages {
-    private final Dex dex;
-    private final Set<Integer> methodIds;
-    private final Set<Integer> fieldIds;
-    private final CodeReader codeReader = new CodeReader();
+    private final DexUsageIndex index;
+    private final IntList methodIds;
+    private final IntList fieldIds;
     private final PrintWriter out;
 
-    private ClassDef currentClass;
-    private ClassData.Method currentMethod;
-
     public FindUsages(final Dex dex, String declaredBy, String memberName, final PrintWriter out) {
-        this.dex = dex;
+        this(DexUsageIndex.build(dex), declaredBy, memberName, out);
+    }
+
+    /**
+     * Constructs an instance that looks up the members in {@code index}, so
+     * that repeated searches of a dex need not read its code again.
+     */
+    public FindUsages(DexUsageIndex index, String declaredBy, String memberName,
+            PrintWriter out) {
+        this.index = index;
         this.out = out;
 
+        Dex dex = index.getDex();
+
         Set<Integer> typeStringIndexes = new HashSet<Integer>();
         Set<Integer> memberNameIndexes = new HashSet<Integer>();
         Pattern declaredByPattern = Pattern.compile(declaredBy);
         Pattern memberNamePattern = Pattern.compile(memberName);
-        List<String> strings = dex.strings();
+        List<String> strings = index.getStrings();
         for (int i = 0; i < strings.size(); ++i) {
             String string = strings.get(i);
             if (declaredByPattern.matcher(string).matches()) {
@@ -64,48 +70,15 @@ public final class FindUsages {
             return; // these symbols are not mentioned in this dex
         }
 
-        methodIds = new HashSet<Integer>();
-        fieldIds = new HashSet<Integer>();
+        methodIds = new IntList();
+        fieldIds = new IntList();
         for (int typeStringIndex : typeStringIndexes) {
             int typeIndex = Collections.binarySearch(dex.typeIds(), typeStringIndex);
             if (typeIndex < 0) {
                 continue; // this type name isn't used as a type in this dex
             }
-            methodIds.addAll(getMethodIds(dex, memberNameIndexes, typeIndex));
-            fieldIds.addAll(getFieldIds(dex, memberNameIndexes, typeIndex));
-        }
-
-        codeReader.setFieldVisitor(new CodeReader.Visitor() {
-            @Override
-            public void visit(DecodedInstruction[] all,
-                    DecodedInstruction one) {
-                int fieldId = one.getIndex();
-                if (fieldIds.contains(fieldId)) {
-                    out.println(location() + ": field reference " + dex.fieldIds().get(fieldId)
-                            + " (" + OpcodeInfo.getName(one.getOpcode()) + ")");
-                }
-            }
-        });
-
-        codeReader.setMethodVisitor(new CodeReader.Visitor() {
-            @Override
-            public void visit(DecodedInstruction[] all, DecodedInstruction one) {
-                int methodId = one.getIndex();
-                if (methodIds.contains(methodId)) {
-                    out.println(location() + ": method reference " + dex.methodIds().get(methodId)
-                            + " (" + OpcodeInfo.getName(one.getOpcode()) + ")");
-                }
-            }
-        });
-    }
-
-    private String location() {
-        String className = dex.typeNames().get(currentClass.getTypeIndex());
-        if (currentMethod != null) {
-            MethodId methodId = dex.methodIds().get(currentMethod.getMethodIndex());
-            return className + "." + dex.strings().get(methodId.getNameIndex());
-        } else {
-            return className;
+            addMethodIds(dex, memberNameIndexes, typeIndex, methodIds);
+            addFieldIds(dex, memberNameIndexes, typeIndex, fieldIds);
         }
     }
 
@@ -117,44 +90,52 @@ public final class FindUsages {
             return;
         }
 
-        for (ClassDef classDef : dex.classDefs()) {
-            currentClass = classDef;
-            currentMethod = null;
-
-            if (classDef.getClassDataOffset() == 0) {
-                continue;
-            }
+        IntList uses = new IntList();
+        for (int i = 0; i < fieldIds.size(); i++) {
+            index.addUses(DexUsageIndex.FIELD, fieldIds.get(i), uses);
+        }
+        for (int i = 0; i < methodIds.size(); i++) {
+            index.addUses(DexUsageIndex.METHOD, methodIds.get(i), uses);
+        }
 
-            ClassData classData = dex.readClassData(classDef);
-            for (ClassData.Field field : classData.allFields()) {
-                int fieldIndex = field.getFieldIndex();
-                if (fieldIds.contains(fieldIndex)) {
-                    out.println(location() + " field declared " + dex.fieldIds().get(fieldIndex));
-                }
+        // in the order they are in the dex
+        uses.sort();
+        Dex dex = index.getDex();
+        for (int i = 0; i < uses.size(); i++) {
+            int use = uses.get(i);
+            if (i > 0 && use == uses.get(i - 1)) {
+                continue; // a method of several of the declaring types
             }
-
-            for (ClassData.Method method : classData.allMethods()) {
-                currentMethod = method;
-                int methodIndex = method.getMethodIndex();
-                if (methodIds.contains(methodIndex)) {
-                    out.println(location() + " method declared " + dex.methodIds().get(methodIndex));
+            int memberIndex = index.getIndex(use);
+            int opcode = index.getOpcode(use);
+            if (index.getKind(use) == DexUsageIndex.FIELD) {
+                if (opcode == DexUsageIndex.NO_OPCODE) {
+                    out.println(index.getLocation(use) + " field declared "
+                            + dex.fieldIds().get(memberIndex));
+                } else {
+                    out.println(index.getLocation(use) + ": field reference "
+                            + dex.fieldIds().get(memberIndex)
+                            + " (" + OpcodeInfo.getName(opcode) + ")");
                 }
-                if (method.getCodeOffset() != 0) {
-                    codeReader.visitAll(dex.readCode(method).getInstructions());
+            } else {
+                if (opcode == DexUsageIndex.NO_OPCODE) {
+                    out.println(index.getLocation(use) + " method declared "
+                            + dex.methodIds().get(memberIndex));
+                } else {
+                    out.println(index.getLocation(use) + ": method reference "
+                            + dex.methodIds().get(memberIndex)
+                            + " (" + OpcodeInfo.getName(opcode) + ")");
                 }
             }
         }
-
-        currentClass = null;
-        currentMethod = null;
     }
 
     /**
-     * Returns the fields with {@code memberNameIndex} declared by {@code
-     * declaringType}.
+     * Adds the fields with {@code memberNameIndex} declared by {@code
+     * declaringType} to {@code fields}.
      */
-    private Set<Integer> getFieldIds(Dex dex, Set<Integer> memberNameIndexes, int declaringType) {
-        Set<Integer> fields = new HashSet<Integer>();
+    private void addFieldIds(Dex dex, Set<Integer> memberNameIndexes, int declaringType,
+            IntList fields) {
         int fieldIndex = 0;
         for (FieldId fieldId : dex.fieldIds()) {
             if (memberNameIndexes.contains(fieldId.getNameIndex())
@@ -163,17 +144,16 @@ public final class FindUsages {
             }
             fieldIndex++;
         }
-        return fields;
     }
 
     /**
-     * Returns the methods with {@code memberNameIndex} declared by {@code
-     * declaringType} and its subtypes.
+     * Adds the methods with {@code memberNameIndex} declared by {@code
+     * declaringType} and its subtypes to {@code methods}.
      */
-    private Set<Integer> getMethodIds(Dex dex, Set<Integer> memberNameIndexes, int declaringType) {
+    private void addMethodIds(Dex dex, Set<Integer> memberNameIndexes, int declaringType,
+            IntList methods) {
         Set<Integer> subtypes = findAssignableTypes(dex, declaringType);
 
-        Set<Integer> methods = new HashSet<Integer>();
         int methodIndex = 0;
         for (MethodId method : dex.methodIds()) {
             if (memberNameIndexes.contains(method.getNameIndex())
@@ -182,7 +162,6 @@ public final class FindUsages {
             }
             methodIndex++;
         }
-        return methods;
     }
 
     /**
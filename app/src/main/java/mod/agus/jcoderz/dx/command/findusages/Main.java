@@ -16,20 +16,32 @@
 
 package mod.agus.jcoderz.dx.command.findusages;
 
-import mod.agus.jcoderz.dex.Dex;
+import mod.agus.jcoderz.dx.io.DexUsageIndex;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 
 public final class Main {
+    /**
+     * Finds usages of {@code [--index] <file.dex | directory> <declaring
+     * type> <member>}, searching the dex files of a multidex directory in
+     * parallel. With {@code --index}, the index of each dex is saved next to
+     * it and reused by later searches.
+     */
     public static void main(String[] args) throws IOException {
-        String dexFile = args[0];
-        String declaredBy = args[1];
-        String memberName = args[2];
+        boolean saved = args[0].equals("--index");
+        int argIndex = saved ? 1 : 0;
+        String dexFile = args[argIndex];
+        final String declaredBy = args[argIndex + 1];
+        final String memberName = args[argIndex + 2];
 
-        Dex dex = new Dex(new File(dexFile));
-        PrintWriter out = new PrintWriter(System.out);
-        new FindUsages(dex, declaredBy, memberName, out).findUsages();
-        out.flush();
+        DexUsageIndex.search(DexUsageIndex.getDexFiles(new File(dexFile)), saved,
+                new DexUsageIndex.Query() {
+                    @Override
+                    public int search(DexUsageIndex index, PrintWriter out) {
+                        new FindUsages(index, declaredBy, memberName, out).findUsages();
+                        return 0;
+                    }
+                }, new PrintWriter(System.out));
     }
 }
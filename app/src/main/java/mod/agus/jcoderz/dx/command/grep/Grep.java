@@ -16,111 +16,56 @@
 
 package mod.agus.jcoderz.dx.command.grep;
 
-import mod.agus.jcoderz.dex.ClassData;
-import mod.agus.jcoderz.dex.ClassDef;
 import mod.agus.jcoderz.dex.Dex;
-import mod.agus.jcoderz.dex.EncodedValueReader;
-import mod.agus.jcoderz.dex.MethodId;
-import mod.agus.jcoderz.dx.io.CodeReader;
-import mod.agus.jcoderz.dx.io.instructions.DecodedInstruction;
+import mod.agus.jcoderz.dx.io.DexUsageIndex;
+import mod.agus.jcoderz.dx.util.IntList;
 import java.io.PrintWriter;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public final class Grep {
-    private final Dex dex;
-    private final CodeReader codeReader = new CodeReader();
-    private final Set<Integer> stringIds;
-
+    private final DexUsageIndex index;
+    private final IntList stringIds;
     private final PrintWriter out;
-    private int count = 0;
-
-    private ClassDef currentClass;
-    private ClassData.Method currentMethod;
 
     public Grep(final Dex dex, Pattern pattern, final PrintWriter out) {
-        this.dex = dex;
-        this.out = out;
-
-        stringIds = getStringIds(dex, pattern);
-
-        codeReader.setStringVisitor(new CodeReader.Visitor() {
-            @Override
-            public void visit(DecodedInstruction[] all, DecodedInstruction one) {
-                encounterString(one.getIndex());
-            }
-        });
+        this(DexUsageIndex.build(dex), pattern, out);
     }
 
-    private void readArray(EncodedValueReader reader) {
-        for (int i = 0, size = reader.readArray(); i < size; i++) {
-            switch (reader.peek()) {
-            case EncodedValueReader.ENCODED_STRING:
-                encounterString(reader.readString());
-                break;
-            case EncodedValueReader.ENCODED_ARRAY:
-                readArray(reader);
-                break;
-            }
-        }
-    }
-
-    private void encounterString(int index) {
-        if (stringIds.contains(index)) {
-            out.println(location() + " " + dex.strings().get(index));
-            count++;
-        }
-    }
+    /**
+     * Constructs an instance that looks up the strings in {@code index}, so
+     * that repeated searches of a dex need not read its code again.
+     */
+    public Grep(DexUsageIndex index, Pattern pattern, PrintWriter out) {
+        this.index = index;
+        this.out = out;
 
-    private String location() {
-        String className = dex.typeNames().get(currentClass.getTypeIndex());
-        if (currentMethod != null) {
-            MethodId methodId = dex.methodIds().get(currentMethod.getMethodIndex());
-            return className + "." + dex.strings().get(methodId.getNameIndex());
-        } else {
-            return className;
-        }
+        stringIds = getStringIds(index.getStrings(), pattern);
     }
 
     /**
      * Prints usages to out. Returns the number of matches found.
      */
     public int grep() {
-        for (ClassDef classDef : dex.classDefs()) {
-            currentClass = classDef;
-            currentMethod = null;
-
-            if (classDef.getClassDataOffset() == 0) {
-                continue;
-            }
-
-            ClassData classData = dex.readClassData(classDef);
-
-            // find the strings in encoded constants
-            int staticValuesOffset = classDef.getStaticValuesOffset();
-            if (staticValuesOffset != 0) {
-                readArray(new EncodedValueReader(dex.open(staticValuesOffset)));
-            }
-
-            // find the strings in method bodies
-            for (ClassData.Method method : classData.allMethods()) {
-                currentMethod = method;
-                if (method.getCodeOffset() != 0) {
-                    codeReader.visitAll(dex.readCode(method).getInstructions());
-                }
-            }
+        IntList uses = new IntList();
+        for (int i = 0; i < stringIds.size(); i++) {
+            index.addUses(DexUsageIndex.STRING, stringIds.get(i), uses);
         }
 
-        currentClass = null;
-        currentMethod = null;
-        return count;
+        // in the order they are in the dex
+        uses.sort();
+        List<String> strings = index.getStrings();
+        for (int i = 0; i < uses.size(); i++) {
+            int use = uses.get(i);
+            out.println(index.getLocation(use) + " " + strings.get(index.getIndex(use)));
+        }
+        return uses.size();
     }
 
-    private Set<Integer> getStringIds(Dex dex, Pattern pattern) {
-        Set<Integer> stringIds = new HashSet<Integer>();
+    private IntList getStringIds(List<String> strings, Pattern pattern) {
+        IntList stringIds = new IntList();
         int stringIndex = 0;
-        for (String s : dex.strings()) {
+        for (String s : strings) {
             if (pattern.matcher(s).find()) {
                 stringIds.add(stringIndex);
             }
@@ -16,19 +16,32 @@
 
 package mod.agus.jcoderz.dx.command.grep;
 
-import mod.agus.jcoderz.dex.Dex;
+import mod.agus.jcoderz.dx.io.DexUsageIndex;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.regex.Pattern;
 
 public final class Main {
+    /**
+     * Greps {@code [--index] <file.dex | directory> <pattern>}, searching
+     * the dex files of a multidex directory in parallel. With
+     * {@code --index}, the index of each dex is saved next to it and reused
+     * by later searches.
+     */
     public static void main(String[] args) throws IOException {
-        String dexFile = args[0];
-        String pattern = args[1];
+        boolean saved = args[0].equals("--index");
+        int argIndex = saved ? 1 : 0;
+        String dexFile = args[argIndex];
+        final Pattern pattern = Pattern.compile(args[argIndex + 1]);
 
-        Dex dex = new Dex(new File(dexFile));
-        int count = new Grep(dex, Pattern.compile(pattern), new PrintWriter(System.out)).grep();
+        int count = DexUsageIndex.search(DexUsageIndex.getDexFiles(new File(dexFile)), saved,
+                new DexUsageIndex.Query() {
+                    @Override
+                    public int search(DexUsageIndex index, PrintWriter out) {
+                        return new Grep(index, pattern, out).grep();
+                    }
+                }, new PrintWriter(System.out));
         System.exit((count > 0) ? 0 : 1);
     }
 }
@@ -23,6 +23,12 @@ import java.io.PrintStream;
  * A class to contain options passed into dex.cf
  */
 public class CfOptions {
+    /**
+     * default rop insn count from which methods get registers allocated
+     * by linear scan
+     */
+    public static final int DEFAULT_LINEAR_SCAN_INSN_COUNT = 10000;
+
     /** how much source position info to preserve */
     public int positionInfo = PositionList.LINES;
 
@@ -41,6 +47,24 @@ public class CfOptions {
     /** filename containing list of methods <i>not</i> to optimize */
     public String dontOptimizeListFile = null;
 
+    /**
+     * rop insn count from which methods only get the fast optimizer tier,
+     * or {@code 0} to optimize all methods fully
+     */
+    public int fastOptimizeInsnCount = 0;
+
+    /**
+     * rop insn count from which registers are allocated by linear scan,
+     * {@code 1} for all methods or {@code 0} for none
+     */
+    public int linearScanInsnCount = DEFAULT_LINEAR_SCAN_INSN_COUNT;
+
+    /**
+     * milliseconds the optional optimizer steps may take per method, or
+     * {@code 0} for no limit. A limit makes the output depend on timing.
+     */
+    public int optimizeTimeBudget = 0;
+
     /** whether to print statistics to stdout at end of compile cycle */
     public boolean statistics;
 
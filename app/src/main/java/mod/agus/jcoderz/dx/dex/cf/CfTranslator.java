@@ -309,6 +309,7 @@ public class CfTranslator {
 
                     mod.agus.jcoderz.dx.rop.code.RopMethod rmeth = Ropper.convert(concrete, advice, methods, dexOptions);
                     mod.agus.jcoderz.dx.rop.code.RopMethod nonOptRmeth = null;
+                    boolean linearScan = false;
                     int paramSize;
 
                     paramSize = meth.getParameterWordCount(isStatic);
@@ -324,8 +325,22 @@ public class CfTranslator {
                         }
 
                         nonOptRmeth = rmeth;
+                        boolean fastTier = context.optimizerOptions.isFastTier(
+                                rmeth, cfOptions);
+                        linearScan = context.optimizerOptions.isLinearScan(
+                                rmeth, cfOptions);
+                        long startTime = cfOptions.statistics ? System.nanoTime() : 0;
                         rmeth = Optimizer.optimize(rmeth,
-                                paramSize, isStatic, cfOptions.localInfo, advice);
+                                paramSize, isStatic, cfOptions.localInfo, advice,
+                                context.optimizerOptions.getSteps(rmeth, cfOptions),
+                                cfOptions.optimizeTimeBudget * 1000000L);
+
+                        if (cfOptions.statistics) {
+                            context.codeStatistics.updateOptimizeTime(
+                                    canonicalName + one.getDescriptor().getString(),
+                                    nonOptRmeth.getBlocks().getEffectiveInstructionCount(),
+                                    fastTier, linearScan, System.nanoTime() - startTime);
+                        }
 
                         if (DEBUG) {
                             context.optimizerOptions.compareOptimizerStep(nonOptRmeth,
@@ -349,7 +364,7 @@ public class CfTranslator {
 
                     if (cfOptions.statistics && nonOptRmeth != null) {
                         updateDexStatistics(context, cfOptions, dexOptions, rmeth, nonOptRmeth, locals,
-                                paramSize, concrete.getCode().size());
+                                paramSize, concrete.getCode().size(), linearScan);
                     }
                 }
 
@@ -406,7 +421,8 @@ public class CfTranslator {
      */
     private static void updateDexStatistics(DxContext context, CfOptions cfOptions, DexOptions dexOptions,
                                             mod.agus.jcoderz.dx.rop.code.RopMethod optRmeth, RopMethod nonOptRmeth,
-                                            LocalVariableInfo locals, int paramSize, int originalByteCount) {
+                                            LocalVariableInfo locals, int paramSize, int originalByteCount,
+                                            boolean linearScan) {
         /*
          * Run rop->dex again on optimized vs. non-optimized method to
          * collect statistics. We have to totally convert both ways,
@@ -417,8 +433,12 @@ public class CfTranslator {
 
         DalvCode optCode = RopTranslator.translate(optRmeth,
                 cfOptions.positionInfo, locals, paramSize, dexOptions);
+
+        // The locals are in the registers of the optimized method.
+        LocalVariableInfo nonOptLocals = (locals == null) ? null
+                : LocalVariableExtractor.extract(nonOptRmeth);
         DalvCode nonOptCode = RopTranslator.translate(nonOptRmeth,
-                cfOptions.positionInfo, locals, paramSize, dexOptions);
+                cfOptions.positionInfo, nonOptLocals, paramSize, dexOptions);
 
         /*
          * Fake out the indices, so code.getInsns() can work well enough
@@ -438,6 +458,8 @@ public class CfTranslator {
         nonOptCode.assignIndices(callback);
 
         context.codeStatistics.updateDexStatistics(nonOptCode, optCode);
+        context.codeStatistics.updateAllocatorStatistics(linearScan,
+                nonOptCode, optCode);
         context.codeStatistics.updateOriginalByteCount(originalByteCount);
     }
 }
@@ -19,6 +19,10 @@ package mod.agus.jcoderz.dx.dex.cf;
 import mod.agus.jcoderz.dx.dex.code.DalvCode;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 import mod.agus.jcoderz.dx.rop.code.RopMethod;
 
@@ -67,22 +71,95 @@ public final class CodeStatistics {
     /** running sum of original class bytecode bytes */
     public int runningOriginalBytes = 0;
 
+    /** how many of the slowest methods to optimize are reported */
+    private static final int SLOWEST_METHOD_COUNT = 20;
+
+    /** orders method timings from fastest to slowest */
+    private static final Comparator<MethodTime> BY_TIME =
+            new Comparator<MethodTime>() {
+                @Override
+                public int compare(MethodTime a, MethodTime b) {
+                    return Long.compare(a.nanos, b.nanos);
+                }
+            };
+
+    /**
+     * {@code non-null;} the slowest methods to optimize so far, the fastest
+     * of them at the head
+     */
+    private final PriorityQueue<MethodTime> slowestMethods =
+            new PriorityQueue<MethodTime>(SLOWEST_METHOD_COUNT + 1, BY_TIME);
+
+    /** number of methods optimized, indexed by tier (0 = full, 1 = fast) */
+    private final int[] tierMethods = new int[2];
+
+    /** rop insns optimized, indexed by tier */
+    private final long[] tierInsns = new long[2];
+
+    /** nanoseconds spent optimizing, indexed by tier */
+    private final long[] tierNanos = new long[2];
+
+    /**
+     * number of methods whose registers were allocated, indexed by
+     * allocator (0 = first fit, 1 = linear scan)
+     */
+    private final int[] allocatorMethods = new int[2];
+
+    /** dex-form registers used, indexed by allocator */
+    private final long[] allocatorRegisters = new long[2];
+
+    /** dex-form registers added/removed by the optimizer, indexed by allocator */
+    private final long[] allocatorDeltaRegisters = new long[2];
+
+    /** dex code units, indexed by allocator */
+    private final long[] allocatorInsns = new long[2];
+
+    /** dex code units added/removed by the optimizer, indexed by allocator */
+    private final long[] allocatorDeltaInsns = new long[2];
+
     /**
      * Updates the number of original bytecode bytes processed.
      *
      * @param count {@code >= 0;} the number of bytes to add
      */
-    public void updateOriginalByteCount(int count) {
+    public synchronized void updateOriginalByteCount(int count) {
         runningOriginalBytes += count;
     }
 
+    /**
+     * Records the time taken to optimize a method. Classes may be
+     * translated by several threads at once.
+     *
+     * @param name {@code non-null;} name and descriptor of the method
+     * @param insnCount {@code >= 0;} rop insn count before optimization
+     * @param fastTier true if the method only got the fast optimizer tier
+     * @param linearScan true if registers were allocated by linear scan
+     * @param nanos {@code >= 0;} time taken
+     */
+    public synchronized void updateOptimizeTime(String name, int insnCount,
+            boolean fastTier, boolean linearScan, long nanos) {
+        int tier = fastTier ? 1 : 0;
+        tierMethods[tier]++;
+        tierInsns[tier] += insnCount;
+        tierNanos[tier] += nanos;
+
+        if (slowestMethods.size() < SLOWEST_METHOD_COUNT
+                || nanos > slowestMethods.peek().nanos) {
+            slowestMethods.add(new MethodTime(name, insnCount, fastTier,
+                    linearScan, nanos));
+            if (slowestMethods.size() > SLOWEST_METHOD_COUNT) {
+                slowestMethods.poll();
+            }
+        }
+    }
+
     /**
      * Updates the dex statistics.
      *
      * @param nonOptCode non-optimized code block
      * @param code optimized code block
      */
-    public void updateDexStatistics(DalvCode nonOptCode,
+    public synchronized void updateDexStatistics(DalvCode nonOptCode,
             DalvCode code) {
         if (DEBUG) {
             System.err.println("dex insns (old/new) "
@@ -105,13 +182,35 @@ public final class CodeStatistics {
         dexRunningTotalInsns += code.getInsns().codeSize();
     }
 
+    /**
+     * Updates the register allocator statistics.
+     *
+     * @param linearScan true if registers were allocated by linear scan
+     * @param nonOptCode non-optimized code block
+     * @param code optimized code block
+     */
+    public synchronized void updateAllocatorStatistics(boolean linearScan,
+            DalvCode nonOptCode, DalvCode code) {
+        int allocator = linearScan ? 1 : 0;
+        int registers = code.getInsns().getRegistersSize();
+        int insns = code.getInsns().codeSize();
+
+        allocatorMethods[allocator]++;
+        allocatorRegisters[allocator] += registers;
+        allocatorDeltaRegisters[allocator] +=
+                registers - nonOptCode.getInsns().getRegistersSize();
+        allocatorInsns[allocator] += insns;
+        allocatorDeltaInsns[allocator] +=
+                insns - nonOptCode.getInsns().codeSize();
+    }
+
     /**
      * Updates the ROP statistics.
      *
      * @param nonOptRmeth non-optimized method
      * @param rmeth optimized method
      */
-    public void updateRopStatistics(mod.agus.jcoderz.dx.rop.code.RopMethod nonOptRmeth,
+    public synchronized void updateRopStatistics(mod.agus.jcoderz.dx.rop.code.RopMethod nonOptRmeth,
                                     RopMethod rmeth) {
         int oldCountInsns
                 = nonOptRmeth.getBlocks().getEffectiveInstructionCount();
@@ -162,5 +261,77 @@ public final class CodeStatistics {
 
         out.printf("Original bytecode byte count: %d\n",
                 runningOriginalBytes);
+
+        dumpOptimizeTimes(out);
+    }
+
+    /**
+     * Prints out the optimizer time per tier and of the slowest methods,
+     * and the registers and code size per register allocator.
+     *
+     * @param out {@code non-null;} where to output to
+     */
+    private synchronized void dumpOptimizeTimes(PrintStream out) {
+        String[] allocatorNames = { "first-fit", "linear-scan" };
+        for (int allocator = 0; allocator < allocatorNames.length; allocator++) {
+            if (allocatorMethods[allocator] != 0) {
+                out.printf("Register allocator %s: methods: %d "
+                        + "dex registers: %d (delta %d) "
+                        + "dex insns: %d (delta %d)\n",
+                        allocatorNames[allocator], allocatorMethods[allocator],
+                        allocatorRegisters[allocator],
+                        allocatorDeltaRegisters[allocator],
+                        allocatorInsns[allocator],
+                        allocatorDeltaInsns[allocator]);
+            }
+        }
+
+        String[] tierNames = { "full", "fast" };
+        for (int tier = 0; tier < tierNames.length; tier++) {
+            if (tierMethods[tier] != 0) {
+                out.printf("Optimizer %s tier: methods: %d rop insns: %d "
+                        + "time: %.1fms\n",
+                        tierNames[tier], tierMethods[tier], tierInsns[tier],
+                        tierNanos[tier] / 1e6);
+            }
+        }
+
+        ArrayList<MethodTime> slowest = new ArrayList<MethodTime>(slowestMethods);
+        Collections.sort(slowest, Collections.reverseOrder(BY_TIME));
+        for (MethodTime one : slowest) {
+            out.printf("  %.1fms %s %s insns: %d %s\n", one.nanos / 1e6,
+                    tierNames[one.fastTier ? 1 : 0],
+                    allocatorNames[one.linearScan ? 1 : 0], one.insnCount,
+                    one.name);
+        }
+    }
+
+    /**
+     * Time taken to optimize one method.
+     */
+    private static final class MethodTime {
+        /** {@code non-null;} name and descriptor of the method */
+        final String name;
+
+        /** {@code >= 0;} rop insn count before optimization */
+        final int insnCount;
+
+        /** true if the method only got the fast optimizer tier */
+        final boolean fastTier;
+
+        /** true if registers were allocated by linear scan */
+        final boolean linearScan;
+
+        /** {@code >= 0;} time taken */
+        final long nanos;
+
+        MethodTime(String name, int insnCount, boolean fastTier,
+                boolean linearScan, long nanos) {
+            this.name = name;
+            this.insnCount = insnCount;
+            this.fastTier = fastTier;
+            this.linearScan = linearScan;
+            this.nanos = nanos;
+        }
     }
 }
@@ -110,6 +110,58 @@ public class OptimizerOptions {
         return result;
     }
 
+    /**
+     * Chooses the optimizer steps for a method by its size. Methods of
+     * {@link CfOptions#fastOptimizeInsnCount} or more insns only get the
+     * fast tier, as the full one grows faster than linearly with size.
+     * Methods of {@link CfOptions#linearScanInsnCount} or more insns get
+     * their registers allocated by linear scan, for the same reason.
+     *
+     * @param rmeth {@code non-null;} method to optimize
+     * @param args {@code non-null;} translator arguments
+     * @return {@code non-null;} a new set of steps
+     */
+    public EnumSet<Optimizer.OptionalStep> getSteps(RopMethod rmeth,
+            CfOptions args) {
+        if (isFastTier(rmeth, args)) {
+            return Optimizer.getFastSteps();
+        }
+
+        EnumSet<Optimizer.OptionalStep> steps =
+                EnumSet.allOf(Optimizer.OptionalStep.class);
+        if (isLinearScan(rmeth, args)) {
+            steps.remove(Optimizer.OptionalStep.COMBINING_ALLOCATOR);
+        }
+        return steps;
+    }
+
+    /**
+     * Checks whether a method gets its registers allocated by linear scan.
+     *
+     * @param rmeth {@code non-null;} method to optimize
+     * @param args {@code non-null;} translator arguments
+     * @return true if linear scan is to be used
+     */
+    public boolean isLinearScan(RopMethod rmeth, CfOptions args) {
+        return isFastTier(rmeth, args)
+                || (args.linearScanInsnCount > 0
+                        && rmeth.getBlocks().getEffectiveInstructionCount()
+                                >= args.linearScanInsnCount);
+    }
+
+    /**
+     * Checks whether a method only gets the fast optimizer tier.
+     *
+     * @param rmeth {@code non-null;} method to optimize
+     * @param args {@code non-null;} translator arguments
+     * @return true if the fast tier is to be used
+     */
+    public boolean isFastTier(RopMethod rmeth, CfOptions args) {
+        return args.fastOptimizeInsnCount > 0
+                && rmeth.getBlocks().getEffectiveInstructionCount()
+                        >= args.fastOptimizeInsnCount;
+    }
+
     /**
      * Compares the output of the optimizer run normally with a run skipping
      * some optional steps. Results are printed to stderr.
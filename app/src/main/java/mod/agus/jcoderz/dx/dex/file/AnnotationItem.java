@@ -59,7 +59,7 @@ public final class AnnotationItem extends mod.agus.jcoderz.dx.dex.file.Offsetted
 
     /**
      * {@code null-ok;} encoded form, ready for writing to a file; set during
-     * {@link #place0}
+     * {@link #encode0}
      */
     private byte[] encodedForm;
 
@@ -152,11 +152,11 @@ public final class AnnotationItem extends mod.agus.jcoderz.dx.dex.file.Offsetted
 
     /** {@inheritDoc} */
     @Override
-    protected void place0(Section addedTo, int offset) {
+    protected void encode0(DexFile file) {
         // Encode the data and note the size.
 
         mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput();
-        ValueEncoder encoder = new ValueEncoder(addedTo.getFile(), out);
+        ValueEncoder encoder = new ValueEncoder(file, out);
 
         encoder.writeAnnotation(annotation, false);
         encodedForm = out.toByteArray();
@@ -211,7 +211,7 @@ public final class AnnotationItem extends mod.agus.jcoderz.dx.dex.file.Offsetted
         if (annotates) {
             /*
              * The output is to be annotated, so redo the work previously
-             * done by place0(), except this time annotations will actually
+             * done by encode0(), except this time annotations will actually
              * get emitted.
              */
             ValueEncoder encoder = new ValueEncoder(file, out);
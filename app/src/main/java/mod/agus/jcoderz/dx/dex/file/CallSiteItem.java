@@ -53,11 +53,11 @@ public final class CallSiteItem extends OffsettedItem {
 
     /** {@inheritDoc} */
     @Override
-    protected void place0(Section addedTo, int offset) {
+    protected void encode0(DexFile file) {
         // Encode the data and note the size.
 
         mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput();
-        ValueEncoder encoder = new ValueEncoder(addedTo.getFile(), out);
+        ValueEncoder encoder = new ValueEncoder(file, out);
 
         encoder.writeArray(value, true);
         encodedForm = out.toByteArray();
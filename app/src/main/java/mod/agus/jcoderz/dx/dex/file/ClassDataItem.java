@@ -60,7 +60,7 @@ public final class ClassDataItem extends OffsettedItem {
 
     /**
      * {@code null-ok;} encoded form, ready for writing to a file; set during
-     * {@link #place0}
+     * {@link #encode0}
      */
     private byte[] encodedForm;
 
@@ -320,12 +320,12 @@ public final class ClassDataItem extends OffsettedItem {
 
     /** {@inheritDoc} */
     @Override
-    protected void place0(Section addedTo, int offset) {
+    protected void encode0(DexFile file) {
         // Encode the data and note the size.
 
         ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput();
 
-        encodeOutput(addedTo.getFile(), out);
+        encodeOutput(file, out);
         encodedForm = out.toByteArray();
         setWriteSize(encodedForm.length);
     }
@@ -414,7 +414,7 @@ public final class ClassDataItem extends OffsettedItem {
         if (annotates) {
             /*
              * The output is to be annotated, so redo the work previously
-             * done by place0(), except this time annotations will actually
+             * done by encode0(), except this time annotations will actually
              * get emitted.
              */
             encodeOutput(file, out);
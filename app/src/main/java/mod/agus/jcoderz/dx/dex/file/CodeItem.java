@@ -182,8 +182,7 @@ public final class CodeItem extends OffsettedItem {
 
     /** {@inheritDoc} */
     @Override
-    protected void place0(Section addedTo, int offset) {
-        final DexFile file = addedTo.getFile();
+    protected void encode0(final DexFile file) {
         int catchesSize;
 
         /*
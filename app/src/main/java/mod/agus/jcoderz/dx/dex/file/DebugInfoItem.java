@@ -66,11 +66,11 @@ public class DebugInfoItem extends OffsettedItem {
 
     /** {@inheritDoc} */
     @Override
-    protected void place0(Section addedTo, int offset) {
+    protected void encode0(DexFile file) {
         // Encode the data and note the size.
 
         try {
-            encoded = encode(addedTo.getFile(), null, null, null, false);
+            encoded = encode(file, null, null, null, false);
             setWriteSize(encoded.length);
         } catch (RuntimeException ex) {
             throw ExceptionWithContext.withContext(ex,
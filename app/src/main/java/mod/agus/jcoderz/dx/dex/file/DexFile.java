@@ -34,9 +34,17 @@ import mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.Adler32;
@@ -114,6 +122,12 @@ public final class DexFile {
     /** {@code >= 40;} maximum width of the file dump */
     private int dumpWidth;
 
+    /**
+     * {@code null-ok;} executor used to encode items and write sections
+     * in parallel, or {@code null} to do everything on the calling thread
+     */
+    private ExecutorService executor;
+
     /**
      * Constructs an instance. It is initially empty.
      *
@@ -290,6 +304,19 @@ public final class DexFile {
         this.dumpWidth = dumpWidth;
     }
 
+    /**
+     * Sets the executor used to encode the items and write the sections
+     * of this instance in parallel. The executor must be shut down by the
+     * caller. Writing an annotated dump always happens on the calling
+     * thread.
+     *
+     * @param executor {@code null-ok;} the executor, or {@code null} to do
+     * everything on the calling thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     /**
      * Gets the total file size, if known.
      *
@@ -600,16 +627,10 @@ public final class DexFile {
     }
 
     /**
-     * Returns the contents of this instance as a {@code .dex} file,
-     * in a {@link mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput} instance.
-     *
-     * @param annotate whether or not to keep annotations
-     * @param verbose if annotating, whether to be verbose
-     * @return {@code non-null;} a {@code .dex} file for this instance
+     * Prepares all the sections and places them, and their items, within
+     * the file. This sets {@link #fileSize}.
      */
-    private mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput toDex0(boolean annotate,
-                                                                     boolean verbose,
-                                                                     Storage storage) {
+    private void layOut() {
         /*
          * The following is ordered so that the prepare() calls which
          * add items happen before the calls to the sections that get
@@ -672,8 +693,13 @@ public final class DexFile {
                 if (one instanceof MixedItemSection) {
                     /*
                      * Place the items of a MixedItemSection that just
-                     * got placed.
+                     * got placed. Everything but their offsets can be
+                     * worked out in parallel beforehand, since it only
+                     * depends on the sections placed so far.
                      */
+                    if (executor != null) {
+                        ((MixedItemSection) one).encodeItems(executor);
+                    }
                     ((MixedItemSection) one).placeItems();
                 }
 
@@ -684,11 +710,34 @@ public final class DexFile {
             }
         }
 
+        fileSize = offset;
+    }
+
+    /**
+     * Returns the contents of this instance as a {@code .dex} file,
+     * in a {@link mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput} instance.
+     *
+     * @param annotate whether or not to keep annotations
+     * @param verbose if annotating, whether to be verbose
+     * @return {@code non-null;} a {@code .dex} file for this instance
+     */
+    private mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput toDex0(boolean annotate,
+                                                                     boolean verbose,
+                                                                     Storage storage) {
+        layOut();
+
         // Write out all the sections.
 
-        fileSize = offset;
+        int count = sections.length;
         byte[] barr = storage == null ? new byte[fileSize] : storage.getStorage(fileSize);
 
+        if (executor != null && !annotate) {
+            writeSections(barr);
+            calcSignature(barr, fileSize);
+            calcChecksum(barr, fileSize);
+            return new ByteArrayAnnotatedOutput(barr, fileSize);
+        }
+
         mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput(barr);
 
         if (annotate) {
@@ -739,6 +788,180 @@ public final class DexFile {
         return out;
     }
 
+    /**
+     * Writes all the sections in parallel, each into its own region of
+     * {@code barr}. The sections must have been placed, so the regions are
+     * known up front. The padding between regions is zeroed explicitly,
+     * since {@code barr} may be reused storage.
+     *
+     * @param barr {@code non-null;} array of at least {@code fileSize} bytes
+     */
+    private void writeSections(final byte[] barr) {
+        ArrayList<Future<?>> writes = new ArrayList<Future<?>>();
+        int count = sections.length;
+
+        for (int i = 0; i < count; i++) {
+            final Section one = sections[i];
+            if (isOmitted(one)) {
+                continue;
+            }
+
+            final int end = getRegionEnd(i);
+            final int index = i;
+
+            writes.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ByteArrayAnnotatedOutput out =
+                            new ByteArrayAnnotatedOutput(barr, one.getFileOffset());
+                        one.writeTo(out);
+                        int zeroCount = end - out.getCursor();
+                        if (zeroCount < 0) {
+                            throw new ExceptionWithContext("excess write of " +
+                                    (-zeroCount));
+                        }
+                        Arrays.fill(barr, out.getCursor(), end, (byte) 0);
+                    } catch (RuntimeException ex) {
+                        ExceptionWithContext ec;
+                        if (ex instanceof ExceptionWithContext) {
+                            ec = (ExceptionWithContext) ex;
+                        } else {
+                            ec = new ExceptionWithContext(ex);
+                        }
+                        ec.addContext("...while writing section " + index);
+                        throw ec;
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while writing sections", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Writes the contents of this instance as a {@code .dex} file to the
+     * given channel, starting at its current position. The sections are
+     * written one at a time, so only the largest of them is held in
+     * memory. The signature and checksum are computed as the sections go
+     * out and then patched into the header.
+     *
+     * @param channel {@code non-null;} where to write to
+     */
+    public void writeTo(FileChannel channel) throws IOException {
+        layOut();
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        Adler32 a32 = new Adler32();
+
+        long start = channel.position();
+        Storage storage = new Storage(new byte[0]);
+        int count = sections.length;
+
+        for (int i = 0; i < count; i++) {
+            Section one = sections[i];
+            if (isOmitted(one)) {
+                continue;
+            }
+
+            int from = one.getFileOffset();
+            int length = getRegionEnd(i) - from;
+            byte[] bytes = storage.getStorage(length);
+            ByteArrayAnnotatedOutput out = ByteArrayAnnotatedOutput.window(bytes, from);
+
+            try {
+                one.writeTo(out);
+                int zeroCount = from + length - out.getCursor();
+                if (zeroCount < 0) {
+                    throw new ExceptionWithContext("excess write of " +
+                            (-zeroCount));
+                }
+                out.writeZeroes(zeroCount);
+            } catch (RuntimeException ex) {
+                ExceptionWithContext ec;
+                if (ex instanceof ExceptionWithContext) {
+                    ec = (ExceptionWithContext) ex;
+                } else {
+                    ec = new ExceptionWithContext(ex);
+                }
+                ec.addContext("...while writing section " + i);
+                throw ec;
+            }
+
+            // the signature and checksum cover everything after the signature
+            int skip = Math.max(0, 32 - from);
+            if (skip < length) {
+                md.update(bytes, skip, length - skip);
+                a32.update(bytes, skip, length - skip);
+            }
+            writeFully(channel, ByteBuffer.wrap(bytes, 0, length), start + from);
+        }
+
+        byte[] signature = md.digest();
+        Adler32 signatureSum = new Adler32();
+        signatureSum.update(signature);
+        int checksum = adler32Combine((int) signatureSum.getValue(),
+                (int) a32.getValue(), fileSize - 32);
+
+        ByteBuffer patch = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        patch.putInt(checksum);
+        patch.put(signature);
+        patch.flip();
+        writeFully(channel, patch, start + 8);
+        channel.position(start + fileSize);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Returns whether a section is left out of the file. Empty call site
+     * and method handle sections are, since even when empty they could
+     * change the alignment of what follows.
+     */
+    private boolean isOmitted(Section one) {
+        return (one == callSiteIds || one == methodHandles) && one.items().isEmpty();
+    }
+
+    /**
+     * Gets the end of the region of the file that belongs to a placed
+     * section, which includes the padding up to the next section.
+     *
+     * @param index the index of the section in {@link #sections}
+     * @return {@code >= 0;} the offset where the next section starts, or
+     * the file size for the last section
+     */
+    private int getRegionEnd(int index) {
+        for (int next = index + 1; next < sections.length; next++) {
+            if (!isOmitted(sections[next])) {
+                return sections[next].getFileOffset();
+            }
+        }
+        return fileSize;
+    }
+
     /**
      * Generates and returns statistics for all the items in the file.
      *
@@ -802,4 +1025,35 @@ public final class DexFile {
         bytes[10] = (byte) (sum >> 16);
         bytes[11] = (byte) (sum >> 24);
     }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive runs of bytes
+     * into the checksum of both runs, as zlib's {@code adler32_combine}.
+     *
+     * @param adler1 checksum of the first run
+     * @param adler2 checksum of the second run
+     * @param len2 {@code >= 0;} length of the second run
+     * @return the checksum of the first run followed by the second
+     */
+    private static int adler32Combine(int adler1, int adler2, int len2) {
+        final int base = 65521;
+        long rem = len2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= 2L * base) {
+            sum2 -= 2L * base;
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return (int) (sum1 | (sum2 << 16));
+    }
 }
@@ -32,7 +32,7 @@ public final class EncodedArrayItem extends mod.agus.jcoderz.dx.dex.file.Offsett
 
     /**
      * {@code null-ok;} encoded form, ready for writing to a file; set during
-     * {@link #place0}
+     * {@link #encode0}
      */
     private byte[] encodedForm;
 
@@ -90,11 +90,11 @@ public final class EncodedArrayItem extends mod.agus.jcoderz.dx.dex.file.Offsett
 
     /** {@inheritDoc} */
     @Override
-    protected void place0(Section addedTo, int offset) {
+    protected void encode0(DexFile file) {
         // Encode the data and note the size.
 
         mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput();
-        mod.agus.jcoderz.dx.dex.file.ValueEncoder encoder = new mod.agus.jcoderz.dx.dex.file.ValueEncoder(addedTo.getFile(), out);
+        mod.agus.jcoderz.dx.dex.file.ValueEncoder encoder = new mod.agus.jcoderz.dx.dex.file.ValueEncoder(file, out);
 
         encoder.writeArray(array, false);
         encodedForm = out.toByteArray();
@@ -111,7 +111,7 @@ public final class EncodedArrayItem extends mod.agus.jcoderz.dx.dex.file.Offsett
 
             /*
              * The output is to be annotated, so redo the work previously
-             * done by place0(), except this time annotations will actually
+             * done by encode0(), except this time annotations will actually
              * get emitted.
              */
             mod.agus.jcoderz.dx.dex.file.ValueEncoder encoder = new ValueEncoder(file, out);
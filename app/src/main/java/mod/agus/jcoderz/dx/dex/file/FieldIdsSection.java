@@ -18,6 +18,7 @@ package mod.agus.jcoderz.dx.dex.file;
 
 import java.util.Collection;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import mod.agus.jcoderz.dx.rop.cst.Constant;
 import mod.agus.jcoderz.dx.rop.cst.CstFieldRef;
@@ -30,9 +31,16 @@ import mod.agus.jcoderz.dx.util.Hex;
 public final class FieldIdsSection extends MemberIdsSection {
     /**
      * {@code non-null;} map from field constants to {@link
-     * mod.agus.jcoderz.dx.dex.file.FieldIdItem} instances
+     * mod.agus.jcoderz.dx.dex.file.FieldIdItem} instances; concurrent, as
+     * classes may be translated in parallel
      */
-    private final TreeMap<mod.agus.jcoderz.dx.rop.cst.CstFieldRef, mod.agus.jcoderz.dx.dex.file.FieldIdItem> fieldIds;
+    private final ConcurrentHashMap<mod.agus.jcoderz.dx.rop.cst.CstFieldRef, mod.agus.jcoderz.dx.dex.file.FieldIdItem> fieldIds;
+
+    /**
+     * {@code null-ok;} {@link #fieldIds} in canonical order, sorted once
+     * when this instance is prepared
+     */
+    private TreeMap<CstFieldRef, FieldIdItem> sortedFieldIds;
 
     /**
      * Constructs an instance. The file offset is initially unknown.
@@ -42,13 +50,13 @@ public final class FieldIdsSection extends MemberIdsSection {
     public FieldIdsSection(DexFile file) {
         super("field_ids", file);
 
-        fieldIds = new TreeMap<mod.agus.jcoderz.dx.rop.cst.CstFieldRef, mod.agus.jcoderz.dx.dex.file.FieldIdItem>();
+        fieldIds = new ConcurrentHashMap<mod.agus.jcoderz.dx.rop.cst.CstFieldRef, mod.agus.jcoderz.dx.dex.file.FieldIdItem>();
     }
 
     /** {@inheritDoc} */
     @Override
     public Collection<? extends Item> items() {
-        return fieldIds.values();
+        return sortedFieldIds != null ? sortedFieldIds.values() : fieldIds.values();
     }
 
     /** {@inheritDoc} */
@@ -95,7 +103,7 @@ public final class FieldIdsSection extends MemberIdsSection {
      * @param field {@code non-null;} the reference to intern
      * @return {@code non-null;} the interned reference
      */
-    public synchronized mod.agus.jcoderz.dx.dex.file.FieldIdItem intern(mod.agus.jcoderz.dx.rop.cst.CstFieldRef field) {
+    public mod.agus.jcoderz.dx.dex.file.FieldIdItem intern(mod.agus.jcoderz.dx.rop.cst.CstFieldRef field) {
         if (field == null) {
             throw new NullPointerException("field == null");
         }
@@ -106,7 +114,10 @@ public final class FieldIdsSection extends MemberIdsSection {
 
         if (result == null) {
             result = new mod.agus.jcoderz.dx.dex.file.FieldIdItem(field);
-            fieldIds.put(field, result);
+            FieldIdItem already = fieldIds.putIfAbsent(field, result);
+            if (already != null) {
+                result = already;
+            }
         }
 
         return result;
@@ -134,4 +145,11 @@ public final class FieldIdsSection extends MemberIdsSection {
 
         return item.getIndex();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void orderItems() {
+        sortedFieldIds = new TreeMap<CstFieldRef, FieldIdItem>(fieldIds);
+        super.orderItems();
+    }
 }
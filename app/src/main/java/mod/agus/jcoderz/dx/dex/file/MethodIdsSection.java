@@ -22,6 +22,7 @@ import mod.agus.jcoderz.dx.util.AnnotatedOutput;
 import mod.agus.jcoderz.dx.util.Hex;
 import java.util.Collection;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Method refs list section of a {@code .dex} file.
@@ -29,9 +30,16 @@ import java.util.TreeMap;
 public final class MethodIdsSection extends MemberIdsSection {
     /**
      * {@code non-null;} map from method constants to {@link
-     * MethodIdItem} instances
+     * MethodIdItem} instances; concurrent, as classes may be translated
+     * in parallel
      */
-    private final TreeMap<CstBaseMethodRef, MethodIdItem> methodIds;
+    private final ConcurrentHashMap<CstBaseMethodRef, MethodIdItem> methodIds;
+
+    /**
+     * {@code null-ok;} {@link #methodIds} in canonical order, sorted once
+     * when this instance is prepared
+     */
+    private TreeMap<CstBaseMethodRef, MethodIdItem> sortedMethodIds;
 
     /**
      * Constructs an instance. The file offset is initially unknown.
@@ -41,13 +49,13 @@ public final class MethodIdsSection extends MemberIdsSection {
     public MethodIdsSection(DexFile file) {
         super("method_ids", file);
 
-        methodIds = new TreeMap<CstBaseMethodRef, MethodIdItem>();
+        methodIds = new ConcurrentHashMap<CstBaseMethodRef, MethodIdItem>();
     }
 
     /** {@inheritDoc} */
     @Override
     public Collection<? extends Item> items() {
-        return methodIds.values();
+        return sortedMethodIds != null ? sortedMethodIds.values() : methodIds.values();
     }
 
     /** {@inheritDoc} */
@@ -94,7 +102,7 @@ public final class MethodIdsSection extends MemberIdsSection {
      * @param method {@code non-null;} the reference to intern
      * @return {@code non-null;} the interned reference
      */
-    public synchronized MethodIdItem intern(CstBaseMethodRef method) {
+    public MethodIdItem intern(CstBaseMethodRef method) {
         if (method == null) {
             throw new NullPointerException("method == null");
         }
@@ -105,7 +113,10 @@ public final class MethodIdsSection extends MemberIdsSection {
 
         if (result == null) {
             result = new MethodIdItem(method);
-            methodIds.put(method, result);
+            MethodIdItem already = methodIds.putIfAbsent(method, result);
+            if (already != null) {
+                result = already;
+            }
         }
 
         return result;
@@ -133,4 +144,11 @@ public final class MethodIdsSection extends MemberIdsSection {
 
         return item.getIndex();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void orderItems() {
+        sortedMethodIds = new TreeMap<CstBaseMethodRef, MethodIdItem>(methodIds);
+        super.orderItems();
+    }
 }
@@ -25,9 +25,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A section of a {@code .dex} file which consists of a sequence of
@@ -60,6 +64,9 @@ public final class MixedItemSection extends Section {
         }
     };
 
+    /** number of items encoded by one task in {@link #encodeItems} */
+    private static final int ENCODE_BATCH_SIZE = 128;
+
     /** {@code non-null;} the items in this part */
     private final ArrayList<mod.agus.jcoderz.dx.dex.file.OffsettedItem> items;
 
@@ -282,6 +289,55 @@ public final class MixedItemSection extends Section {
         }
     }
 
+    /**
+     * Encodes all the items in this instance ahead of {@link #placeItems},
+     * in batches run by the given executor. Items only depend on indices
+     * and on sections placed before this one, so they can be encoded in
+     * any order.
+     *
+     * @param executor {@code non-null;} executor to encode the items with
+     */
+    public void encodeItems(ExecutorService executor) {
+        throwIfNotPrepared();
+
+        final DexFile file = getFile();
+        int sz = items.size();
+        ArrayList<Future<?>> batches = new ArrayList<Future<?>>();
+
+        for (int start = 0; start < sz; start += ENCODE_BATCH_SIZE) {
+            final List<OffsettedItem> batch =
+                items.subList(start, Math.min(sz, start + ENCODE_BATCH_SIZE));
+            batches.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (OffsettedItem one : batch) {
+                        try {
+                            one.encode(file);
+                        } catch (RuntimeException ex) {
+                            throw ExceptionWithContext.withContext(ex,
+                                    "...while placing " + one);
+                        }
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while encoding items", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     /**
      * Places all the items in this instance at particular offsets. This
      * will call {@link mod.agus.jcoderz.dx.dex.file.OffsettedItem#place} on each item. If an item
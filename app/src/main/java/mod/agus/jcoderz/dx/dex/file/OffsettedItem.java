@@ -43,6 +43,9 @@ public abstract class OffsettedItem extends Item
      */
     private int offset;
 
+    /** whether {@link #encode} has been done */
+    private boolean encoded;
+
     /**
      * Gets the absolute offset of the given item, returning {@code 0}
      * if handed {@code null}.
@@ -240,11 +243,27 @@ public abstract class OffsettedItem extends Item
         this.addedTo = addedTo;
         this.offset = offset;
 
+        encode(addedTo.getFile());
         place0(addedTo, offset);
 
         return offset;
     }
 
+    /**
+     * Does the work of placing this instance that does not depend on
+     * where it is placed. This is called by {@link #place} unless it has
+     * been called before, which sections may do for all their items at
+     * once and on several threads.
+     *
+     * @param file {@code non-null;} the file to use for reference
+     */
+    public final void encode(DexFile file) {
+        if (!encoded) {
+            encode0(file);
+            encoded = true;
+        }
+    }
+
     /**
      * Gets the alignment requirement of this instance. An instance should
      * only be written when so aligned.
@@ -303,6 +322,21 @@ public abstract class OffsettedItem extends Item
         // This space intentionally left blank.
     }
 
+    /**
+     * Does additional work required before placing an instance, called
+     * via {@link #encode}. The default implementation of this method is
+     * a no-op. Work that needs no offset other than those of items in
+     * sections placed before this instance's, such as encoding the
+     * contents and setting the write size, belongs here rather than in
+     * {@link #place0}. It may run concurrently with the encoding of
+     * other items, so it must only change the state of this instance.
+     *
+     * @param file {@code non-null;} the file to use for reference
+     */
+    protected void encode0(DexFile file) {
+        // This space intentionally left blank.
+    }
+
     /**
      * Performs the actual write of the contents of this instance to
      * the given data section. This is called by {@link #writeTo},
@@ -18,6 +18,7 @@ package mod.agus.jcoderz.dx.dex.file;
 
 import java.util.Collection;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import mod.agus.jcoderz.dx.rop.cst.Constant;
 import mod.agus.jcoderz.dx.rop.cst.CstProtoRef;
@@ -31,9 +32,16 @@ import mod.agus.jcoderz.dx.util.Hex;
  */
 public final class ProtoIdsSection extends UniformItemSection {
     /**
-     * {@code non-null;} map from method prototypes to {@link ProtoIdItem} instances
+     * {@code non-null;} map from method prototypes to {@link ProtoIdItem} instances;
+     * concurrent, as classes may be translated in parallel
      */
-    private final TreeMap<mod.agus.jcoderz.dx.rop.type.Prototype, ProtoIdItem> protoIds;
+    private final ConcurrentHashMap<mod.agus.jcoderz.dx.rop.type.Prototype, ProtoIdItem> protoIds;
+
+    /**
+     * {@code null-ok;} {@link #protoIds} in canonical order, sorted once
+     * when this instance is prepared
+     */
+    private TreeMap<Prototype, ProtoIdItem> sortedProtoIds;
 
     /**
      * Constructs an instance. The file offset is initially unknown.
@@ -43,13 +51,13 @@ public final class ProtoIdsSection extends UniformItemSection {
     public ProtoIdsSection(DexFile file) {
         super("proto_ids", file, 4);
 
-        protoIds = new TreeMap<mod.agus.jcoderz.dx.rop.type.Prototype, ProtoIdItem>();
+        protoIds = new ConcurrentHashMap<mod.agus.jcoderz.dx.rop.type.Prototype, ProtoIdItem>();
     }
 
     /** {@inheritDoc} */
     @Override
     public Collection<? extends Item> items() {
-        return protoIds.values();
+        return sortedProtoIds != null ? sortedProtoIds.values() : protoIds.values();
     }
 
     /** {@inheritDoc} */
@@ -103,7 +111,7 @@ public final class ProtoIdsSection extends UniformItemSection {
      * @param prototype {@code non-null;} the prototype to intern
      * @return {@code non-null;} the interned reference
      */
-    public synchronized ProtoIdItem intern(mod.agus.jcoderz.dx.rop.type.Prototype prototype) {
+    public ProtoIdItem intern(mod.agus.jcoderz.dx.rop.type.Prototype prototype) {
         if (prototype == null) {
             throw new NullPointerException("prototype == null");
         }
@@ -114,7 +122,10 @@ public final class ProtoIdsSection extends UniformItemSection {
 
         if (result == null) {
             result = new ProtoIdItem(prototype);
-            protoIds.put(prototype, result);
+            ProtoIdItem already = protoIds.putIfAbsent(prototype, result);
+            if (already != null) {
+                result = already;
+            }
         }
 
         return result;
@@ -146,6 +157,7 @@ public final class ProtoIdsSection extends UniformItemSection {
     /** {@inheritDoc} */
     @Override
     protected void orderItems() {
+        sortedProtoIds = new TreeMap<Prototype, ProtoIdItem>(protoIds);
         int idx = 0;
 
         for (Object i : items()) {
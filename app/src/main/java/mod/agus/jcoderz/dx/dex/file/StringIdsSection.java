@@ -18,6 +18,7 @@ package mod.agus.jcoderz.dx.dex.file;
 
 import java.util.Collection;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import mod.agus.jcoderz.dx.rop.cst.Constant;
 import mod.agus.jcoderz.dx.rop.cst.CstNat;
@@ -32,9 +33,16 @@ public final class StringIdsSection
         extends UniformItemSection {
     /**
      * {@code non-null;} map from string constants to {@link
-     * StringIdItem} instances
+     * StringIdItem} instances; concurrent, as classes may be translated
+     * in parallel
      */
-    private final TreeMap<mod.agus.jcoderz.dx.rop.cst.CstString, StringIdItem> strings;
+    private final ConcurrentHashMap<mod.agus.jcoderz.dx.rop.cst.CstString, StringIdItem> strings;
+
+    /**
+     * {@code null-ok;} {@link #strings} in canonical order, sorted once
+     * when this instance is prepared
+     */
+    private TreeMap<CstString, StringIdItem> sortedStrings;
 
     /**
      * Constructs an instance. The file offset is initially unknown.
@@ -44,13 +52,13 @@ public final class StringIdsSection
     public StringIdsSection(DexFile file) {
         super("string_ids", file, 4);
 
-        strings = new TreeMap<mod.agus.jcoderz.dx.rop.cst.CstString, StringIdItem>();
+        strings = new ConcurrentHashMap<mod.agus.jcoderz.dx.rop.cst.CstString, StringIdItem>();
     }
 
     /** {@inheritDoc} */
     @Override
     public Collection<? extends Item> items() {
-        return strings.values();
+        return sortedStrings != null ? sortedStrings.values() : strings.values();
     }
 
     /** {@inheritDoc} */
@@ -118,7 +126,7 @@ public final class StringIdsSection
      * @param string {@code non-null;} the string to intern
      * @return {@code non-null;} the interned string
      */
-    public synchronized StringIdItem intern(StringIdItem string) {
+    public StringIdItem intern(StringIdItem string) {
         if (string == null) {
             throw new NullPointerException("string == null");
         }
@@ -126,13 +134,12 @@ public final class StringIdsSection
         throwIfPrepared();
 
         mod.agus.jcoderz.dx.rop.cst.CstString value = string.getValue();
-        StringIdItem already = strings.get(value);
+        StringIdItem already = strings.putIfAbsent(value, string);
 
         if (already != null) {
             return already;
         }
 
-        strings.put(value, string);
         return string;
     }
 
@@ -141,7 +148,7 @@ public final class StringIdsSection
      *
      * @param nat {@code non-null;} the name-and-type
      */
-    public synchronized void intern(CstNat nat) {
+    public void intern(CstNat nat) {
         intern(nat.getName());
         intern(nat.getDescriptor());
     }
@@ -172,9 +179,10 @@ public final class StringIdsSection
     /** {@inheritDoc} */
     @Override
     protected void orderItems() {
+        sortedStrings = new TreeMap<CstString, StringIdItem>(strings);
         int idx = 0;
 
-        for (StringIdItem s : strings.values()) {
+        for (StringIdItem s : sortedStrings.values()) {
             s.setIndex(idx);
             idx++;
         }
@@ -26,15 +26,23 @@ import mod.agus.jcoderz.dx.util.Hex;
 
 import java.util.Collection;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Type identifiers list section of a {@code .dex} file.
  */
 public final class TypeIdsSection extends UniformItemSection {
     /**
-     * {@code non-null;} map from types to {@link mod.agus.jcoderz.dx.dex.file.TypeIdItem} instances
+     * {@code non-null;} map from types to {@link mod.agus.jcoderz.dx.dex.file.TypeIdItem} instances;
+     * concurrent, as classes may be translated in parallel
      */
-    private final TreeMap<mod.agus.jcoderz.dx.rop.type.Type, mod.agus.jcoderz.dx.dex.file.TypeIdItem> typeIds;
+    private final ConcurrentHashMap<mod.agus.jcoderz.dx.rop.type.Type, mod.agus.jcoderz.dx.dex.file.TypeIdItem> typeIds;
+
+    /**
+     * {@code null-ok;} {@link #typeIds} in canonical order, sorted once
+     * when this instance is prepared
+     */
+    private TreeMap<Type, TypeIdItem> sortedTypeIds;
 
     /**
      * Constructs an instance. The file offset is initially unknown.
@@ -44,13 +52,13 @@ public final class TypeIdsSection extends UniformItemSection {
     public TypeIdsSection(DexFile file) {
         super("type_ids", file, 4);
 
-        typeIds = new TreeMap<mod.agus.jcoderz.dx.rop.type.Type, mod.agus.jcoderz.dx.dex.file.TypeIdItem>();
+        typeIds = new ConcurrentHashMap<mod.agus.jcoderz.dx.rop.type.Type, mod.agus.jcoderz.dx.dex.file.TypeIdItem>();
     }
 
     /** {@inheritDoc} */
     @Override
     public Collection<? extends Item> items() {
-        return typeIds.values();
+        return sortedTypeIds != null ? sortedTypeIds.values() : typeIds.values();
     }
 
     /** {@inheritDoc} */
@@ -106,7 +114,7 @@ public final class TypeIdsSection extends UniformItemSection {
      * @param type {@code non-null;} the type to intern
      * @return {@code non-null;} the interned reference
      */
-    public synchronized mod.agus.jcoderz.dx.dex.file.TypeIdItem intern(mod.agus.jcoderz.dx.rop.type.Type type) {
+    public mod.agus.jcoderz.dx.dex.file.TypeIdItem intern(mod.agus.jcoderz.dx.rop.type.Type type) {
         if (type == null) {
             throw new NullPointerException("type == null");
         }
@@ -117,7 +125,10 @@ public final class TypeIdsSection extends UniformItemSection {
 
         if (result == null) {
             result = new mod.agus.jcoderz.dx.dex.file.TypeIdItem(new mod.agus.jcoderz.dx.rop.cst.CstType(type));
-            typeIds.put(type, result);
+            TypeIdItem already = typeIds.putIfAbsent(type, result);
+            if (already != null) {
+                result = already;
+            }
         }
 
         return result;
@@ -129,7 +140,7 @@ public final class TypeIdsSection extends UniformItemSection {
      * @param type {@code non-null;} the type to intern
      * @return {@code non-null;} the interned reference
      */
-    public synchronized mod.agus.jcoderz.dx.dex.file.TypeIdItem intern(mod.agus.jcoderz.dx.rop.cst.CstType type) {
+    public mod.agus.jcoderz.dx.dex.file.TypeIdItem intern(mod.agus.jcoderz.dx.rop.cst.CstType type) {
         if (type == null) {
             throw new NullPointerException("type == null");
         }
@@ -141,7 +152,10 @@ public final class TypeIdsSection extends UniformItemSection {
 
         if (result == null) {
             result = new mod.agus.jcoderz.dx.dex.file.TypeIdItem(type);
-            typeIds.put(typePerSe, result);
+            TypeIdItem already = typeIds.putIfAbsent(typePerSe, result);
+            if (already != null) {
+                result = already;
+            }
         }
 
         return result;
@@ -188,6 +202,7 @@ public final class TypeIdsSection extends UniformItemSection {
     /** {@inheritDoc} */
     @Override
     protected void orderItems() {
+        sortedTypeIds = new TreeMap<Type, TypeIdItem>(typeIds);
         int idx = 0;
 
         for (Object i : items()) {
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dx.io;
+
+import mod.agus.jcoderz.dex.ClassData;
+import mod.agus.jcoderz.dex.ClassDef;
+import mod.agus.jcoderz.dex.Dex;
+import mod.agus.jcoderz.dex.EncodedValueReader;
+import mod.agus.jcoderz.dex.MethodId;
+import mod.agus.jcoderz.dex.TableOfContents;
+import mod.agus.jcoderz.dx.io.instructions.DecodedInstruction;
+import mod.agus.jcoderz.dx.util.IntList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Inverted index of the uses of the strings, fields and methods of a dex,
+ * built with a single pass over its classes so that queries need not decode
+ * any code. A use is numbered in the order the classes, their static values,
+ * their members and their instructions appear in the dex, so sorted use
+ * numbers list uses in that order.
+ */
+public final class DexUsageIndex {
+    /** kind of the use of a string, by an instruction or a static value */
+    public static final int STRING = 0;
+
+    /** kind of the use of a field, by an instruction or a declaration */
+    public static final int FIELD = 1;
+
+    /** kind of the use of a method, by an instruction or a declaration */
+    public static final int METHOD = 2;
+
+    /** opcode of uses that are not instructions */
+    public static final int NO_OPCODE = -1;
+
+    /** suffix of a saved index, appended to the name of its dex file */
+    public static final String FILE_SUFFIX = ".usages";
+
+    private static final int FILE_MAGIC = 0x64787569; // "dxui"
+    private static final int FILE_VERSION = 2;
+
+    private final Dex dex;
+
+    /** strings of {@link #dex}, decoded once for all queries */
+    private final List<String> strings;
+
+    /** type of the class of each site */
+    private final int[] siteTypes;
+
+    /** method of each site, or -1 for the class itself */
+    private final int[] siteMethods;
+
+    /** site, kind, referenced index and opcode of each use */
+    private final int[] useSites;
+    private final int[] useKinds;
+    private final int[] useIndexes;
+    private final int[] useOpcodes;
+
+    /**
+     * For each kind, the uses of index {@code i} are
+     * {@code uses[kind][starts[kind][i]]} up to
+     * {@code uses[kind][starts[kind][i + 1]]}.
+     */
+    private final int[][] starts = new int[3][];
+    private final int[][] uses = new int[3][];
+
+    private DexUsageIndex(Dex dex, int[] siteTypes, int[] siteMethods, int[] useSites,
+            int[] useKinds, int[] useIndexes, int[] useOpcodes) {
+        this.dex = dex;
+        this.strings = Arrays.asList(dex.strings().toArray(new String[0]));
+        this.siteTypes = siteTypes;
+        this.siteMethods = siteMethods;
+        this.useSites = useSites;
+        this.useKinds = useKinds;
+        this.useIndexes = useIndexes;
+        this.useOpcodes = useOpcodes;
+
+        TableOfContents contents = dex.getTableOfContents();
+        invert(STRING, contents.stringIds.size);
+        invert(FIELD, contents.fieldIds.size);
+        invert(METHOD, contents.methodIds.size);
+    }
+
+    /**
+     * Counting sort of the uses of {@code kind} by the index they refer to.
+     * Uses are visited in order, so they stay sorted for each index.
+     */
+    private void invert(int kind, int indexCount) {
+        int[] kindStarts = new int[indexCount + 1];
+        for (int use = 0; use < useKinds.length; use++) {
+            if (useKinds[use] == kind) {
+                kindStarts[checkIndex(useIndexes[use], indexCount) + 1]++;
+            }
+        }
+        for (int i = 0; i < indexCount; i++) {
+            kindStarts[i + 1] += kindStarts[i];
+        }
+
+        int[] kindUses = new int[kindStarts[indexCount]];
+        int[] next = Arrays.copyOf(kindStarts, indexCount);
+        for (int use = 0; use < useKinds.length; use++) {
+            if (useKinds[use] == kind) {
+                kindUses[next[useIndexes[use]]++] = use;
+            }
+        }
+        starts[kind] = kindStarts;
+        uses[kind] = kindUses;
+    }
+
+    private static int checkIndex(int index, int indexCount) {
+        if (index < 0 || index >= indexCount) {
+            throw new IllegalArgumentException("index out of range: " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index of {@code dex}, reading all of its code.
+     */
+    public static DexUsageIndex build(Dex dex) {
+        return new Builder(dex).build();
+    }
+
+    /**
+     * Returns the index of the dex in {@code dexFile}. With {@code saved},
+     * the index is read from the file next to it, or built and written
+     * there when that file is missing or belongs to another dex.
+     */
+    public static DexUsageIndex load(File dexFile, boolean saved) throws IOException {
+        Dex dex = new Dex(dexFile);
+        if (!saved) {
+            return build(dex);
+        }
+
+        File indexFile = new File(dexFile.getPath() + FILE_SUFFIX);
+        if (indexFile.isFile()) {
+            DexUsageIndex index = read(dex, indexFile);
+            if (index != null) {
+                return index;
+            }
+        }
+        DexUsageIndex index = build(dex);
+        index.writeTo(indexFile);
+        return index;
+    }
+
+    /**
+     * Reads a saved index of {@code dex}.
+     *
+     * @return {@code null-ok;} the index, or {@code null} if {@code file}
+     * does not hold an index of that dex
+     */
+    public static DexUsageIndex read(Dex dex, File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            byte[] signature = new byte[dex.getTableOfContents().signature.length];
+            in.readFully(signature);
+            if (in.readInt() != dex.getLength()
+                    || !Arrays.equals(signature, dex.getTableOfContents().signature)) {
+                return null;
+            }
+            int payloadLength = in.readInt();
+            int checksum = in.readInt();
+            if (payloadLength < 0 || payloadLength > file.length()) {
+                return null;
+            }
+            byte[] payload = new byte[payloadLength];
+            in.readFully(payload);
+            if (checksum(payload) != checksum) {
+                return null;
+            }
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+            return new DexUsageIndex(dex, readInts(data), readInts(data), readInts(data),
+                    readInts(data), readInts(data), readInts(data));
+        } catch (EOFException | IllegalArgumentException e) {
+            // truncated or corrupt, it is built again
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves this index to {@code file}. It is only read back for the same
+     * dex, which is recognized by its signature, and only if the checksum
+     * of the payload still matches.
+     */
+    public void writeTo(File file) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        writeInts(data, siteTypes);
+        writeInts(data, siteMethods);
+        writeInts(data, useSites);
+        writeInts(data, useKinds);
+        writeInts(data, useIndexes);
+        writeInts(data, useOpcodes);
+        data.flush();
+        byte[] payloadBytes = payload.toByteArray();
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.write(dex.getTableOfContents().signature);
+            out.writeInt(dex.getLength());
+            out.writeInt(payloadBytes.length);
+            out.writeInt(checksum(payloadBytes));
+            out.write(payloadBytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        }
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = in.readInt();
+        }
+        return result;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        out.writeInt(ints.length);
+        for (int i : ints) {
+            out.writeInt(i);
+        }
+    }
+
+    public Dex getDex() {
+        return dex;
+    }
+
+    /**
+     * Returns the strings of the dex. Unlike {@link Dex#strings}, they are
+     * only decoded once.
+     */
+    public List<String> getStrings() {
+        return strings;
+    }
+
+    /**
+     * Adds the uses of the string, field or method {@code index} to
+     * {@code out}.
+     *
+     * @param kind one of {@link #STRING}, {@link #FIELD} or {@link #METHOD}
+     */
+    public void addUses(int kind, int index, IntList out) {
+        int[] kindUses = uses[kind];
+        for (int i = starts[kind][index], end = starts[kind][index + 1]; i < end; i++) {
+            out.add(kindUses[i]);
+        }
+    }
+
+    /**
+     * Returns the kind of {@code use}, one of {@link #STRING}, {@link #FIELD}
+     * or {@link #METHOD}.
+     */
+    public int getKind(int use) {
+        return useKinds[use];
+    }
+
+    /**
+     * Returns the index of the string, field or method of {@code use}.
+     */
+    public int getIndex(int use) {
+        return useIndexes[use];
+    }
+
+    /**
+     * Returns the opcode of the instruction of {@code use}, or
+     * {@link #NO_OPCODE} for a static value or a declaration.
+     */
+    public int getOpcode(int use) {
+        return useOpcodes[use];
+    }
+
+    /**
+     * Returns the type of the class where {@code use} is.
+     */
+    public int getTypeIndex(int use) {
+        return siteTypes[useSites[use]];
+    }
+
+    /**
+     * Returns the method where {@code use} is, or -1 if it is in the class
+     * itself.
+     */
+    public int getMethodIndex(int use) {
+        return siteMethods[useSites[use]];
+    }
+
+    /**
+     * Returns where {@code use} is, as the class name followed by the name
+     * of the method if any.
+     */
+    public String getLocation(int use) {
+        String className = dex.typeNames().get(getTypeIndex(use));
+        int methodIndex = getMethodIndex(use);
+        if (methodIndex != -1) {
+            MethodId methodId = dex.methodIds().get(methodIndex);
+            return className + "." + strings.get(methodId.getNameIndex());
+        } else {
+            return className;
+        }
+    }
+
+    /**
+     * Returns the dex files of a multidex directory, {@code classes.dex},
+     * {@code classes2.dex} and so on, or {@code file} itself if it is not
+     * a directory.
+     */
+    public static List<File> getDexFiles(File file) {
+        List<File> result = new ArrayList<File>();
+        if (!file.isDirectory()) {
+            result.add(file);
+            return result;
+        }
+        for (int i = 1; ; i++) {
+            File dexFile = new File(file, "classes" + (i == 1 ? "" : i) + ".dex");
+            if (!dexFile.isFile()) {
+                return result;
+            }
+            result.add(dexFile);
+        }
+    }
+
+    /**
+     * Runs {@code query} on the index of each of {@code dexFiles}, in
+     * parallel, and prints the results in the order of the files.
+     *
+     * @param saved whether to use the saved indexes, see {@link #load}
+     * @return the sum of the counts returned by {@code query}
+     */
+    public static int search(List<File> dexFiles, final boolean saved, final Query query,
+            PrintWriter out) throws IOException {
+        List<Callable<Integer>> searches = new ArrayList<Callable<Integer>>();
+        final List<StringWriter> outputs = new ArrayList<StringWriter>();
+        for (final File dexFile : dexFiles) {
+            final StringWriter output = new StringWriter();
+            outputs.add(output);
+            searches.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    PrintWriter out = new PrintWriter(output);
+                    int count = query.search(load(dexFile, saved), out);
+                    out.flush();
+                    return count;
+                }
+            });
+        }
+
+        int count = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(dexFiles.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Integer>> results = executor.invokeAll(searches);
+            for (int i = 0; i < results.size(); i++) {
+                count += results.get(i).get();
+                out.print(outputs.get(i));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while searching", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * A search of the index of one dex.
+     */
+    public interface Query {
+        /**
+         * Prints the matches in {@code index} to {@code out}.
+         *
+         * @return the number of matches
+         */
+        int search(DexUsageIndex index, PrintWriter out);
+    }
+
+    private static int[] toArray(IntList list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Walks a dex once, numbering the sites and uses.
+     */
+    private static final class Builder {
+        private final Dex dex;
+        private final CodeReader codeReader = new CodeReader();
+        private final IntList siteTypes = new IntList();
+        private final IntList siteMethods = new IntList();
+        private final IntList useSites = new IntList();
+        private final IntList useKinds = new IntList();
+        private final IntList useIndexes = new IntList();
+        private final IntList useOpcodes = new IntList();
+
+        Builder(Dex dex) {
+            this.dex = dex;
+
+            codeReader.setStringVisitor(new CodeReader.Visitor() {
+                @Override
+                public void visit(DecodedInstruction[] all, DecodedInstruction one) {
+                    addUse(STRING, one.getIndex(), one.getOpcode());
+                }
+            });
+            codeReader.setFieldVisitor(new CodeReader.Visitor() {
+                @Override
+                public void visit(DecodedInstruction[] all, DecodedInstruction one) {
+                    addUse(FIELD, one.getIndex(), one.getOpcode());
+                }
+            });
+            codeReader.setMethodVisitor(new CodeReader.Visitor() {
+                @Override
+                public void visit(DecodedInstruction[] all, DecodedInstruction one) {
+                    addUse(METHOD, one.getIndex(), one.getOpcode());
+                }
+            });
+        }
+
+        DexUsageIndex build() {
+            for (ClassDef classDef : dex.classDefs()) {
+                if (classDef.getClassDataOffset() == 0) {
+                    continue;
+                }
+
+                addSite(classDef.getTypeIndex(), -1);
+                ClassData classData = dex.readClassData(classDef);
+
+                int staticValuesOffset = classDef.getStaticValuesOffset();
+                if (staticValuesOffset != 0) {
+                    readArray(new EncodedValueReader(dex.open(staticValuesOffset),
+                            EncodedValueReader.ENCODED_ARRAY));
+                }
+
+                for (ClassData.Field field : classData.allFields()) {
+                    addUse(FIELD, field.getFieldIndex(), NO_OPCODE);
+                }
+
+                for (ClassData.Method method : classData.allMethods()) {
+                    int methodIndex = method.getMethodIndex();
+                    addSite(classDef.getTypeIndex(), methodIndex);
+                    addUse(METHOD, methodIndex, NO_OPCODE);
+                    if (method.getCodeOffset() != 0) {
+                        codeReader.visitAll(dex.readCode(method).getInstructions());
+                    }
+                }
+            }
+
+            return new DexUsageIndex(dex, toArray(siteTypes), toArray(siteMethods),
+                    toArray(useSites), toArray(useKinds), toArray(useIndexes),
+                    toArray(useOpcodes));
+        }
+
+        private void readArray(EncodedValueReader reader) {
+            for (int i = 0, size = reader.readArray(); i < size; i++) {
+                switch (reader.peek()) {
+                case EncodedValueReader.ENCODED_STRING:
+                    addUse(STRING, reader.readString(), NO_OPCODE);
+                    break;
+                case EncodedValueReader.ENCODED_ARRAY:
+                    readArray(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+                }
+            }
+        }
+
+        private void addSite(int typeIndex, int methodIndex) {
+            siteTypes.add(typeIndex);
+            siteMethods.add(methodIndex);
+        }
+
+        private void addUse(int kind, int index, int opcode) {
+            useSites.add(siteTypes.size() - 1);
+            useKinds.add(kind);
+            useIndexes.add(index);
+            useOpcodes.add(opcode);
+        }
+    }
+}
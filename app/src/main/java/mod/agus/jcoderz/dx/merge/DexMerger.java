@@ -32,31 +32,41 @@ import mod.agus.jcoderz.dex.SizeOf;
 import mod.agus.jcoderz.dex.TableOfContents;
 import mod.agus.jcoderz.dex.TypeList;
 import mod.agus.jcoderz.dx.command.dexer.DxContext;
+import mod.agus.jcoderz.dx.util.IntList;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Combine two dex files into one.
  */
 public final class DexMerger {
+    /**
+     * maximum number of dexes merged at once by a parallel merge, more are
+     * merged as a tree of groups
+     */
+    private static final int MAX_MERGE_FAN_IN = 8;
+
+    /** number of classes whose instructions are transformed by one task */
+    private static final int TRANSFORM_BATCH_SIZE = 64;
+
     private final Dex[] dexes;
     private final mod.agus.jcoderz.dx.merge.IndexMap[] indexMaps;
 
     private final CollisionPolicy collisionPolicy;
     private final mod.agus.jcoderz.dx.command.dexer.DxContext context;
-    private final WriterSizes writerSizes;
 
     private final Dex dexOut;
 
-    private final Dex.Section headerOut;
-
     /** All IDs and definitions sections */
     private final Dex.Section idsDefsOut;
 
-    private final Dex.Section mapListOut;
-
     private final Dex.Section typeListOut;
 
     private final Dex.Section classDataOut;
@@ -83,23 +93,54 @@ public final class DexMerger {
 
     private final TableOfContents contentsOut;
 
+    /**
+     * Sections of {@link #dexOut} after the header, in file order. Their
+     * sizes are pessimistic, so the result is made of the used part of each
+     * section, written right after the previous one.
+     */
+    private final Dex.Section[] sectionsOut;
+
+    /** start of each of {@link #sectionsOut} in {@link #dexOut} */
+    private final int[] sectionStarts;
+
+    /**
+     * Positions in {@link #dexOut} of the offsets written so far, which are
+     * adjusted when their sections are moved to form the result. The code
+     * offsets in class data are uleb128, they are written final instead.
+     */
+    private final IntList offsetPositions = new IntList();
+
+    /**
+     * Difference between the position of the code section in the result
+     * and in {@link #dexOut}, known once the sections before it are complete.
+     */
+    private int codeShift;
+
     private final InstructionTransformer instructionTransformer;
 
-    /** minimum number of wasted bytes before it's worthwhile to compact the result */
-    private int compactWasteThreshold = 1024 * 1024; // 1MiB
+    /** {@code null-ok;} executor of a parallel merge */
+    private ExecutorService executor;
+
+    /**
+     * {@code null-ok;} transformed instructions of the class being written,
+     * in the order its methods are written, or {@code null} to transform
+     * them while writing
+     */
+    private short[][] classInstructions;
+
+    /** index of the next entry of {@link #classInstructions} */
+    private int classInstructionsAt;
+
+    /** whether {@link #merge} lists every input, rather than just the result */
+    private boolean verbose = true;
 
     public DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, mod.agus.jcoderz.dx.command.dexer.DxContext context)
             throws IOException {
-        this(dexes, collisionPolicy, context, new WriterSizes(dexes));
-    }
-
-    private DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, mod.agus.jcoderz.dx.command.dexer.DxContext context,
-            WriterSizes writerSizes) throws IOException {
         this.dexes = dexes;
         this.collisionPolicy = collisionPolicy;
         this.context = context;
-        this.writerSizes = writerSizes;
 
+        WriterSizes writerSizes = new WriterSizes(dexes);
         dexOut = new Dex(writerSizes.size());
 
         indexMaps = new mod.agus.jcoderz.dx.merge.IndexMap[dexes.length];
@@ -108,16 +149,16 @@ public final class DexMerger {
         }
         instructionTransformer = new InstructionTransformer();
 
-        headerOut = dexOut.appendSection(writerSizes.header, "header");
+        dexOut.appendSection(writerSizes.header, "header");
         idsDefsOut = dexOut.appendSection(writerSizes.idsDefs, "ids defs");
 
         contentsOut = dexOut.getTableOfContents();
-        contentsOut.dataOff = dexOut.getNextSectionStart();
-
-        contentsOut.mapList.off = dexOut.getNextSectionStart();
-        contentsOut.mapList.size = 1;
-        mapListOut = dexOut.appendSection(writerSizes.mapList, "map list");
 
+        /*
+         * The class data comes last: it holds the offsets of the code as
+         * uleb128, which can only be written once the position of the code
+         * in the result is known. The map list is written with the result.
+         */
         contentsOut.typeLists.off = dexOut.getNextSectionStart();
         typeListOut = dexOut.appendSection(writerSizes.typeList, "type list");
 
@@ -128,18 +169,9 @@ public final class DexMerger {
         contentsOut.annotationSets.off = dexOut.getNextSectionStart();
         annotationSetOut = dexOut.appendSection(writerSizes.annotationsSet, "annotation sets");
 
-        contentsOut.classDatas.off = dexOut.getNextSectionStart();
-        classDataOut = dexOut.appendSection(writerSizes.classData, "class data");
-
-        contentsOut.codes.off = dexOut.getNextSectionStart();
-        codeOut = dexOut.appendSection(writerSizes.code, "code");
-
         contentsOut.stringDatas.off = dexOut.getNextSectionStart();
         stringDataOut = dexOut.appendSection(writerSizes.stringData, "string data");
 
-        contentsOut.debugInfos.off = dexOut.getNextSectionStart();
-        debugInfoOut = dexOut.appendSection(writerSizes.debugInfo, "debug info");
-
         contentsOut.annotations.off = dexOut.getNextSectionStart();
         annotationOut = dexOut.appendSection(writerSizes.annotation, "annotation");
 
@@ -150,11 +182,95 @@ public final class DexMerger {
         annotationsDirectoryOut = dexOut.appendSection(
                 writerSizes.annotationsDirectory, "annotations directory");
 
-        contentsOut.dataSize = dexOut.getNextSectionStart() - contentsOut.dataOff;
+        contentsOut.codes.off = dexOut.getNextSectionStart();
+        codeOut = dexOut.appendSection(writerSizes.code, "code");
+
+        contentsOut.debugInfos.off = dexOut.getNextSectionStart();
+        debugInfoOut = dexOut.appendSection(writerSizes.debugInfo, "debug info");
+
+        contentsOut.classDatas.off = dexOut.getNextSectionStart();
+        classDataOut = dexOut.appendSection(writerSizes.classData, "class data");
+
+        sectionsOut = new Dex.Section[] {
+            idsDefsOut, typeListOut, annotationSetRefListOut, annotationSetOut, stringDataOut,
+            annotationOut, encodedArrayOut, annotationsDirectoryOut, codeOut, debugInfoOut,
+            classDataOut
+        };
+        sectionStarts = new int[sectionsOut.length];
+        for (int i = 0; i < sectionsOut.length; i++) {
+            sectionStarts[i] = sectionsOut[i].getPosition();
+        }
     }
 
-    public void setCompactWasteThreshold(int compactWasteThreshold) {
-        this.compactWasteThreshold = compactWasteThreshold;
+    /**
+     * Constructs a merger that uses {@code executor} to merge in parallel.
+     * When there are more than {@link #MAX_MERGE_FAN_IN} dexes, groups of
+     * adjacent dexes are merged concurrently first, repeatedly, and this
+     * merger then merges the results. Groups keep the order of the dexes,
+     * so {@link CollisionPolicy#KEEP_FIRST} keeps the same class.
+     *
+     * @param executor {@code null-ok;} the executor, or {@code null} to merge
+     * on the calling thread only
+     */
+    public DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, DxContext context,
+            ExecutorService executor) throws IOException {
+        this(mergeGroups(dexes, collisionPolicy, context, executor), collisionPolicy, context);
+        this.executor = executor;
+    }
+
+    /**
+     * Merges groups of at most {@link #MAX_MERGE_FAN_IN} adjacent dexes
+     * concurrently until no more than that many remain.
+     *
+     * @return {@code non-null;} the dexes left to merge
+     */
+    private static Dex[] mergeGroups(Dex[] dexes, final CollisionPolicy collisionPolicy,
+            final DxContext context, ExecutorService executor) throws IOException {
+        if (executor == null) {
+            return dexes;
+        }
+
+        while (dexes.length > MAX_MERGE_FAN_IN) {
+            int groupCount = (dexes.length + MAX_MERGE_FAN_IN - 1) / MAX_MERGE_FAN_IN;
+            List<Future<Dex>> groups = new ArrayList<Future<Dex>>(groupCount);
+            for (int g = 0; g < groupCount; g++) {
+                final Dex[] group = Arrays.copyOfRange(dexes,
+                        g * dexes.length / groupCount, (g + 1) * dexes.length / groupCount);
+                groups.add(executor.submit(new Callable<Dex>() {
+                    @Override
+                    public Dex call() throws IOException {
+                        return new DexMerger(group, collisionPolicy, context).mergeDexes();
+                    }
+                }));
+            }
+
+            dexes = new Dex[groupCount];
+            for (int g = 0; g < groupCount; g++) {
+                dexes[g] = getResult(groups.get(g));
+            }
+        }
+        return dexes;
+    }
+
+    /**
+     * Waits for a task of a parallel merge, rethrowing what it threw.
+     */
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while merging", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
     }
 
     private Dex mergeDexes() throws IOException {
@@ -169,22 +285,128 @@ public final class DexMerger {
         unionAnnotationSetsAndDirectories();
         mergeCallSiteIds();
         mergeClassDefs();
+        return writeResult();
+    }
+
+    /**
+     * Writes the merged dex: the header, the used part of every section
+     * right after the previous one, and the map list. The offsets written
+     * while merging are moved along with the sections they point into.
+     */
+    private Dex writeResult() throws IOException {
+        int[] resultStarts = new int[sectionsOut.length];
+        for (int i = 0; i < sectionsOut.length; i++) {
+            resultStarts[i] = getResultStart(i);
+        }
+
+        for (TableOfContents.Section section : contentsOut.sections) {
+            section.off = moveOffset(section.off, resultStarts);
+        }
+        contentsOut.header.off = 0;
+        contentsOut.header.size = 1;
+        contentsOut.mapList.off = getResultStart(sectionsOut.length);
+        contentsOut.mapList.size = 1;
+
+        int mapItemCount = 0;
+        for (TableOfContents.Section section : contentsOut.sections) {
+            if (section.exists()) {
+                mapItemCount++;
+            }
+        }
+        contentsOut.fileSize = contentsOut.mapList.off
+                + SizeOf.UINT + mapItemCount * SizeOf.MAP_ITEM;
+        contentsOut.dataOff = resultStarts[1];
+        contentsOut.dataSize = contentsOut.fileSize - contentsOut.dataOff;
+
+        // move the offsets in place, in file order so both cursors only go forward
+        offsetPositions.sort();
+        Dex.Section offsetsIn = dexOut.open(0);
+        Dex.Section offsetsOut = dexOut.open(0);
+        for (int i = 0; i < offsetPositions.size(); i++) {
+            int position = offsetPositions.get(i);
+            offsetsIn.skip(position - offsetsIn.getPosition());
+            int offset = offsetsIn.readInt();
+            offsetsOut.skip(position - offsetsOut.getPosition());
+            offsetsOut.writeInt(offset == 0 ? 0 : moveOffset(offset, resultStarts));
+        }
+
+        Dex result = new Dex(contentsOut.fileSize);
+        for (int i = 0; i < sectionsOut.length; i++) {
+            int used = sectionsOut[i].used();
+            if (used > 0) {
+                result.open(resultStarts[i]).write(
+                        dexOut.open(sectionStarts[i]).readByteArray(used));
+            }
+        }
 
         // computeSizesFromOffsets expects sections sorted by offset, so make it so
         Arrays.sort(contentsOut.sections);
 
         // write the header
-        contentsOut.header.off = 0;
-        contentsOut.header.size = 1;
-        contentsOut.fileSize = dexOut.getLength();
         contentsOut.computeSizesFromOffsets();
-        contentsOut.writeHeader(headerOut, mergeApiLevels());
-        contentsOut.writeMap(mapListOut);
+        contentsOut.writeHeader(result.open(0), mergeApiLevels());
+        contentsOut.writeMap(result.open(contentsOut.mapList.off));
 
         // generate and write the hashes
-        dexOut.writeHashes();
+        result.writeHashes();
+
+        result.getTableOfContents().readFrom(result);
+        return result;
+    }
 
-        return dexOut;
+    /**
+     * Returns the start in the merged dex of a section of
+     * {@link #sectionsOut}, valid once every section before it is complete.
+     *
+     * @param index the index of the section, or the number of sections
+     * for the end of the last one
+     */
+    private int getResultStart(int index) {
+        int start = SizeOf.HEADER_ITEM;
+        for (int i = 0; i < index; i++) {
+            start = (start + sectionsOut[i].used() + 3) & ~3;
+        }
+        return start;
+    }
+
+    /**
+     * Returns where an offset of {@link #dexOut} is in the merged dex.
+     * Offsets in the header, as well as 0 and -1, are returned as is.
+     */
+    private int moveOffset(int offset, int[] resultStarts) {
+        if (offset < sectionStarts[0]) {
+            return offset;
+        }
+
+        // the last section starting at the offset, empty sections may share a start
+        int low = 0;
+        int high = sectionStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (sectionStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset - sectionStarts[low] + resultStarts[low];
+    }
+
+    /**
+     * Writes an offset into {@link #dexOut}, remembering where it is so that
+     * it can be moved along with the section it points into.
+     */
+    private void writeOffset(Dex.Section out, int offset) {
+        offsetPositions.add(out.getPosition());
+        out.writeInt(offset);
+    }
+
+    /**
+     * Sets whether {@link #merge} prints a line for every input dex. The
+     * result is always reported, once per merge.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
     }
 
     public Dex merge() throws IOException {
@@ -197,29 +419,14 @@ public final class DexMerger {
         long start = System.nanoTime();
         Dex result = mergeDexes();
 
-        /*
-         * We use pessimistic sizes when merging dex files. If those sizes
-         * result in too many bytes wasted, compact the result. To compact,
-         * simply merge the result with itself.
-         */
-        WriterSizes compactedSizes = new WriterSizes(this);
-        int wastedByteCount = writerSizes.size() - compactedSizes.size();
-        if (wastedByteCount >  + compactWasteThreshold) {
-            DexMerger compacter = new DexMerger(
-                    new Dex[] {dexOut, new Dex(0)}, CollisionPolicy.FAIL, context, compactedSizes);
-            result = compacter.mergeDexes();
-            context.out.printf("Result compacted from %.1fKiB to %.1fKiB to save %.1fKiB%n",
-                    dexOut.getLength() / 1024f,
-                    result.getLength() / 1024f,
-                    wastedByteCount / 1024f);
-        }
-
         long elapsed = System.nanoTime() - start;
-        for (int i = 0; i < dexes.length; i++) {
-            context.out.printf("Merged dex #%d (%d defs/%.1fKiB)%n",
-                i + 1,
-                dexes[i].getTableOfContents().classDefs.size,
-                dexes[i].getLength() / 1024f);
+        if (verbose) {
+            for (int i = 0; i < dexes.length; i++) {
+                context.out.printf("Merged dex #%d (%d defs/%.1fKiB)%n",
+                    i + 1,
+                    dexes[i].getTableOfContents().classDefs.size,
+                    dexes[i].getLength() / 1024f);
+            }
         }
         context.out.printf("Result is %d defs/%.1fKiB. Took %.1fs%n",
                 result.getTableOfContents().classDefs.size,
@@ -405,7 +612,7 @@ public final class DexMerger {
 
             @Override void write(String value) {
                 contentsOut.stringDatas.size++;
-                idsDefsOut.writeInt(stringDataOut.getPosition());
+                writeOffset(idsDefsOut, stringDataOut.getPosition());
                 stringDataOut.writeStringData(value);
             }
         }.mergeSorted();
@@ -474,7 +681,9 @@ public final class DexMerger {
 
             @Override
             void write(ProtoId value) {
-                value.writeTo(idsDefsOut);
+                idsDefsOut.writeInt(value.getShortyIndex());
+                idsDefsOut.writeInt(value.getReturnTypeIndex());
+                writeOffset(idsDefsOut, value.getParametersOffset());
             }
         }.mergeSorted();
     }
@@ -498,7 +707,7 @@ public final class DexMerger {
 
             @Override
             void write(CallSiteId value) {
-                value.writeTo(idsDefsOut);
+                writeOffset(idsDefsOut, value.getCallSiteOffset());
             }
         }.mergeSorted();
     }
@@ -594,17 +803,102 @@ public final class DexMerger {
         }.mergeUnsorted();
     }
 
-    private void mergeClassDefs() {
+    private void mergeClassDefs() throws IOException {
         SortableType[] types = getSortedTypes();
         contentsOut.classDefs.off = idsDefsOut.getPosition();
         contentsOut.classDefs.size = types.length;
+        if (types.length == 0) {
+            return;
+        }
+
+        /*
+         * Reserve the class defs, the last of the ids. Every section before
+         * the code is then complete, so the position of the code in the
+         * merged dex is known before any class data refers to it.
+         */
+        Dex.Section classDefsOut = dexOut.open(idsDefsOut.getPosition());
+        idsDefsOut.skip(types.length * SizeOf.CLASS_DEF_ITEM);
+        int codeIndex = Arrays.asList(sectionsOut).indexOf(codeOut);
+        codeShift = getResultStart(codeIndex) - sectionStarts[codeIndex];
+
+        if (executor == null) {
+            for (SortableType type : types) {
+                Dex in = type.getDex();
+                transformClassDef(classDefsOut, in, type.getClassDef(), type.getIndexMap());
+            }
+            return;
+        }
+
+        /*
+         * Instructions only depend on the index maps, which are complete by
+         * now, so they are transformed in parallel batches while the classes
+         * are written in order as their batches complete.
+         */
+        List<Future<short[][][]>> batches = new ArrayList<Future<short[][][]>>();
+        for (int start = 0; start < types.length; start += TRANSFORM_BATCH_SIZE) {
+            final SortableType[] batch = Arrays.copyOfRange(types, start,
+                    Math.min(types.length, start + TRANSFORM_BATCH_SIZE));
+            batches.add(executor.submit(new Callable<short[][][]>() {
+                @Override
+                public short[][][] call() {
+                    return transformInstructions(batch);
+                }
+            }));
+        }
 
-        for (SortableType type : types) {
-            Dex in = type.getDex();
-            transformClassDef(in, type.getClassDef(), type.getIndexMap());
+        try {
+            for (int b = 0; b < batches.size(); b++) {
+                short[][][] batchInstructions = getResult(batches.get(b));
+                for (int i = 0; i < batchInstructions.length; i++) {
+                    SortableType type = types[b * TRANSFORM_BATCH_SIZE + i];
+                    classInstructions = batchInstructions[i];
+                    classInstructionsAt = 0;
+                    transformClassDef(classDefsOut, type.getDex(), type.getClassDef(),
+                            type.getIndexMap());
+                }
+            }
+        } finally {
+            classInstructions = null;
+            for (Future<short[][][]> batch : batches) {
+                batch.cancel(true);
+            }
         }
     }
 
+    /**
+     * Transforms the instructions of every method with code of
+     * {@code types}. This only reads shared state, so batches may run
+     * concurrently.
+     *
+     * @return {@code non-null;} for each type, the instructions of its
+     * methods in the order {@link #transformClassData} writes them
+     */
+    private short[][][] transformInstructions(SortableType[] types) {
+        InstructionTransformer transformer = new InstructionTransformer();
+        short[][][] result = new short[types.length][][];
+        for (int i = 0; i < types.length; i++) {
+            Dex in = types[i].getDex();
+            ClassDef classDef = types[i].getClassDef();
+            if (classDef.getClassDataOffset() == 0) {
+                continue;
+            }
+
+            ClassData classData = in.readClassData(classDef);
+            List<short[]> instructions = new ArrayList<short[]>();
+            for (ClassData.Method[] methods : new ClassData.Method[][] {
+                    classData.getDirectMethods(), classData.getVirtualMethods() }) {
+                for (ClassData.Method method : methods) {
+                    if (method.getCodeOffset() != 0) {
+                        instructions.add(transformer.transform(types[i].getIndexMap(),
+                                in.readCode(method).getInstructions()));
+                    }
+                }
+            }
+            result[i] = instructions.toArray(new short[instructions.size()][]);
+        }
+        return result;
+    }
+
     /**
      * Returns the union of classes from both files, sorted in order such that
      * a class is always preceded by its supertype and implemented interfaces.
@@ -725,33 +1019,34 @@ public final class DexMerger {
     }
 
     /**
-     * Reads a class_def_item beginning at {@code in} and writes the index and
-     * data.
+     * Reads a class_def_item beginning at {@code in} and writes the index to
+     * {@code classDefsOut} and the data.
      */
-    private void transformClassDef(Dex in, ClassDef classDef, mod.agus.jcoderz.dx.merge.IndexMap indexMap) {
-        idsDefsOut.assertFourByteAligned();
-        idsDefsOut.writeInt(classDef.getTypeIndex());
-        idsDefsOut.writeInt(classDef.getAccessFlags());
-        idsDefsOut.writeInt(classDef.getSupertypeIndex());
-        idsDefsOut.writeInt(classDef.getInterfacesOffset());
+    private void transformClassDef(Dex.Section classDefsOut, Dex in, ClassDef classDef,
+            mod.agus.jcoderz.dx.merge.IndexMap indexMap) {
+        classDefsOut.assertFourByteAligned();
+        classDefsOut.writeInt(classDef.getTypeIndex());
+        classDefsOut.writeInt(classDef.getAccessFlags());
+        classDefsOut.writeInt(classDef.getSupertypeIndex());
+        writeOffset(classDefsOut, classDef.getInterfacesOffset());
 
         int sourceFileIndex = indexMap.adjustString(classDef.getSourceFileIndex());
-        idsDefsOut.writeInt(sourceFileIndex);
+        classDefsOut.writeInt(sourceFileIndex);
 
         int annotationsOff = classDef.getAnnotationsOffset();
-        idsDefsOut.writeInt(indexMap.adjustAnnotationDirectory(annotationsOff));
+        writeOffset(classDefsOut, indexMap.adjustAnnotationDirectory(annotationsOff));
 
         int classDataOff = classDef.getClassDataOffset();
         if (classDataOff == 0) {
-            idsDefsOut.writeInt(0);
+            classDefsOut.writeInt(0);
         } else {
-            idsDefsOut.writeInt(classDataOut.getPosition());
+            writeOffset(classDefsOut, classDataOut.getPosition());
             ClassData classData = in.readClassData(classDef);
             transformClassData(in, classData, indexMap);
         }
 
         int staticValuesOff = classDef.getStaticValuesOffset();
-        idsDefsOut.writeInt(indexMap.adjustEncodedArray(staticValuesOff));
+        writeOffset(classDefsOut, indexMap.adjustEncodedArray(staticValuesOff));
     }
 
     /**
@@ -765,7 +1060,7 @@ public final class DexMerger {
                 directoryIn.getPosition(), annotationsDirectoryOut.getPosition());
 
         int classAnnotationsOffset = indexMap.adjustAnnotationSet(directoryIn.readInt());
-        annotationsDirectoryOut.writeInt(classAnnotationsOffset);
+        writeOffset(annotationsDirectoryOut, classAnnotationsOffset);
 
         int fieldsSize = directoryIn.readInt();
         annotationsDirectoryOut.writeInt(fieldsSize);
@@ -781,7 +1076,7 @@ public final class DexMerger {
             annotationsDirectoryOut.writeInt(indexMap.adjustField(directoryIn.readInt()));
 
             // annotations offset
-            annotationsDirectoryOut.writeInt(indexMap.adjustAnnotationSet(directoryIn.readInt()));
+            writeOffset(annotationsDirectoryOut, indexMap.adjustAnnotationSet(directoryIn.readInt()));
         }
 
         for (int i = 0; i < methodsSize; i++) {
@@ -789,7 +1084,7 @@ public final class DexMerger {
             annotationsDirectoryOut.writeInt(indexMap.adjustMethod(directoryIn.readInt()));
 
             // annotation set offset
-            annotationsDirectoryOut.writeInt(
+            writeOffset(annotationsDirectoryOut,
                     indexMap.adjustAnnotationSet(directoryIn.readInt()));
         }
 
@@ -798,7 +1093,7 @@ public final class DexMerger {
             annotationsDirectoryOut.writeInt(indexMap.adjustMethod(directoryIn.readInt()));
 
             // annotations offset
-            annotationsDirectoryOut.writeInt(
+            writeOffset(annotationsDirectoryOut,
                     indexMap.adjustAnnotationSetRefList(directoryIn.readInt()));
         }
     }
@@ -815,7 +1110,7 @@ public final class DexMerger {
         annotationSetOut.writeInt(size);
 
         for (int j = 0; j < size; j++) {
-            annotationSetOut.writeInt(indexMap.adjustAnnotation(setIn.readInt()));
+            writeOffset(annotationSetOut, indexMap.adjustAnnotation(setIn.readInt()));
         }
     }
 
@@ -831,7 +1126,7 @@ public final class DexMerger {
         int parameterCount = refListIn.readInt();
         annotationSetRefListOut.writeInt(parameterCount);
         for (int p = 0; p < parameterCount; p++) {
-            annotationSetRefListOut.writeInt(indexMap.adjustAnnotationSet(refListIn.readInt()));
+            writeOffset(annotationSetRefListOut, indexMap.adjustAnnotationSet(refListIn.readInt()));
         }
     }
 
@@ -877,7 +1172,8 @@ public final class DexMerger {
                 classDataOut.writeUleb128(0);
             } else {
                 codeOut.alignToFourBytesWithZeroFill();
-                classDataOut.writeUleb128(codeOut.getPosition());
+                // final already, uleb128 offsets cannot be moved
+                classDataOut.writeUleb128(codeOut.getPosition() + codeShift);
                 transformCode(in, in.readCode(method), indexMap);
             }
         }
@@ -897,14 +1193,16 @@ public final class DexMerger {
 
         int debugInfoOffset = code.getDebugInfoOffset();
         if (debugInfoOffset != 0) {
-            codeOut.writeInt(debugInfoOut.getPosition());
+            writeOffset(codeOut, debugInfoOut.getPosition());
             transformDebugInfoItem(in.open(debugInfoOffset), indexMap);
         } else {
             codeOut.writeInt(0);
         }
 
         short[] instructions = code.getInstructions();
-        short[] newInstructions = instructionTransformer.transform(indexMap, instructions);
+        short[] newInstructions = classInstructions != null
+                ? classInstructions[classInstructionsAt++]
+                : instructionTransformer.transform(indexMap, instructions);
         codeOut.writeInt(newInstructions.length);
         codeOut.write(newInstructions);
 
@@ -1059,19 +1357,14 @@ public final class DexMerger {
 
     /**
      * Byte counts for the sections written when creating a dex. Target sizes
-     * are defined in one of two ways:
-     * <ul>
-     * <li>By pessimistically guessing how large the union of dex files will be.
-     *     We're pessimistic because we can't predict the amount of duplication
-     *     between dex files, nor can we predict the length of ULEB-encoded
-     *     offsets or indices.
-     * <li>By exactly measuring an existing dex.
-     * </ul>
+     * are pessimistic guesses of how large the union of dex files will be.
+     * We're pessimistic because we can't predict the amount of duplication
+     * between dex files, nor can we predict the length of ULEB-encoded
+     * offsets or indices. Unused bytes are dropped when the result is written.
      */
     private static class WriterSizes {
         private int header = SizeOf.HEADER_ITEM;
         private int idsDefs;
-        private int mapList;
         private int typeList;
         private int classData;
         private int code;
@@ -1088,36 +1381,20 @@ public final class DexMerger {
          */
         public WriterSizes(Dex[] dexes) {
             for (int i = 0; i < dexes.length; i++) {
-                plus(dexes[i].getTableOfContents(), false);
+                plus(dexes[i].getTableOfContents());
             }
             fourByteAlign();
         }
 
-        public WriterSizes(DexMerger dexMerger) {
-            header = dexMerger.headerOut.used();
-            idsDefs = dexMerger.idsDefsOut.used();
-            mapList = dexMerger.mapListOut.used();
-            typeList = dexMerger.typeListOut.used();
-            classData = dexMerger.classDataOut.used();
-            code = dexMerger.codeOut.used();
-            stringData = dexMerger.stringDataOut.used();
-            debugInfo = dexMerger.debugInfoOut.used();
-            encodedArray = dexMerger.encodedArrayOut.used();
-            annotationsDirectory = dexMerger.annotationsDirectoryOut.used();
-            annotationsSet = dexMerger.annotationSetOut.used();
-            annotationsSetRefList = dexMerger.annotationSetRefListOut.used();
-            annotation = dexMerger.annotationOut.used();
-            fourByteAlign();
-        }
-
-        private void plus(TableOfContents contents, boolean exact) {
+        private void plus(TableOfContents contents) {
             idsDefs += contents.stringIds.size * SizeOf.STRING_ID_ITEM
                     + contents.typeIds.size * SizeOf.TYPE_ID_ITEM
                     + contents.protoIds.size * SizeOf.PROTO_ID_ITEM
                     + contents.fieldIds.size * SizeOf.MEMBER_ID_ITEM
                     + contents.methodIds.size * SizeOf.MEMBER_ID_ITEM
-                    + contents.classDefs.size * SizeOf.CLASS_DEF_ITEM;
-            mapList = SizeOf.UINT + (contents.sections.length * SizeOf.MAP_ITEM);
+                    + contents.classDefs.size * SizeOf.CLASS_DEF_ITEM
+                    + contents.callSiteIds.size * SizeOf.CALL_SITE_ID_ITEM
+                    + contents.methodHandles.size * SizeOf.METHOD_HANDLE_ITEM;
             typeList += fourByteAlign(contents.typeLists.byteCount); // We count each dex's
             // typelists section as realigned on 4 bytes, because each typelist of each dex's
             // typelists section is aligned on 4 bytes. If we didn't, there is a case where each
@@ -1129,33 +1406,24 @@ public final class DexMerger {
             annotationsSet += contents.annotationSets.byteCount;
             annotationsSetRefList += contents.annotationSetRefLists.byteCount;
 
-            if (exact) {
-                code += contents.codes.byteCount;
-                classData += contents.classDatas.byteCount;
-                encodedArray += contents.encodedArrays.byteCount;
-                annotation += contents.annotations.byteCount;
-                debugInfo += contents.debugInfos.byteCount;
-            } else {
-                // at most 1/4 of the bytes in a code section are uleb/sleb
-                code += (int) Math.ceil(contents.codes.byteCount * 1.25);
-                // at most 2/3 of the bytes in a class data section are uleb/sleb that may change
-                // (assuming the worst case that section contains only methods and no fields)
-                classData += (int) Math.ceil(contents.classDatas.byteCount * 1.67);
-                // all of the bytes in an encoding arrays section may be uleb/sleb
-                encodedArray += contents.encodedArrays.byteCount * 2;
-                // all of the bytes in an annotations section may be uleb/sleb
-                annotation += (int) Math.ceil(contents.annotations.byteCount * 2);
-                // all of the bytes in a debug info section may be uleb/sleb. The additive constant
-                // is a fudge factor observed to be required when merging small
-                // DEX files (b/68483205).
-                debugInfo += contents.debugInfos.byteCount * 2 + 8;
-            }
+            // at most 1/4 of the bytes in a code section are uleb/sleb
+            code += (int) Math.ceil(contents.codes.byteCount * 1.25);
+            // at most 2/3 of the bytes in a class data section are uleb/sleb that may change
+            // (assuming the worst case that section contains only methods and no fields)
+            classData += (int) Math.ceil(contents.classDatas.byteCount * 1.67);
+            // all of the bytes in an encoding arrays section may be uleb/sleb
+            encodedArray += contents.encodedArrays.byteCount * 2;
+            // all of the bytes in an annotations section may be uleb/sleb
+            annotation += (int) Math.ceil(contents.annotations.byteCount * 2);
+            // all of the bytes in a debug info section may be uleb/sleb. The additive constant
+            // is a fudge factor observed to be required when merging small
+            // DEX files (b/68483205).
+            debugInfo += contents.debugInfos.byteCount * 2 + 8;
         }
 
         private void fourByteAlign() {
             header = fourByteAlign(header);
             idsDefs = fourByteAlign(idsDefs);
-            mapList = fourByteAlign(mapList);
             typeList = fourByteAlign(typeList);
             classData = fourByteAlign(classData);
             code = fourByteAlign(code);
@@ -1173,7 +1441,7 @@ public final class DexMerger {
         }
 
         public int size() {
-            return header + idsDefs + mapList + typeList + classData + code + stringData + debugInfo
+            return header + idsDefs + typeList + classData + code + stringData + debugInfo
                     + encodedArray + annotationsDirectory + annotationsSet + annotationsSetRefList
                     + annotation;
         }
@@ -1185,9 +1453,16 @@ public final class DexMerger {
             return;
         }
 
+        File out = new File(args[0]).getCanonicalFile();
         Dex[] dexes = new Dex[args.length - 1];
         for (int i = 1; i < args.length; i++) {
-            dexes[i - 1] = new Dex(new File(args[i]));
+            File in = new File(args[i]);
+            if (in.getCanonicalFile().equals(out) && in.getName().endsWith(".dex")) {
+                // the output replaces this input, which must not stay mapped meanwhile
+                dexes[i - 1] = new Dex(new FileInputStream(in));
+            } else {
+                dexes[i - 1] = new Dex(in);
+            }
         }
         Dex merged = new DexMerger(dexes, CollisionPolicy.KEEP_FIRST, new DxContext()).merge();
         merged.writeTo(new File(args[0]));
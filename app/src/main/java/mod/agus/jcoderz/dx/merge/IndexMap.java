@@ -52,8 +52,6 @@ import mod.agus.jcoderz.dex.TypeList;
 import mod.agus.jcoderz.dex.util.ByteOutput;
 import mod.agus.jcoderz.dx.util.ByteArrayAnnotatedOutput;
 
-import java.util.HashMap;
-
 /**
  * Maps the index offsets from one dex file to those in another. For example, if
  * you have string #5 in the old dex file, its position in the new dex file is
@@ -67,13 +65,13 @@ public final class IndexMap {
     public final short[] fieldIds;
     public final short[] methodIds;
     public final int[] callSiteIds;
-    public final HashMap<Integer, Integer> methodHandleIds;
-    private final HashMap<Integer, Integer> typeListOffsets;
-    private final HashMap<Integer, Integer> annotationOffsets;
-    private final HashMap<Integer, Integer> annotationSetOffsets;
-    private final HashMap<Integer, Integer> annotationSetRefListOffsets;
-    private final HashMap<Integer, Integer> annotationDirectoryOffsets;
-    private final HashMap<Integer, Integer> encodedArrayValueOffset;
+    public final IntIntMap methodHandleIds;
+    private final IntIntMap typeListOffsets;
+    private final IntIntMap annotationOffsets;
+    private final IntIntMap annotationSetOffsets;
+    private final IntIntMap annotationSetRefListOffsets;
+    private final IntIntMap annotationDirectoryOffsets;
+    private final IntIntMap encodedArrayValueOffset;
 
     public IndexMap(Dex target, TableOfContents tableOfContents) {
         this.target = target;
@@ -83,13 +81,13 @@ public final class IndexMap {
         this.fieldIds = new short[tableOfContents.fieldIds.size];
         this.methodIds = new short[tableOfContents.methodIds.size];
         this.callSiteIds = new int[tableOfContents.callSiteIds.size];
-        this.methodHandleIds = new HashMap<Integer, Integer>();
-        this.typeListOffsets = new HashMap<Integer, Integer>();
-        this.annotationOffsets = new HashMap<Integer, Integer>();
-        this.annotationSetOffsets = new HashMap<Integer, Integer>();
-        this.annotationSetRefListOffsets = new HashMap<Integer, Integer>();
-        this.annotationDirectoryOffsets = new HashMap<Integer, Integer>();
-        this.encodedArrayValueOffset = new HashMap<Integer, Integer>();
+        this.methodHandleIds = new IntIntMap();
+        this.typeListOffsets = new IntIntMap();
+        this.annotationOffsets = new IntIntMap();
+        this.annotationSetOffsets = new IntIntMap();
+        this.annotationSetRefListOffsets = new IntIntMap();
+        this.annotationDirectoryOffsets = new IntIntMap();
+        this.encodedArrayValueOffset = new IntIntMap();
 
         /*
          * A type list, annotation set, annotation directory, or static value at
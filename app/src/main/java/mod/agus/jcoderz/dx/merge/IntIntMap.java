@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dx.merge;
+
+import java.util.Arrays;
+
+/**
+ * Map from non-negative ints to ints, with open addressing so that lookups
+ * neither box nor allocate. Offsets of the merged sections are not put in
+ * ascending order, so keys are hashed rather than kept sorted.
+ */
+public final class IntIntMap {
+    /** marker of a free slot, keys are never negative */
+    private static final int FREE = -1;
+
+    /** initial number of slots, a power of 2 */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** {@code non-null;} keys, or {@link #FREE} */
+    private int[] keys;
+
+    /** {@code non-null;} values, parallel to {@link #keys} */
+    private int[] values;
+
+    /** {@code >= 0;} number of keys in this map */
+    private int size;
+
+    /**
+     * Constructs an empty instance.
+     */
+    public IntIntMap() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Gets the number of keys in this map.
+     *
+     * @return {@code >= 0;} the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, replacing the previous value of
+     * {@code key} if any.
+     *
+     * @param key {@code >= 0;} the key
+     * @param value the value
+     */
+    public void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("key < 0");
+        }
+
+        int slot = find(keys, key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+
+        // keep at most half of the slots in use, probes stay short
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Gets the value {@code key} is mapped to.
+     *
+     * @param key {@code >= 0;} the key
+     * @return the value
+     * @throws IllegalArgumentException if {@code key} is not in this map
+     */
+    public int get(int key) {
+        if (key >= 0) {
+            int slot = find(keys, key);
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        throw new IllegalArgumentException("not found: " + key);
+    }
+
+    /**
+     * Finds the slot of {@code key}, or the free slot it would go in.
+     */
+    private static int find(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9e3779b9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != key && keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
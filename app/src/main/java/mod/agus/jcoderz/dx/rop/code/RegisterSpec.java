@@ -16,10 +16,11 @@
 
 package mod.agus.jcoderz.dx.rop.code;
 
+import mod.agus.jcoderz.dx.rop.type.InternTables;
 import mod.agus.jcoderz.dx.rop.type.Type;
 import mod.agus.jcoderz.dx.rop.type.TypeBearer;
 import mod.agus.jcoderz.dx.util.ToHuman;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import mod.agus.jcoderz.dx.rop.cst.Constant;
 import mod.agus.jcoderz.dx.rop.cst.CstString;
@@ -33,10 +34,6 @@ public final class RegisterSpec
     /** {@code non-null;} string to prefix register numbers with */
     public static final String PREFIX = "v";
 
-    /** {@code non-null;} intern table for instances */
-    private static final ConcurrentHashMap<Object, RegisterSpec> theInterns =
-        new ConcurrentHashMap<Object, RegisterSpec>(10_000, 0.75f);
-
     /** {@code non-null;} common comparison instance used while interning */
     private static final ThreadLocal<ForComparison> theInterningItem =
             new ThreadLocal<ForComparison>() {
@@ -71,6 +68,8 @@ public final class RegisterSpec
             LocalItem local) {
         ForComparison interningItem = theInterningItem.get();
         interningItem.set(reg, type, local);
+        ConcurrentMap<Object, RegisterSpec> theInterns =
+                InternTables.current().registerSpecs;
         RegisterSpec found = theInterns.get(interningItem);
         if (found == null) {
             found = interningItem.toRegisterSpec();
@@ -619,8 +618,11 @@ public final class RegisterSpec
         return sb.toString();
     }
 
+    /**
+     * Empties the intern table bound to the current thread.
+     */
     public static void clearInternTable() {
-        theInterns.clear();
+        InternTables.current().registerSpecs.clear();
     }
 
     /**
@@ -16,8 +16,9 @@
 
 package mod.agus.jcoderz.dx.rop.cst;
 
+import mod.agus.jcoderz.dx.rop.type.InternTables;
 import mod.agus.jcoderz.dx.rop.type.Type;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -26,12 +27,11 @@ import java.util.concurrent.ConcurrentMap;
 public final class CstType extends TypedConstant {
 
     /**
-     * Intern table for instances.
-     *
-     * <p>The initial capacity is based on a medium-size project.
+     * Intern table for the constant instances below, shared by every
+     * {@link InternTables} and never modified after class initialization.
      */
-    private static final ConcurrentMap<Type, CstType> interns =
-            new ConcurrentHashMap<>(1_000, 0.75f);
+    private static final HashMap<Type, CstType> coreInterns =
+            new HashMap<Type, CstType>(32);
 
     /** {@code non-null;} instance corresponding to the class {@code Object} */
     public static final CstType OBJECT = new CstType(Type.OBJECT);
@@ -124,7 +124,7 @@ public final class CstType extends TypedConstant {
     }
 
     private static void internInitial(CstType cst) {
-        if (interns.putIfAbsent(cst.getClassType(), cst) != null) {
+        if (coreInterns.put(cst.getClassType(), cst) != null) {
             throw new IllegalStateException("Attempted re-init of " + cst);
         }
     }
@@ -171,8 +171,17 @@ public final class CstType extends TypedConstant {
      * @return {@code non-null;} an appropriately-constructed instance
      */
     public static CstType intern(Type type) {
+        CstType result = coreInterns.get(type);
+        if (result != null) {
+            return result;
+        }
+        ConcurrentMap<Type, CstType> interns = InternTables.current().cstTypes;
+        result = interns.get(type);
+        if (result != null) {
+            return result;
+        }
         CstType cst = new CstType(type);
-        CstType result = interns.putIfAbsent(type, cst);
+        result = interns.putIfAbsent(type, cst);
         return result != null ? result : cst;
     }
 
@@ -291,9 +300,12 @@ public final class CstType extends TypedConstant {
         }
     }
 
+    /**
+     * Empties the intern table bound to the current thread. The constant
+     * instances are never removed.
+     */
     public static void clearInternTable() {
-        interns.clear();
-        initInterns();
+        InternTables.current().cstTypes.clear();
     }
 
 }
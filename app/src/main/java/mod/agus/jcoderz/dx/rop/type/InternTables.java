@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dx.rop.type;
+
+import mod.agus.jcoderz.dx.rop.code.RegisterSpec;
+import mod.agus.jcoderz.dx.rop.cst.CstType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Intern tables of {@link Type}, {@link Prototype}, {@link CstType} and
+ * {@link RegisterSpec} instances for a single translation context.
+ *
+ * <p>The predefined constants of those classes, primitive types and the
+ * common {@code java.lang} types, live in immutable tables shared by every
+ * context. Everything else is interned in the tables bound to the current
+ * thread, so independent runs never see each other's instances and a run's
+ * tables are released together with it instead of being cleared globally.
+ * Threads with no bound tables use a process wide default.</p>
+ */
+public final class InternTables {
+    /** {@code non-null;} tables of threads without bound tables */
+    private static final InternTables DEFAULT = new InternTables();
+
+    /** {@code non-null;} tables bound to each thread */
+    private static final ThreadLocal<InternTables> BOUND =
+            new ThreadLocal<InternTables>();
+
+    /*
+     * The initial capacities are based on a medium-size project.
+     */
+
+    /** {@code non-null;} types by descriptor */
+    final ConcurrentMap<String, Type> types =
+            new ConcurrentHashMap<>(10_000, 0.75f);
+
+    /** {@code non-null;} prototypes by descriptor */
+    final ConcurrentMap<String, Prototype> prototypes =
+            new ConcurrentHashMap<>(10_000, 0.75f);
+
+    /** {@code non-null;} type constants by type, for {@link CstType} */
+    public final ConcurrentMap<Type, CstType> cstTypes =
+            new ConcurrentHashMap<>(1_000, 0.75f);
+
+    /** {@code non-null;} register specs, for {@link RegisterSpec} */
+    public final ConcurrentMap<Object, RegisterSpec> registerSpecs =
+            new ConcurrentHashMap<>(10_000, 0.75f);
+
+    /**
+     * Gets the tables bound to the current thread.
+     *
+     * @return {@code non-null;} the bound tables, or the process wide
+     * default if none are bound
+     */
+    public static InternTables current() {
+        InternTables tables = BOUND.get();
+        return tables != null ? tables : DEFAULT;
+    }
+
+    /**
+     * Binds these tables to the current thread.
+     *
+     * @return {@code null-ok;} the previously bound tables, to be passed to
+     * {@link #restore}
+     */
+    public InternTables bind() {
+        InternTables previous = BOUND.get();
+        BOUND.set(this);
+        return previous;
+    }
+
+    /**
+     * Restores the tables that were bound to the current thread before a
+     * call to {@link #bind}.
+     *
+     * @param previous {@code null-ok;} the value returned by {@link #bind}
+     */
+    public static void restore(InternTables previous) {
+        if (previous == null) {
+            BOUND.remove();
+        } else {
+            BOUND.set(previous);
+        }
+    }
+
+    /**
+     * Empties these tables. The shared constants are not affected.
+     */
+    public void clear() {
+        types.clear();
+        prototypes.clear();
+        cstTypes.clear();
+        registerSpecs.clear();
+    }
+}
@@ -16,8 +16,6 @@
 
 package mod.agus.jcoderz.dx.rop.type;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * Representation of a method descriptor. Instances of this class are
@@ -25,14 +23,6 @@ import java.util.concurrent.ConcurrentMap;
  * using {@code ==}.
  */
 public final class Prototype implements Comparable<Prototype> {
-    /**
-     * Intern table for instances.
-     *
-     * <p>The initial capacity is based on a medium-size project.
-     */
-    private static final ConcurrentMap<String, Prototype> internTable =
-            new ConcurrentHashMap<>(10_000, 0.75f);
-
     /** {@code non-null;} method descriptor */
     private final String descriptor;
 
@@ -60,7 +50,7 @@ public final class Prototype implements Comparable<Prototype> {
             throw new NullPointerException("descriptor == null");
         }
 
-        Prototype result = internTable.get(descriptor);
+        Prototype result = InternTables.current().prototypes.get(descriptor);
         if (result != null) {
             return result;
         }
@@ -82,7 +72,7 @@ public final class Prototype implements Comparable<Prototype> {
      * invalid syntax
      */
     public static Prototype fromDescriptor(String descriptor) {
-        Prototype result = internTable.get(descriptor);
+        Prototype result = InternTables.current().prototypes.get(descriptor);
         if (result != null) {
             return result;
         }
@@ -131,8 +121,11 @@ public final class Prototype implements Comparable<Prototype> {
         return new Prototype(descriptor, returnType, parameterTypes);
     }
 
+    /**
+     * Empties the intern table bound to the current thread.
+     */
     public static void clearInternTable() {
-        internTable.clear();
+        InternTables.current().prototypes.clear();
     }
 
     /**
@@ -415,7 +408,8 @@ public final class Prototype implements Comparable<Prototype> {
      * @return {@code non-null;} the actual interned object
      */
     private static Prototype putIntern(Prototype desc) {
-        Prototype result = internTable.putIfAbsent(desc.getDescriptor(), desc);
+        Prototype result = InternTables.current().prototypes.putIfAbsent(
+                desc.getDescriptor(), desc);
         return result != null ? result : desc;
     }
 }
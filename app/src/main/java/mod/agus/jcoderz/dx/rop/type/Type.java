@@ -17,8 +17,7 @@
 package mod.agus.jcoderz.dx.rop.type;
 
 import mod.agus.jcoderz.dx.util.Hex;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.HashMap;
 
 /**
  * Representation of a value type, such as may appear in a field, in a
@@ -28,12 +27,11 @@ import java.util.concurrent.ConcurrentMap;
  */
 public final class Type implements TypeBearer, Comparable<Type> {
     /**
-     * Intern table for instances.
-     *
-     * <p>The initial capacity is based on a medium-size project.
+     * Intern table for the constant instances below, shared by every
+     * {@link InternTables} and never modified after class initialization.
      */
-    private static final ConcurrentMap<String, Type> internTable =
-            new ConcurrentHashMap<>(10_000, 0.75f);
+    private static final HashMap<String, Type> coreTable =
+            new HashMap<String, Type>(64);
 
 
     /** basic type constant for {@code void} */
@@ -235,53 +233,54 @@ public final class Type implements TypeBearer, Comparable<Type> {
     }
 
     /**
-     * Put the constant fields, including primitive types in to the intern table.
+     * Put the constant fields, including primitive types in to the shared
+     * intern table.
      *
      * <p>Must be called after the types are initialized above.
      */
     private static void initInterns() {
-        putIntern(BOOLEAN);
-        putIntern(BYTE);
-        putIntern(CHAR);
-        putIntern(DOUBLE);
-        putIntern(FLOAT);
-        putIntern(INT);
-        putIntern(LONG);
-        putIntern(SHORT);
+        putCore(BOOLEAN);
+        putCore(BYTE);
+        putCore(CHAR);
+        putCore(DOUBLE);
+        putCore(FLOAT);
+        putCore(INT);
+        putCore(LONG);
+        putCore(SHORT);
         /*
          * Note: VOID isn't put in the intern table, since it's special and
          * shouldn't be found by a normal call to intern().
          */
 
-        putIntern(ANNOTATION);
-        putIntern(CLASS);
-        putIntern(CLONEABLE);
-        putIntern(METHOD_HANDLE);
-        putIntern(VAR_HANDLE);
-        putIntern(OBJECT);
-        putIntern(SERIALIZABLE);
-        putIntern(STRING);
-        putIntern(THROWABLE);
-        putIntern(BOOLEAN_CLASS);
-        putIntern(BYTE_CLASS);
-        putIntern(CHARACTER_CLASS);
-        putIntern(DOUBLE_CLASS);
-        putIntern(FLOAT_CLASS);
-        putIntern(INTEGER_CLASS);
-        putIntern(LONG_CLASS);
-        putIntern(SHORT_CLASS);
-        putIntern(VOID_CLASS);
+        putCore(ANNOTATION);
+        putCore(CLASS);
+        putCore(CLONEABLE);
+        putCore(METHOD_HANDLE);
+        putCore(VAR_HANDLE);
+        putCore(OBJECT);
+        putCore(SERIALIZABLE);
+        putCore(STRING);
+        putCore(THROWABLE);
+        putCore(BOOLEAN_CLASS);
+        putCore(BYTE_CLASS);
+        putCore(CHARACTER_CLASS);
+        putCore(DOUBLE_CLASS);
+        putCore(FLOAT_CLASS);
+        putCore(INTEGER_CLASS);
+        putCore(LONG_CLASS);
+        putCore(SHORT_CLASS);
+        putCore(VOID_CLASS);
 
         // Array types
-        putIntern(BOOLEAN_ARRAY);
-        putIntern(BYTE_ARRAY);
-        putIntern(CHAR_ARRAY);
-        putIntern(DOUBLE_ARRAY);
-        putIntern(FLOAT_ARRAY);
-        putIntern(INT_ARRAY);
-        putIntern(LONG_ARRAY);
-        putIntern(OBJECT_ARRAY);
-        putIntern(SHORT_ARRAY);
+        putCore(BOOLEAN_ARRAY);
+        putCore(BYTE_ARRAY);
+        putCore(CHAR_ARRAY);
+        putCore(DOUBLE_ARRAY);
+        putCore(FLOAT_ARRAY);
+        putCore(INT_ARRAY);
+        putCore(LONG_ARRAY);
+        putCore(OBJECT_ARRAY);
+        putCore(SHORT_ARRAY);
     }
 
 
@@ -340,7 +339,13 @@ public final class Type implements TypeBearer, Comparable<Type> {
      * invalid syntax
      */
     public static Type intern(String descriptor) {
-        Type result = internTable.get(descriptor);
+        Type result = InternTables.current().types.get(descriptor);
+
+        if (result != null) {
+            return result;
+        }
+
+        result = coreTable.get(descriptor);
 
         if (result != null) {
             return result;
@@ -902,12 +907,28 @@ public final class Type implements TypeBearer, Comparable<Type> {
      * @return {@code non-null;} the actual interned object
      */
     private static Type putIntern(Type type) {
-        Type result = internTable.putIfAbsent(type.getDescriptor(), type);
+        String descriptor = type.getDescriptor();
+        Type result = coreTable.get(descriptor);
+        if (result == null) {
+            result = InternTables.current().types.putIfAbsent(descriptor, type);
+        }
         return result != null ? result : type;
     }
 
+    /**
+     * Puts a constant instance in the shared intern table.
+     *
+     * @param type {@code non-null;} instance to make interned
+     */
+    private static void putCore(Type type) {
+        coreTable.put(type.getDescriptor(), type);
+    }
+
+    /**
+     * Empties the intern table bound to the current thread. The constant
+     * instances are never removed.
+     */
     public static void clearInternTable() {
-        internTable.clear();
-        initInterns();
+        InternTables.current().types.clear();
     }
 }
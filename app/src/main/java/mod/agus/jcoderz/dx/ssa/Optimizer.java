@@ -28,14 +28,44 @@ import mod.agus.jcoderz.dx.ssa.back.SsaToRop;
  * and returns it to rop form.
  */
 public class Optimizer {
-    private static boolean preserveLocals = true;
+    /*
+     * Kept per thread, runs with different settings may optimize
+     * concurrently in separate contexts.
+     */
+
+    private static final ThreadLocal<Boolean> preserveLocals =
+            new ThreadLocal<Boolean>() {
+                @Override
+                protected Boolean initialValue() {
+                    return true;
+                }
+            };
 
-    private static mod.agus.jcoderz.dx.rop.code.TranslationAdvice advice;
+    private static final ThreadLocal<mod.agus.jcoderz.dx.rop.code.TranslationAdvice> advice =
+            new ThreadLocal<mod.agus.jcoderz.dx.rop.code.TranslationAdvice>();
 
-    /** optional optimizer steps */
+    /**
+     * optional optimizer steps. MINIMIZE_REGISTERS runs the optimizer again
+     * when the result uses more registers than advised. COMBINING_ALLOCATOR
+     * allocates registers with an interference graph, combining locals,
+     * phis and invoke-range sources; without it they are allocated by
+     * linear scan.
+     */
     public enum OptionalStep {
         MOVE_PARAM_COMBINER, SCCP, LITERAL_UPGRADE, CONST_COLLECTOR,
-            ESCAPE_ANALYSIS
+            ESCAPE_ANALYSIS, MINIMIZE_REGISTERS, COMBINING_ALLOCATOR
+    }
+
+    /**
+     * Returns the steps of the fast tier, for methods too large to be
+     * worth all of them. Conversion to SSA form still happens, the extra
+     * analyses and passes are skipped and registers are allocated by
+     * linear scan.
+     *
+     * @return {@code non-null;} a new set of steps
+     */
+    public static EnumSet<OptionalStep> getFastSteps() {
+        return EnumSet.of(OptionalStep.MOVE_PARAM_COMBINER);
     }
 
     /**
@@ -43,14 +73,14 @@ public class Optimizer {
      * at code size/register size cost
      */
     public static boolean getPreserveLocals() {
-        return preserveLocals;
+        return preserveLocals.get();
     }
 
     /**
      * @return {@code non-null;} translation advice
      */
     public static mod.agus.jcoderz.dx.rop.code.TranslationAdvice getAdvice() {
-        return advice;
+        return advice.get();
     }
 
     /**
@@ -91,25 +121,64 @@ public class Optimizer {
     public static mod.agus.jcoderz.dx.rop.code.RopMethod optimize(mod.agus.jcoderz.dx.rop.code.RopMethod rmeth, int paramWidth,
                                                                   boolean isStatic, boolean inPreserveLocals,
                                                                   mod.agus.jcoderz.dx.rop.code.TranslationAdvice inAdvice, EnumSet<OptionalStep> steps) {
+        return optimize(rmeth, paramWidth, isStatic, inPreserveLocals, inAdvice, steps, 0);
+    }
+
+    /**
+     * Runs optimization algorthims over this method within a time budget,
+     * and returns a new instance of RopMethod with the changes. Optional
+     * steps that would start after the budget is spent are skipped, so the
+     * result depends on timing unless the budget is {@code 0}.
+     *
+     * @param rmeth method to process
+     * @param paramWidth the total width, in register-units, of this method's
+     * parameters
+     * @param isStatic true if this method has no 'this' pointer argument.
+     * @param inPreserveLocals true if local variable info should be preserved,
+     * at the cost of some registers and insns
+     * @param inAdvice {@code non-null;} translation advice
+     * @param steps set of optional optimization steps to run
+     * @param timeBudget {@code >= 0;} budget in nanoseconds, or {@code 0}
+     * for no limit
+     * @return optimized method
+     */
+    public static mod.agus.jcoderz.dx.rop.code.RopMethod optimize(mod.agus.jcoderz.dx.rop.code.RopMethod rmeth, int paramWidth,
+                                                                  boolean isStatic, boolean inPreserveLocals,
+                                                                  mod.agus.jcoderz.dx.rop.code.TranslationAdvice inAdvice, EnumSet<OptionalStep> steps,
+                                                                  long timeBudget) {
         mod.agus.jcoderz.dx.ssa.SsaMethod ssaMeth = null;
+        long deadline = (timeBudget == 0) ? Long.MAX_VALUE : System.nanoTime() + timeBudget;
 
-        preserveLocals = inPreserveLocals;
-        advice = inAdvice;
+        preserveLocals.set(inPreserveLocals);
+        advice.set(inAdvice);
 
         ssaMeth = SsaConverter.convertToSsaMethod(rmeth, paramWidth, isStatic);
-        runSsaFormSteps(ssaMeth, steps);
+        runSsaFormSteps(ssaMeth, steps, deadline);
 
-        mod.agus.jcoderz.dx.rop.code.RopMethod resultMeth = mod.agus.jcoderz.dx.ssa.back.SsaToRop.convertToRopMethod(ssaMeth, false);
+        boolean linearScan = !steps.contains(OptionalStep.COMBINING_ALLOCATOR);
+        mod.agus.jcoderz.dx.rop.code.RopMethod resultMeth = mod.agus.jcoderz.dx.ssa.back.SsaToRop.convertToRopMethod(ssaMeth, false,
+                linearScan);
 
         if (resultMeth.getBlocks().getRegCount()
-                > advice.getMaxOptimalRegisterCount()) {
+                > inAdvice.getMaxOptimalRegisterCount()
+                && steps.contains(OptionalStep.MINIMIZE_REGISTERS)
+                && !linearScan
+                && !isPast(deadline)) {
             // Try to see if we can squeeze it under the register count bar
             resultMeth = optimizeMinimizeRegisters(rmeth, paramWidth, isStatic,
-                    steps);
+                    steps, deadline);
         }
         return resultMeth;
     }
 
+    /**
+     * @return true if {@code deadline}, in {@link System#nanoTime} time,
+     * has passed
+     */
+    private static boolean isPast(long deadline) {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0;
+    }
+
     /**
      * Runs the optimizer with a strategy to minimize the number of rop-form
      * registers used by the end result. Dex bytecode does not have instruction
@@ -123,11 +192,12 @@ public class Optimizer {
      * parameters
      * @param isStatic true if this method has no 'this' pointer argument.
      * @param steps set of optional optimization steps to run
+     * @param deadline time after which optional steps are skipped
      * @return optimized method
      */
     private static mod.agus.jcoderz.dx.rop.code.RopMethod optimizeMinimizeRegisters(mod.agus.jcoderz.dx.rop.code.RopMethod rmeth,
                                                                                     int paramWidth, boolean isStatic,
-                                                                                    EnumSet<OptionalStep> steps) {
+                                                                                    EnumSet<OptionalStep> steps, long deadline) {
         mod.agus.jcoderz.dx.ssa.SsaMethod ssaMeth;
         mod.agus.jcoderz.dx.rop.code.RopMethod resultMeth;
 
@@ -142,7 +212,7 @@ public class Optimizer {
          */
         newSteps.remove(OptionalStep.CONST_COLLECTOR);
 
-        runSsaFormSteps(ssaMeth, newSteps);
+        runSsaFormSteps(ssaMeth, newSteps, deadline);
 
         resultMeth = SsaToRop.convertToRopMethod(ssaMeth, true);
         return resultMeth;
@@ -150,19 +220,24 @@ public class Optimizer {
 
     private static void runSsaFormSteps(mod.agus.jcoderz.dx.ssa.SsaMethod ssaMeth,
                                         EnumSet<OptionalStep> steps) {
+        runSsaFormSteps(ssaMeth, steps, Long.MAX_VALUE);
+    }
+
+    private static void runSsaFormSteps(mod.agus.jcoderz.dx.ssa.SsaMethod ssaMeth,
+                                        EnumSet<OptionalStep> steps, long deadline) {
         boolean needsDeadCodeRemover = true;
 
         if (steps.contains(OptionalStep.MOVE_PARAM_COMBINER)) {
             MoveParamCombiner.process(ssaMeth);
         }
 
-        if (steps.contains(OptionalStep.SCCP)) {
+        if (steps.contains(OptionalStep.SCCP) && !isPast(deadline)) {
             SCCP.process(ssaMeth);
             DeadCodeRemover.process(ssaMeth);
             needsDeadCodeRemover = false;
         }
 
-        if (steps.contains(OptionalStep.LITERAL_UPGRADE)) {
+        if (steps.contains(OptionalStep.LITERAL_UPGRADE) && !isPast(deadline)) {
             LiteralOpUpgrader.process(ssaMeth);
             DeadCodeRemover.process(ssaMeth);
             needsDeadCodeRemover = false;
@@ -178,7 +253,7 @@ public class Optimizer {
             needsDeadCodeRemover = false;
         }
 
-        if (steps.contains(OptionalStep.CONST_COLLECTOR)) {
+        if (steps.contains(OptionalStep.CONST_COLLECTOR) && !isPast(deadline)) {
             ConstCollector.process(ssaMeth);
             DeadCodeRemover.process(ssaMeth);
             needsDeadCodeRemover = false;
@@ -196,8 +271,8 @@ public class Optimizer {
                                                                    boolean isStatic, boolean inPreserveLocals,
                                                                    mod.agus.jcoderz.dx.rop.code.TranslationAdvice inAdvice) {
 
-        preserveLocals = inPreserveLocals;
-        advice = inAdvice;
+        preserveLocals.set(inPreserveLocals);
+        advice.set(inAdvice);
 
         return SsaConverter.testEdgeSplit(rmeth, paramWidth, isStatic);
     }
@@ -206,8 +281,8 @@ public class Optimizer {
                                                                       boolean isStatic, boolean inPreserveLocals,
                                                                       mod.agus.jcoderz.dx.rop.code.TranslationAdvice inAdvice) {
 
-        preserveLocals = inPreserveLocals;
-        advice = inAdvice;
+        preserveLocals.set(inPreserveLocals);
+        advice.set(inAdvice);
 
         return SsaConverter.testPhiPlacement(rmeth, paramWidth, isStatic);
     }
@@ -216,8 +291,8 @@ public class Optimizer {
                                                                   boolean isStatic, boolean inPreserveLocals,
                                                                   mod.agus.jcoderz.dx.rop.code.TranslationAdvice inAdvice) {
 
-        preserveLocals = inPreserveLocals;
-        advice = inAdvice;
+        preserveLocals.set(inPreserveLocals);
+        advice.set(inAdvice);
 
         return SsaConverter.convertToSsaMethod(rmeth, paramWidth, isStatic);
     }
@@ -228,8 +303,8 @@ public class Optimizer {
 
         mod.agus.jcoderz.dx.ssa.SsaMethod ssaMeth;
 
-        preserveLocals = inPreserveLocals;
-        advice = inAdvice;
+        preserveLocals.set(inPreserveLocals);
+        advice.set(inAdvice);
 
         ssaMeth = SsaConverter.convertToSsaMethod(rmeth, paramWidth, isStatic);
         DeadCodeRemover.process(ssaMeth);
@@ -243,8 +318,8 @@ public class Optimizer {
 
         SsaMethod ssaMeth;
 
-        preserveLocals = inPreserveLocals;
-        advice = inAdvice;
+        preserveLocals.set(inPreserveLocals);
+        advice.set(inAdvice);
 
         ssaMeth = SsaConverter.convertToSsaMethod(rmeth, paramWidth, isStatic);
 
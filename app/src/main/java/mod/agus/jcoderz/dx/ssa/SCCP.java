@@ -32,6 +32,7 @@ import mod.agus.jcoderz.dx.rop.cst.CstInteger;
 import mod.agus.jcoderz.dx.rop.cst.TypedConstant;
 import mod.agus.jcoderz.dx.rop.type.Type;
 import mod.agus.jcoderz.dx.rop.type.TypeBearer;
+import mod.agus.jcoderz.dx.util.IntList;
 
 /**
  * A small variant of Wegman and Zadeck's Sparse Conditional Constant
@@ -50,38 +51,43 @@ public class SCCP {
     private final int[] latticeValues;
     /** For those registers that are constant, this is the constant value */
     private final mod.agus.jcoderz.dx.rop.cst.Constant[] latticeConstants;
-    /** Worklist of basic blocks to be processed */
-    private final ArrayList<mod.agus.jcoderz.dx.ssa.SsaBasicBlock> cfgWorklist;
-    /** Worklist of executed basic blocks with phis to be processed */
-    private final ArrayList<mod.agus.jcoderz.dx.ssa.SsaBasicBlock> cfgPhiWorklist;
+    /** Worklist of indices of basic blocks to be processed */
+    private final IntList cfgWorklist;
+    /** Worklist of indices of executed basic blocks with phis to be processed */
+    private final IntList cfgPhiWorklist;
     /** Bitset containing bits for each block that has been found executable */
     private final BitSet executableBlocks;
-    /** Worklist for SSA edges.  This is a list of registers to process */
-    private final ArrayList<mod.agus.jcoderz.dx.ssa.SsaInsn> ssaWorklist;
+    /**
+     * Worklist for SSA edges. This is a stack of (register, count) pairs,
+     * standing for the first count insns of the register's use list, which
+     * are taken from the last one down. A register's uses are thus pushed
+     * at once, without copying them.
+     */
+    private final IntList ssaWorklist;
     /**
      * Worklist for SSA edges that represent varying values.  It makes the
      * algorithm much faster if you move all values to VARYING as fast as
-     * possible.
+     * possible. Same layout as {@link #ssaWorklist}.
      */
-    private final ArrayList<mod.agus.jcoderz.dx.ssa.SsaInsn> varyingWorklist;
-    /** Worklist of potential branches to convert to gotos */
-    private final ArrayList<mod.agus.jcoderz.dx.ssa.SsaInsn> branchWorklist;
+    private final IntList varyingWorklist;
+    /**
+     * Worklist of indices of blocks ending with potential branches to
+     * convert to gotos
+     */
+    private final IntList branchWorklist;
 
     private SCCP(mod.agus.jcoderz.dx.ssa.SsaMethod ssaMeth) {
         this.ssaMeth = ssaMeth;
         this.regCount = ssaMeth.getRegCount();
         this.latticeValues = new int[this.regCount];
         this.latticeConstants = new mod.agus.jcoderz.dx.rop.cst.Constant[this.regCount];
-        this.cfgWorklist = new ArrayList<mod.agus.jcoderz.dx.ssa.SsaBasicBlock>();
-        this.cfgPhiWorklist = new ArrayList<mod.agus.jcoderz.dx.ssa.SsaBasicBlock>();
+        this.cfgWorklist = new IntList();
+        this.cfgPhiWorklist = new IntList();
         this.executableBlocks = new BitSet(ssaMeth.getBlocks().size());
-        this.ssaWorklist = new ArrayList<mod.agus.jcoderz.dx.ssa.SsaInsn>();
-        this.varyingWorklist = new ArrayList<mod.agus.jcoderz.dx.ssa.SsaInsn>();
-        this.branchWorklist = new ArrayList<mod.agus.jcoderz.dx.ssa.SsaInsn>();
-        for (int i = 0; i < this.regCount; i++) {
-            latticeValues[i] = TOP;
-            latticeConstants[i] = null;
-        }
+        this.ssaWorklist = new IntList();
+        this.varyingWorklist = new IntList();
+        this.branchWorklist = new IntList();
+        // TOP is 0, new arrays already hold it
     }
 
     /**
@@ -97,12 +103,12 @@ public class SCCP {
      * to the CFG phi worklist if it's already executed.
      * @param ssaBlock Block to add
      */
-    private void addBlockToWorklist(mod.agus.jcoderz.dx.ssa.SsaBasicBlock ssaBlock) {
-        if (!executableBlocks.get(ssaBlock.getIndex())) {
-            cfgWorklist.add(ssaBlock);
-            executableBlocks.set(ssaBlock.getIndex());
+    private void addBlockToWorklist(int blockIndex) {
+        if (!executableBlocks.get(blockIndex)) {
+            cfgWorklist.add(blockIndex);
+            executableBlocks.set(blockIndex);
         } else {
-            cfgPhiWorklist.add(ssaBlock);
+            cfgPhiWorklist.add(blockIndex);
         }
     }
 
@@ -112,14 +118,47 @@ public class SCCP {
      * @param latticeValue new lattice value for @param reg.
      */
     private void addUsersToWorklist(int reg, int latticeValue) {
-        if (latticeValue == VARYING) {
-            for (mod.agus.jcoderz.dx.ssa.SsaInsn insn : ssaMeth.getUseListForRegister(reg)) {
-                varyingWorklist.add(insn);
-            }
+        int useCount = ssaMeth.getUseListForRegister(reg).size();
+        if (useCount == 0) {
+            return;
+        }
+
+        IntList worklist = (latticeValue == VARYING) ? varyingWorklist : ssaWorklist;
+        worklist.add(reg);
+        worklist.add(useCount);
+    }
+
+    /**
+     * Takes the last insn off an SSA worklist.
+     * @param worklist non-empty worklist of (register, count) pairs
+     * @return insn to simulate
+     */
+    private mod.agus.jcoderz.dx.ssa.SsaInsn popUse(IntList worklist) {
+        int size = worklist.size();
+        int reg = worklist.get(size - 2);
+        int remaining = worklist.get(size - 1) - 1;
+
+        if (remaining == 0) {
+            worklist.pop(2);
         } else {
-            for (mod.agus.jcoderz.dx.ssa.SsaInsn insn : ssaMeth.getUseListForRegister(reg)) {
-                ssaWorklist.add(insn);
-            }
+            worklist.set(size - 1, remaining);
+        }
+        return ssaMeth.getUseListForRegister(reg).get(remaining);
+    }
+
+    /**
+     * Simulates an insn taken off an SSA worklist, if its block is executable.
+     * @param insn insn to simulate
+     */
+    private void simulateUse(mod.agus.jcoderz.dx.ssa.SsaInsn insn) {
+        if (!executableBlocks.get(insn.getBlock().getIndex())) {
+            return;
+        }
+
+        if (insn instanceof PhiInsn) {
+            simulatePhi((PhiInsn) insn);
+        } else {
+            simulateStmt(insn);
         }
     }
 
@@ -346,12 +385,13 @@ public class SCCP {
             } else {
                 successorBlock = block.getSuccessorList().get(0);
             }
-            addBlockToWorklist(ssaMeth.getBlocks().get(successorBlock));
-            branchWorklist.add(insn);
+            addBlockToWorklist(successorBlock);
+            branchWorklist.add(block.getIndex());
         } else {
-            for (int i = 0; i < block.getSuccessorList().size(); i++) {
-                int successorBlock = block.getSuccessorList().get(i);
-                addBlockToWorklist(ssaMeth.getBlocks().get(successorBlock));
+            IntList successors = block.getSuccessorList();
+            int successorsSize = successors.size();
+            for (int i = 0; i < successorsSize; i++) {
+                addBlockToWorklist(successors.get(i));
             }
         }
     }
@@ -540,53 +580,27 @@ public class SCCP {
     }
 
     private void run() {
-        mod.agus.jcoderz.dx.ssa.SsaBasicBlock firstBlock = ssaMeth.getEntryBlock();
-        addBlockToWorklist(firstBlock);
+        ArrayList<mod.agus.jcoderz.dx.ssa.SsaBasicBlock> blocks = ssaMeth.getBlocks();
+        addBlockToWorklist(ssaMeth.getEntryBlockIndex());
 
         /* Empty all the worklists by propagating our values */
-        while (!cfgWorklist.isEmpty()
-                || !cfgPhiWorklist.isEmpty()
-                || !ssaWorklist.isEmpty()
-                || !varyingWorklist.isEmpty()) {
-            while (!cfgWorklist.isEmpty()) {
-                int listSize = cfgWorklist.size() - 1;
-                mod.agus.jcoderz.dx.ssa.SsaBasicBlock block = cfgWorklist.remove(listSize);
-                simulateBlock(block);
+        while (cfgWorklist.size() != 0
+                || cfgPhiWorklist.size() != 0
+                || ssaWorklist.size() != 0
+                || varyingWorklist.size() != 0) {
+            while (cfgWorklist.size() != 0) {
+                simulateBlock(blocks.get(cfgWorklist.pop()));
             }
 
-            while (!cfgPhiWorklist.isEmpty()) {
-                int listSize = cfgPhiWorklist.size() - 1;
-                mod.agus.jcoderz.dx.ssa.SsaBasicBlock block = cfgPhiWorklist.remove(listSize);
-                simulatePhiBlock(block);
+            while (cfgPhiWorklist.size() != 0) {
+                simulatePhiBlock(blocks.get(cfgPhiWorklist.pop()));
             }
 
-            while (!varyingWorklist.isEmpty()) {
-                int listSize = varyingWorklist.size() - 1;
-                mod.agus.jcoderz.dx.ssa.SsaInsn insn = varyingWorklist.remove(listSize);
-
-                if (!executableBlocks.get(insn.getBlock().getIndex())) {
-                    continue;
-                }
-
-                if (insn instanceof PhiInsn) {
-                    simulatePhi((PhiInsn)insn);
-                } else {
-                    simulateStmt(insn);
-                }
+            while (varyingWorklist.size() != 0) {
+                simulateUse(popUse(varyingWorklist));
             }
-            while (!ssaWorklist.isEmpty()) {
-                int listSize = ssaWorklist.size() - 1;
-                mod.agus.jcoderz.dx.ssa.SsaInsn insn = ssaWorklist.remove(listSize);
-
-                if (!executableBlocks.get(insn.getBlock().getIndex())) {
-                    continue;
-                }
-
-                if (insn instanceof PhiInsn) {
-                    simulatePhi((PhiInsn)insn);
-                } else {
-                    simulateStmt(insn);
-                }
+            while (ssaWorklist.size() != 0) {
+                simulateUse(popUse(ssaWorklist));
             }
         }
 
@@ -653,10 +667,12 @@ public class SCCP {
      * Replaces branches that have constant conditions with gotos
      */
     private void replaceBranches() {
-        for (SsaInsn insn : branchWorklist) {
+        ArrayList<SsaBasicBlock> blocks = ssaMeth.getBlocks();
+        int branchCount = branchWorklist.size();
+        for (int n = 0; n < branchCount; n++) {
             // Find if a successor block is never executed
             int oldSuccessor = -1;
-            SsaBasicBlock block = insn.getBlock();
+            SsaBasicBlock block = blocks.get(branchWorklist.get(n));
             int successorSize = block.getSuccessorList().size();
             for (int i = 0; i < successorSize; i++) {
                 int successorBlock = block.getSuccessorList().get(i);
@@ -672,7 +688,8 @@ public class SCCP {
             if (successorSize != 2 || oldSuccessor == -1) continue;
 
             // Replace branch with goto
-            Insn originalRopInsn = insn.getOriginalRopInsn();
+            Insn originalRopInsn = block.getInsns().get(
+                    block.getInsns().size() - 1).getOriginalRopInsn();
             block.replaceLastInsn(new PlainInsn(Rops.GOTO,
                 originalRopInsn.getPosition(), null, RegisterSpecList.EMPTY));
             block.removeSuccessor(oldSuccessor);
@@ -16,46 +16,19 @@
 
 package mod.agus.jcoderz.dx.ssa;
 
-import mod.agus.jcoderz.dx.util.BitIntSet;
+import mod.agus.jcoderz.dx.util.AdaptiveIntSet;
 import mod.agus.jcoderz.dx.util.IntSet;
-import mod.agus.jcoderz.dx.util.ListIntSet;
-
 
 /**
  * Makes int sets for various parts of the optimizer.
+ *
+ * All of these sets are kept per basic block or per register, so there are
+ * as many of them as values they may hold, and most are sparse in large
+ * methods. They are {@link AdaptiveIntSet}s, which only switch to a bit set
+ * once that is smaller than the list of their values.
  */
 public final class SetFactory {
 
-    /**
-     * BitIntSet/ListIntSet threshold for dominance frontier sets. These
-     * sets are kept per basic block until phi placement and tend to be,
-     * like the CFG itself, very sparse at large sizes.
-     *
-     * A value of 3072 here is somewhere around 1.125mb of total bitset size.
-     */
-    private static final int DOMFRONT_SET_THRESHOLD_SIZE = 3072;
-
-    /**
-     * BitIntSet/ListIntSet threshold for interference graph sets. These
-     * sets are kept per register until register allocation is done.
-     *
-     * A value of 3072 here is somewhere around 1.125mb of total bitset size.
-     */
-    private static final int INTERFERENCE_SET_THRESHOLD_SIZE = 3072;
-
-    /**
-     * BitIntSet/ListIntSet threshold for the live in/out sets kept by
-     * {@link SsaBasicBlock}. These are sets of SSA registers kept per basic
-     * block during register allocation.
-     *
-     * The total size of a bitset for this would be the count of blocks
-     * times the size of registers. The threshold value here is merely
-     * the register count, which is typically on the order of the block
-     * count as well.
-     */
-    private static final int LIVENESS_SET_THRESHOLD_SIZE = 3072;
-
-
     /**
      * Make IntSet for the dominance-frontier sets.
      *
@@ -63,9 +36,7 @@ public final class SetFactory {
      * @return {@code non-null;} appropriate set
      */
     /*package*/ static IntSet makeDomFrontSet(int szBlocks) {
-        return szBlocks <= DOMFRONT_SET_THRESHOLD_SIZE
-                ? new BitIntSet(szBlocks)
-                : new ListIntSet();
+        return new AdaptiveIntSet(szBlocks);
     }
 
     /**
@@ -76,9 +47,7 @@ public final class SetFactory {
      * @return {@code non-null;} appropriate set
      */
     public static IntSet makeInterferenceSet(int countRegs) {
-        return countRegs <= INTERFERENCE_SET_THRESHOLD_SIZE
-                ? new BitIntSet(countRegs)
-                : new ListIntSet();
+        return new AdaptiveIntSet(countRegs);
     }
 
     /**
@@ -88,8 +57,6 @@ public final class SetFactory {
      * @return {@code non-null;} appropriate set
      */
     /*package*/ static IntSet makeLivenessSet(int countRegs) {
-        return countRegs <= LIVENESS_SET_THRESHOLD_SIZE
-                ? new BitIntSet(countRegs)
-                : new ListIntSet();
+        return new AdaptiveIntSet(countRegs);
     }
 }
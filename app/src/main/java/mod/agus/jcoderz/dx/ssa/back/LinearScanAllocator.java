@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dx.ssa.back;
+
+import mod.agus.jcoderz.dx.ssa.BasicRegisterMapper;
+import mod.agus.jcoderz.dx.ssa.PhiInsn;
+import mod.agus.jcoderz.dx.ssa.RegisterMapper;
+import mod.agus.jcoderz.dx.ssa.SsaBasicBlock;
+import mod.agus.jcoderz.dx.ssa.SsaInsn;
+import mod.agus.jcoderz.dx.ssa.SsaMethod;
+import mod.agus.jcoderz.dx.util.IntList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import mod.agus.jcoderz.dx.rop.code.CstInsn;
+import mod.agus.jcoderz.dx.rop.code.RegisterSpec;
+import mod.agus.jcoderz.dx.rop.code.RegisterSpecList;
+import mod.agus.jcoderz.dx.rop.cst.CstInteger;
+
+/**
+ * Allocates registers by linear scan over live intervals, in time close to
+ * linear in the size of the method. Each SSA register gets a single
+ * interval spanning every point where it is live, with the blocks in
+ * reverse postorder, so no interference graph is built. Unlike
+ * {@link FirstFitLocalCombiningAllocator}, no attempt is made to combine
+ * local variables, phis or invoke-range sources, so the code is usually
+ * a little larger.
+ */
+public class LinearScanAllocator extends RegisterAllocator {
+    /** {@code >= 0;} width of the parameters, reserved at the bottom */
+    private final int paramWidth;
+
+    /**
+     * {@code non-null;} indexed by SSA reg; first position the reg is live
+     * at, or {@link Integer#MAX_VALUE} if it never is
+     */
+    private final int[] intervalStart;
+
+    /** {@code non-null;} indexed by SSA reg; last position the reg is live at */
+    private final int[] intervalEnd;
+
+    /** {@code non-null;} indexed by block; position of its first insn */
+    private final int[] blockStart;
+
+    /** {@code non-null;} indexed by block; position after its last insn */
+    private final int[] blockEnd;
+
+    /**
+     * Constructs an instance.
+     *
+     * @param ssaMeth {@code non-null;} method to process
+     */
+    public LinearScanAllocator(SsaMethod ssaMeth) {
+        super(ssaMeth, null);
+
+        int regCount = ssaMeth.getRegCount();
+        int blockCount = ssaMeth.getBlocks().size();
+
+        paramWidth = ssaMeth.getParamWidth();
+        intervalStart = new int[regCount];
+        intervalEnd = new int[regCount];
+        blockStart = new int[blockCount];
+        blockEnd = new int[blockCount];
+        Arrays.fill(intervalStart, Integer.MAX_VALUE);
+        Arrays.fill(intervalEnd, -1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean wantsParamsMovedHigh() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RegisterMapper allocateRegisters() {
+        buildIntervals();
+
+        int regCount = ssaMeth.getRegCount();
+        BasicRegisterMapper mapper = new BasicRegisterMapper(regCount);
+
+        /*
+         * Params keep the bottom of the register space, in calling
+         * convention order, and are moved to the top after phi removal.
+         * Every other reg with an interval is sorted by start and by end.
+         */
+        long[] byStart = new long[regCount];
+        long[] byEnd = new long[regCount];
+        int count = 0;
+
+        for (int reg = 0; reg < regCount; reg++) {
+            int paramIndex = getParamIndex(reg);
+
+            if (paramIndex >= 0) {
+                mapper.addMapping(reg, paramIndex, getCategoryForSsaReg(reg));
+            } else if (intervalEnd[reg] >= 0) {
+                byStart[count] = ((long) intervalStart[reg] << 32) | reg;
+                byEnd[count] = ((long) intervalEnd[reg] << 32) | reg;
+                count++;
+            }
+        }
+
+        Arrays.sort(byStart, 0, count);
+        Arrays.sort(byEnd, 0, count);
+
+        int[] assigned = new int[regCount];
+        BitSet busy = new BitSet(paramWidth * 2);
+        busy.set(0, paramWidth);
+
+        int expired = 0;
+        for (int i = 0; i < count; i++) {
+            int reg = (int) byStart[i];
+            int start = intervalStart[reg];
+
+            /*
+             * Any interval ending before this one starts also started
+             * before it, so it has already been assigned.
+             */
+            while (intervalEnd[(int) byEnd[expired]] < start) {
+                int old = (int) byEnd[expired++];
+                busy.clear(assigned[old],
+                        assigned[old] + getCategoryForSsaReg(old));
+            }
+
+            int category = getCategoryForSsaReg(reg);
+            int slot = busy.nextClearBit(paramWidth);
+
+            if (category == 2) {
+                while (busy.get(slot + 1)) {
+                    slot = busy.nextClearBit(slot + 2);
+                }
+            }
+
+            busy.set(slot, slot + category);
+            assigned[reg] = slot;
+            mapper.addMapping(reg, slot, category);
+        }
+
+        return mapper;
+    }
+
+    /**
+     * Numbers the insns in reverse postorder of the blocks and computes
+     * the interval of each SSA register. Insn {@code n} uses its sources
+     * at position {@code 2 * n} and defines its result at
+     * {@code 2 * n + 1}, so a source that dies there may share a register
+     * with the result, as the interference graph allows.
+     */
+    private void buildIntervals() {
+        ArrayList<SsaBasicBlock> blocks = ssaMeth.getBlocks();
+        IntList order = getBlockOrder();
+        int orderSize = order.size();
+        int position = 0;
+
+        for (int n = 0; n < orderSize; n++) {
+            int index = order.get(n);
+            SsaBasicBlock block = blocks.get(index);
+            blockStart[index] = position;
+
+            for (SsaInsn insn : block.getInsns()) {
+                if (!(insn instanceof PhiInsn)) {
+                    RegisterSpecList sources = insn.getSources();
+                    int sz = sources.size();
+                    for (int i = 0; i < sz; i++) {
+                        extend(sources.get(i).getReg(), position);
+                    }
+                }
+
+                RegisterSpec result = insn.getResult();
+                if (result != null) {
+                    extend(result.getReg(), position + 1);
+                }
+                position += 2;
+            }
+
+            blockEnd[index] = Math.max(position - 1, blockStart[index]);
+        }
+
+        BitSet liveInBlocks = new BitSet(blocks.size());
+        IntList worklist = new IntList();
+
+        for (SsaBasicBlock block : blocks) {
+            for (SsaInsn insn : block.getPhiInsns()) {
+                addPhiRanges((PhiInsn) insn, liveInBlocks, worklist);
+            }
+        }
+
+        int regCount = ssaMeth.getRegCount();
+        for (int reg = 0; reg < regCount; reg++) {
+            SsaInsn definition = ssaMeth.getDefinitionForRegister(reg);
+            int defBlock = (definition == null)
+                    ? -1 : definition.getBlock().getIndex();
+
+            for (SsaInsn use : ssaMeth.getUseListForRegister(reg)) {
+                int useBlock = use.getBlock().getIndex();
+
+                // A non-phi use in the defining block follows the definition.
+                if (!(use instanceof PhiInsn) && useBlock != defBlock) {
+                    liveIn(reg, useBlock, liveInBlocks, worklist);
+                }
+            }
+
+            propagate(reg, defBlock, liveInBlocks, worklist);
+            liveInBlocks.clear();
+        }
+    }
+
+    /**
+     * Orders the blocks so that the blocks between a definition and its
+     * uses are mostly those the value is live through: reachable blocks in
+     * reverse postorder, then any others.
+     *
+     * @return {@code non-null;} block indices
+     */
+    private IntList getBlockOrder() {
+        ArrayList<SsaBasicBlock> blocks = ssaMeth.getBlocks();
+        int blockCount = blocks.size();
+        IntList postorder = new IntList(blockCount);
+        BitSet visited = new BitSet(blockCount);
+
+        // (block, index of its next successor to visit) pairs
+        IntList stack = new IntList();
+        int entry = ssaMeth.getEntryBlockIndex();
+        visited.set(entry);
+        stack.add(entry);
+        stack.add(0);
+
+        while (stack.size() != 0) {
+            int top = stack.size();
+            int index = stack.get(top - 2);
+            int next = stack.get(top - 1);
+            IntList successors = blocks.get(index).getSuccessorList();
+
+            if (next < successors.size()) {
+                int successor = successors.get(next);
+                stack.set(top - 1, next + 1);
+                if (!visited.get(successor)) {
+                    visited.set(successor);
+                    stack.add(successor);
+                    stack.add(0);
+                }
+            } else {
+                stack.pop(2);
+                postorder.add(index);
+            }
+        }
+
+        IntList order = new IntList(blockCount);
+        for (int n = postorder.size() - 1; n >= 0; n--) {
+            order.add(postorder.get(n));
+        }
+        for (int index = visited.nextClearBit(0); index < blockCount;
+                index = visited.nextClearBit(index + 1)) {
+            order.add(index);
+        }
+        return order;
+    }
+
+    /**
+     * Adds the ranges of a phi. Its sources are live at the end of their
+     * predecessors, where the moves replacing the phi go. Its result is
+     * defined by those moves, so it is live from the end of every
+     * predecessor up to the start of the phi's block; it thus also
+     * interferes with the other phis' sources, even from predecessors
+     * the phi itself has no source for.
+     *
+     * @param phi {@code non-null;} phi to process
+     * @param liveInBlocks {@code non-null;} scratch set, left empty
+     * @param worklist {@code non-null;} scratch list, left empty
+     */
+    private void addPhiRanges(PhiInsn phi, BitSet liveInBlocks,
+            IntList worklist) {
+        RegisterSpecList sources = phi.getSources();
+        int resultReg = phi.getResult().getReg();
+        SsaBasicBlock block = phi.getBlock();
+        int sz = sources.size();
+
+        extend(resultReg, blockStart[block.getIndex()]);
+
+        BitSet preds = block.getPredecessors();
+        for (int pred = preds.nextSetBit(0); pred >= 0;
+                pred = preds.nextSetBit(pred + 1)) {
+            extend(resultReg, blockEnd[pred]);
+        }
+
+        for (int i = 0; i < sz; i++) {
+            int sourceReg = sources.get(i).getReg();
+            int pred = phi.predBlockIndexForSourcesIndex(i);
+            SsaInsn definition = ssaMeth.getDefinitionForRegister(sourceReg);
+            int defBlock = (definition == null)
+                    ? -1 : definition.getBlock().getIndex();
+
+            extend(sourceReg, blockEnd[pred]);
+            if (pred != defBlock) {
+                liveIn(sourceReg, pred, liveInBlocks, worklist);
+            }
+            propagate(sourceReg, defBlock, liveInBlocks, worklist);
+            liveInBlocks.clear();
+        }
+    }
+
+    /**
+     * Notes that {@code reg} is live in at a block, unless already known.
+     */
+    private void liveIn(int reg, int block, BitSet liveInBlocks,
+            IntList worklist) {
+        if (!liveInBlocks.get(block)) {
+            liveInBlocks.set(block);
+            extend(reg, blockStart[block]);
+            worklist.add(block);
+        }
+    }
+
+    /**
+     * Walks back from the blocks {@code reg} is live in at, to its
+     * definition, extending its interval by every block it is live through.
+     */
+    private void propagate(int reg, int defBlock, BitSet liveInBlocks,
+            IntList worklist) {
+        ArrayList<SsaBasicBlock> blocks = ssaMeth.getBlocks();
+
+        while (worklist.size() != 0) {
+            BitSet preds = blocks.get(worklist.pop()).getPredecessors();
+
+            for (int pred = preds.nextSetBit(0); pred >= 0;
+                    pred = preds.nextSetBit(pred + 1)) {
+                extend(reg, blockEnd[pred]);
+                if (pred != defBlock) {
+                    liveIn(reg, pred, liveInBlocks, worklist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extends the interval of {@code reg} to cover {@code position}.
+     */
+    private void extend(int reg, int position) {
+        if (position < intervalStart[reg]) {
+            intervalStart[reg] = position;
+        }
+        if (position > intervalEnd[reg]) {
+            intervalEnd[reg] = position;
+        }
+    }
+
+    /**
+     * Gets the parameter index of a register defined by a move-param.
+     *
+     * @param reg {@code >= 0;} SSA register
+     * @return parameter index, or {@code -1} if not a parameter
+     */
+    private int getParamIndex(int reg) {
+        if (!isDefinitionMoveParam(reg)) {
+            return -1;
+        }
+
+        CstInsn origInsn = (CstInsn)
+                ssaMeth.getDefinitionForRegister(reg).getOriginalRopInsn();
+        return ((CstInteger) origInsn.getConstant()).getValue();
+    }
+}
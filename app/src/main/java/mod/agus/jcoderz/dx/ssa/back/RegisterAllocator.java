@@ -39,14 +39,17 @@ public abstract class RegisterAllocator {
     /** method being processed */
     protected final SsaMethod ssaMeth;
 
-    /** interference graph, indexed by register in both dimensions */
+    /**
+     * {@code null-ok;} interference graph, indexed by register in both
+     * dimensions, or {@code null} if the allocator does without one
+     */
     protected final mod.agus.jcoderz.dx.ssa.back.InterferenceGraph interference;
 
     /**
      * Creates an instance. Call {@code allocateRegisters} to run.
      * @param ssaMeth method to process.
-     * @param interference Interference graph, indexed by register in both
-     * dimensions.
+     * @param interference {@code null-ok;} Interference graph, indexed by
+     * register in both dimensions.
      */
     public RegisterAllocator(SsaMethod ssaMeth,
             InterferenceGraph interference) {
@@ -54,7 +54,10 @@ public class SsaToRop {
      */
     private final boolean minimizeRegisters;
 
-    /** {@code non-null;} interference graph */
+    /**
+     * {@code null-ok;} interference graph, {@code null} if registers are
+     * allocated by linear scan
+     */
     private final InterferenceGraph interference;
 
     /**
@@ -67,7 +70,23 @@ public class SsaToRop {
      */
     public static mod.agus.jcoderz.dx.rop.code.RopMethod convertToRopMethod(SsaMethod ssaMeth,
                                                                             boolean minimizeRegisters) {
-        return new SsaToRop(ssaMeth, minimizeRegisters).convert();
+        return convertToRopMethod(ssaMeth, minimizeRegisters, false);
+    }
+
+    /**
+     * Converts a method in SSA form to ROP form.
+     *
+     * @param ssaMeth {@code non-null;} method to process
+     * @param minimizeRegisters {@code true} if the converter should
+     * attempt to minimize the rop-form register count
+     * @param linearScan {@code true} to allocate registers with
+     * {@link LinearScanAllocator}, which is faster on large methods but
+     * ignores {@code minimizeRegisters}
+     * @return {@code non-null;} rop-form output
+     */
+    public static mod.agus.jcoderz.dx.rop.code.RopMethod convertToRopMethod(SsaMethod ssaMeth,
+                                                                            boolean minimizeRegisters, boolean linearScan) {
+        return new SsaToRop(ssaMeth, minimizeRegisters, linearScan).convert();
     }
 
     /**
@@ -76,12 +95,14 @@ public class SsaToRop {
      * @param ssaMethod {@code non-null;} method to process
      * @param minimizeRegisters {@code true} if the converter should
      * attempt to minimize the rop-form register count
+     * @param linearScan {@code true} to allocate registers by linear scan
      */
-    private SsaToRop(SsaMethod ssaMethod, boolean minimizeRegisters) {
+    private SsaToRop(SsaMethod ssaMethod, boolean minimizeRegisters,
+            boolean linearScan) {
         this.minimizeRegisters = minimizeRegisters;
         this.ssaMeth = ssaMethod;
-        this.interference =
-            LivenessAnalyzer.constructInterferenceGraph(ssaMethod);
+        this.interference = linearScan ? null
+                : LivenessAnalyzer.constructInterferenceGraph(ssaMethod);
     }
 
     /**
@@ -90,7 +111,7 @@ public class SsaToRop {
      * @return {@code non-null;} rop-form output
      */
     private mod.agus.jcoderz.dx.rop.code.RopMethod convert() {
-        if (DEBUG) {
+        if (DEBUG && interference != null) {
             interference.dumpToStdout();
         }
 
@@ -98,9 +119,13 @@ public class SsaToRop {
         // allocator = new NullRegisterAllocator(ssaMeth, interference);
         // allocator = new FirstFitAllocator(ssaMeth, interference);
 
-        RegisterAllocator allocator =
-            new FirstFitLocalCombiningAllocator(ssaMeth, interference,
-                    minimizeRegisters);
+        RegisterAllocator allocator;
+        if (interference == null) {
+            allocator = new LinearScanAllocator(ssaMeth);
+        } else {
+            allocator = new FirstFitLocalCombiningAllocator(ssaMeth,
+                    interference, minimizeRegisters);
+        }
 
         RegisterMapper mapper = allocator.allocateRegisters();
 
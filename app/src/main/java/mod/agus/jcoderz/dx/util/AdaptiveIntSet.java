@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mod.agus.jcoderz.dx.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A set of integers, represented by a sorted array while it is sparse and
+ * by a bit set once that takes less memory. An empty set allocates nothing,
+ * so sets kept per register or per block only cost what they hold.
+ */
+public final class AdaptiveIntSet implements IntSet {
+    /** initial length of {@link #values} */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** {@code >= 0;} expected bound of the values, sizes the bit set */
+    private final int max;
+
+    /**
+     * {@code null-ok;} the values in ascending order while sparse,
+     * {@code null} if empty or dense
+     */
+    private int[] values;
+
+    /** {@code null-ok;} the bit set once dense, {@code null} until then */
+    private int[] bits;
+
+    /** {@code >= 0;} count of values */
+    private int size;
+
+    /**
+     * Constructs an instance.
+     *
+     * @param max {@code >= 0;} the expected maximum value of ints in this
+     * set. Larger values may be added.
+     */
+    public AdaptiveIntSet(int max) {
+        this.max = max;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(int value) {
+        if (bits != null) {
+            ensureBitCapacity(value);
+            if (!Bits.get(bits, value)) {
+                Bits.set(bits, value);
+                size++;
+            }
+            return;
+        }
+
+        int index = indexOf(value);
+        if (index >= 0) {
+            return;
+        }
+        index = -(index + 1);
+
+        if (values == null) {
+            values = new int[INITIAL_CAPACITY];
+        } else if (size == values.length) {
+            if (shouldBeDense(size + 1, Math.max(value, values[size - 1]))) {
+                toBits(value);
+                Bits.set(bits, value);
+                size++;
+                return;
+            }
+            int[] newValues = new int[size * 2];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+        }
+
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove(int value) {
+        if (bits != null) {
+            if (value < Bits.getMax(bits) && Bits.get(bits, value)) {
+                Bits.clear(bits, value);
+                size--;
+            }
+            return;
+        }
+
+        int index = indexOf(value);
+        if (index >= 0) {
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean has(int value) {
+        if (bits != null) {
+            return value < Bits.getMax(bits) && Bits.get(bits, value);
+        }
+        return indexOf(value) >= 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void merge(IntSet other) {
+        if (other instanceof AdaptiveIntSet) {
+            AdaptiveIntSet o = (AdaptiveIntSet) other;
+            if (o.size == 0) {
+                return;
+            }
+
+            if (o.bits != null) {
+                if (bits == null) {
+                    toBits(Bits.getMax(o.bits) - 1);
+                }
+                ensureBitCapacity(Bits.getMax(o.bits) - 1);
+                Bits.or(bits, o.bits);
+                size = Bits.bitCount(bits);
+            } else if (bits != null) {
+                ensureBitCapacity(o.values[o.size - 1]);
+                for (int i = 0; i < o.size; i++) {
+                    Bits.set(bits, o.values[i]);
+                }
+                size = Bits.bitCount(bits);
+            } else {
+                mergeSorted(o.values, o.size);
+            }
+        } else {
+            IntIterator iter = other.iterator();
+            while (iter.hasNext()) {
+                add(iter.next());
+            }
+        }
+    }
+
+    /**
+     * Merges sorted {@code otherValues} into the sparse values in one pass,
+     * switching to a bit set if the union is dense.
+     */
+    private void mergeSorted(int[] otherValues, int otherSize) {
+        int[] merged = new int[size + otherSize];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < otherSize) {
+            int a = values[i];
+            int b = otherValues[j];
+            if (a <= b) {
+                merged[count++] = a;
+                i++;
+                if (a == b) {
+                    j++;
+                }
+            } else {
+                merged[count++] = b;
+                j++;
+            }
+        }
+        while (i < size) {
+            merged[count++] = values[i++];
+        }
+        while (j < otherSize) {
+            merged[count++] = otherValues[j++];
+        }
+
+        values = merged;
+        size = count;
+        if (shouldBeDense(count, merged[count - 1])) {
+            toBits(merged[count - 1]);
+        }
+    }
+
+    /**
+     * Returns whether {@code count} values up to {@code largest} take less
+     * memory as a bit set than as an array.
+     */
+    private boolean shouldBeDense(int count, int largest) {
+        int bitSetWords = (Math.max(max, largest + 1) + 0x1f) >> 5;
+        return count > bitSetWords;
+    }
+
+    /**
+     * Switches to a bit set large enough for {@code largest} and the values.
+     */
+    private void toBits(int largest) {
+        if (size > 0) {
+            largest = Math.max(largest, values[size - 1]);
+        }
+        bits = Bits.makeBitSet(Math.max(max, largest + 1));
+        for (int i = 0; i < size; i++) {
+            Bits.set(bits, values[i]);
+        }
+        values = null;
+    }
+
+    /**
+     * Ensures that the bit set has the capacity to represent the given value.
+     *
+     * @param value {@code >= 0;} value to represent
+     */
+    private void ensureBitCapacity(int value) {
+        if (value >= Bits.getMax(bits)) {
+            int[] newBits = Bits.makeBitSet(Math.max(value + 1, 2 * Bits.getMax(bits)));
+            System.arraycopy(bits, 0, newBits, 0, bits.length);
+            bits = newBits;
+        }
+    }
+
+    /**
+     * Binary search of the sparse values.
+     *
+     * @return the index of {@code value}, or {@code (-(insertion point) - 1)}
+     */
+    private int indexOf(int value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midValue = values[mid];
+            if (midValue < value) {
+                low = mid + 1;
+            } else if (midValue > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int elements() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IntIterator iterator() {
+        if (bits != null) {
+            return new IntIterator() {
+                private int idx = Bits.findFirst(bits, 0);
+
+                /** {@inheritDoc} */
+                @Override
+                public boolean hasNext() {
+                    return idx >= 0;
+                }
+
+                /** {@inheritDoc} */
+                @Override
+                public int next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    int ret = idx;
+                    idx = Bits.findFirst(bits, idx + 1);
+                    return ret;
+                }
+            };
+        }
+
+        return new IntIterator() {
+            private int idx = 0;
+
+            /** {@inheritDoc} */
+            @Override
+            public boolean hasNext() {
+                return idx < size;
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public int next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return values[idx++];
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('{');
+
+        boolean first = true;
+        for (IntIterator iter = iterator(); iter.hasNext(); ) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(iter.next());
+        }
+
+        sb.append('}');
+
+        return sb.toString();
+    }
+}
@@ -48,6 +48,12 @@ public final class ByteArrayAnnotatedOutput
     /** {@code >= 0;} current output cursor */
     private int cursor;
 
+    /**
+     * {@code >= 0;} cursor value of the first byte of {@link #data}, only
+     * non-zero for a {@link #window}
+     */
+    private int origin;
+
     /** whether annotations are to be verbose */
     private boolean verbose;
 
@@ -79,6 +85,48 @@ public final class ByteArrayAnnotatedOutput
         this(data, false);
     }
 
+    /**
+     * Constructs an instance with a fixed maximum size whose cursor
+     * starts at the given position, so that several instances can write
+     * disjoint regions of the same array. The bytes before the cursor
+     * are left alone.
+     *
+     * @param data {@code non-null;} data array to use for output
+     * @param cursor {@code >= 0;} position to start writing at
+     */
+    public ByteArrayAnnotatedOutput(byte[] data, int cursor) {
+        this(data, false);
+
+        if ((cursor < 0) || (cursor > data.length)) {
+            throwBounds();
+        }
+
+        this.cursor = cursor;
+    }
+
+    /**
+     * Constructs an instance with a fixed maximum size that holds a
+     * window of a larger output, starting at {@code origin}. The cursor
+     * starts at {@code origin} and the byte written there goes to
+     * {@code data[0]}, so a part of a file can be written on its own
+     * with the cursor values it would have when writing the whole file.
+     * A window does not keep annotations.
+     *
+     * @param data {@code non-null;} data array to use for output
+     * @param origin {@code >= 0;} cursor value of {@code data[0]}
+     * @return {@code non-null;} the window
+     */
+    public static ByteArrayAnnotatedOutput window(byte[] data, int origin) {
+        if (origin < 0) {
+            throw new IllegalArgumentException("origin < 0");
+        }
+
+        ByteArrayAnnotatedOutput result = new ByteArrayAnnotatedOutput(data, false);
+        result.origin = origin;
+        result.cursor = origin;
+        return result;
+    }
+
     /**
      * Constructs a "stretchy" instance. The underlying array may be
      * reallocated. The constructed instance does not keep annotations
@@ -139,8 +187,8 @@ public final class ByteArrayAnnotatedOutput
      * @return {@code non-null;} an appropriately-constructed array
      */
     public byte[] toByteArray() {
-        byte[] result = new byte[cursor];
-        System.arraycopy(data, 0, result, 0, cursor);
+        byte[] result = new byte[cursor - origin];
+        System.arraycopy(data, 0, result, 0, result.length);
         return result;
     }
 
@@ -162,7 +210,7 @@ public final class ByteArrayAnnotatedOutput
     /** {@inheritDoc} */
     @Override
     public void writeByte(int value) {
-        int writeAt = cursor;
+        int writeAt = cursor - origin;
         int end = writeAt + 1;
 
         if (stretchy) {
@@ -173,13 +221,13 @@ public final class ByteArrayAnnotatedOutput
         }
 
         data[writeAt] = (byte) value;
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
     @Override
     public void writeShort(int value) {
-        int writeAt = cursor;
+        int writeAt = cursor - origin;
         int end = writeAt + 2;
 
         if (stretchy) {
@@ -191,13 +239,13 @@ public final class ByteArrayAnnotatedOutput
 
         data[writeAt] = (byte) value;
         data[writeAt + 1] = (byte) (value >> 8);
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
     @Override
     public void writeInt(int value) {
-        int writeAt = cursor;
+        int writeAt = cursor - origin;
         int end = writeAt + 4;
 
         if (stretchy) {
@@ -211,13 +259,13 @@ public final class ByteArrayAnnotatedOutput
         data[writeAt + 1] = (byte) (value >> 8);
         data[writeAt + 2] = (byte) (value >> 16);
         data[writeAt + 3] = (byte) (value >> 24);
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
     @Override
     public void writeLong(long value) {
-        int writeAt = cursor;
+        int writeAt = cursor - origin;
         int end = writeAt + 8;
 
         if (stretchy) {
@@ -239,14 +287,14 @@ public final class ByteArrayAnnotatedOutput
         data[writeAt + 6] = (byte) (half >> 16);
         data[writeAt + 7] = (byte) (half >> 24);
 
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
     @Override
     public int writeUleb128(int value) {
         if (stretchy) {
-            ensureCapacity(cursor + 5); // pessimistic
+            ensureCapacity(cursor - origin + 5); // pessimistic
         }
         int cursorBefore = cursor;
         Leb128.writeUnsignedLeb128(this, value);
@@ -257,7 +305,7 @@ public final class ByteArrayAnnotatedOutput
     @Override
     public int writeSleb128(int value) {
         if (stretchy) {
-            ensureCapacity(cursor + 5); // pessimistic
+            ensureCapacity(cursor - origin + 5); // pessimistic
         }
         int cursorBefore = cursor;
         Leb128.writeSignedLeb128(this, value);
@@ -268,7 +316,7 @@ public final class ByteArrayAnnotatedOutput
     @Override
     public void write(ByteArray bytes) {
         int blen = bytes.size();
-        int writeAt = cursor;
+        int writeAt = cursor - origin;
         int end = writeAt + blen;
 
         if (stretchy) {
@@ -279,13 +327,13 @@ public final class ByteArrayAnnotatedOutput
         }
 
         bytes.getBytes(data, writeAt);
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
     @Override
     public void write(byte[] bytes, int offset, int length) {
-        int writeAt = cursor;
+        int writeAt = cursor - origin;
         int end = writeAt + length;
         int bytesEnd = offset + length;
 
@@ -304,7 +352,7 @@ public final class ByteArrayAnnotatedOutput
         }
 
         System.arraycopy(bytes, offset, data, writeAt, length);
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
@@ -320,7 +368,8 @@ public final class ByteArrayAnnotatedOutput
             throw new IllegalArgumentException("count < 0");
         }
 
-        int end = cursor + count;
+        int writeAt = cursor - origin;
+        int end = writeAt + count;
 
         if (stretchy) {
             ensureCapacity(end);
@@ -332,9 +381,9 @@ public final class ByteArrayAnnotatedOutput
         /*
          * We need to write zeroes, since the array might be reused across different dx invocations.
          */
-        Arrays.fill(data, cursor, end, (byte) 0);
+        Arrays.fill(data, writeAt, end, (byte) 0);
 
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
@@ -346,7 +395,8 @@ public final class ByteArrayAnnotatedOutput
             throw new IllegalArgumentException("bogus alignment");
         }
 
-        int end = (cursor + mask) & ~mask;
+        int writeAt = cursor - origin;
+        int end = ((cursor + mask) & ~mask) - origin;
 
         if (stretchy) {
             ensureCapacity(end);
@@ -358,9 +408,9 @@ public final class ByteArrayAnnotatedOutput
         /*
          * We need to write zeroes, since the array might be reused across different dx invocations.
          */
-        Arrays.fill(data, cursor, end, (byte) 0);
+        Arrays.fill(data, writeAt, end, (byte) 0);
 
-        cursor = end;
+        cursor = origin + end;
     }
 
     /** {@inheritDoc} */
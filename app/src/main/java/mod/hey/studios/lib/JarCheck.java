@@ -1,9 +1,19 @@
 package mod.hey.studios.lib;
 
-import java.io.EOFException;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 // used to check the java version of a JAR file
@@ -13,55 +23,371 @@ public final class JarCheck {
 	private static final int chunkLength = 8;
 	private static final byte[] expectedMagicNumber = { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe };
 
-	public static boolean checkJar(String jarFilename, int low, int high) {
-		boolean success = true;
-		FileInputStream fis;
-		ZipInputStream zip = null;
+	// constant pool tags, see JVMS 4.4
+	private static final int CONSTANT_Utf8 = 1;
+	private static final int CONSTANT_Integer = 3;
+	private static final int CONSTANT_Float = 4;
+	private static final int CONSTANT_Long = 5;
+	private static final int CONSTANT_Double = 6;
+	private static final int CONSTANT_Class = 7;
+	private static final int CONSTANT_String = 8;
+	private static final int CONSTANT_Fieldref = 9;
+	private static final int CONSTANT_Methodref = 10;
+	private static final int CONSTANT_InterfaceMethodref = 11;
+	private static final int CONSTANT_NameAndType = 12;
+	private static final int CONSTANT_MethodHandle = 15;
+	private static final int CONSTANT_MethodType = 16;
+	private static final int CONSTANT_Dynamic = 17;
+	private static final int CONSTANT_InvokeDynamic = 18;
+	private static final int CONSTANT_Module = 19;
+	private static final int CONSTANT_Package = 20;
 
+	public static boolean checkJar(String jarFilename, int low, int high) {
 		try {
+			Report report = scan(jarFilename, high, false, 1);
+			return report.isWithin(low, high);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Scans the class files of a jar through its central directory.
+	 *
+	 * Unless features are inspected only the first 8 bytes of every class are
+	 * inflated. Scanning stops at the first class that is malformed, newer than
+	 * {@code maxMajorVersion} or, when inspected, uses invokedynamic or nest or
+	 * record attributes, so the report is partial in that case.
+	 *
+	 * @param maxMajorVersion the newest class file major version that is accepted
+	 * @param inspectFeatures whether to parse the constant pool and attributes of every class
+	 * @param parallelism the number of threads the entries are split across
+	 */
+	public static Report scan(String jarFilename, int maxMajorVersion, boolean inspectFeatures, int parallelism) throws IOException {
+		try (ZipFile zip = new ZipFile(jarFilename)) {
+			List<ZipEntry> entries = new ArrayList<>();
+			Enumeration<? extends ZipEntry> enumeration = zip.entries();
+			while (enumeration.hasMoreElements()) {
+				ZipEntry entry = enumeration.nextElement();
+				if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+					entries.add(entry);
+				}
+			}
+
+			AtomicBoolean stop = new AtomicBoolean();
+			int threads = Math.max(1, Math.min(parallelism, entries.size()));
+			if (threads == 1) {
+				return scanEntries(zip, entries, 0, 1, maxMajorVersion, inspectFeatures, stop);
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
 			try {
-				fis = new FileInputStream(jarFilename);
-				zip = new ZipInputStream(fis);
+				List<Future<Report>> futures = new ArrayList<>();
+				for (int i = 0; i < threads; i++) {
+					int offset = i;
+					futures.add(executor.submit(() ->
+							scanEntries(zip, entries, offset, threads, maxMajorVersion, inspectFeatures, stop)));
+				}
+				Report report = new Report();
+				for (Future<Report> future : futures) {
+					report.merge(future.get());
+				}
+				return report;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Scan of " + jarFilename + " interrupted", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				throw new IOException("Failed to scan " + jarFilename, cause);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
 
-				entryLoop: while (true) {
-					ZipEntry entry = zip.getNextEntry();
+	/**
+	 * Scans the class files of a jar that can only be read as a stream, like
+	 * the classes.jar nested in an aar. The entries are inflated one after the
+	 * other on the calling thread, scanning stops as in
+	 * {@link #scan(String, int, boolean, int)}.
+	 *
+	 * @param jarStream the jar, which is not closed
+	 * @param maxMajorVersion the newest class file major version that is accepted
+	 * @param inspectFeatures whether to parse the constant pool and attributes of every class
+	 */
+	public static Report scan(InputStream jarStream, int maxMajorVersion, boolean inspectFeatures) throws IOException {
+		Report report = new Report();
+		ZipInputStream zip = new ZipInputStream(jarStream);
+		ZipEntry entry;
+		while ((entry = zip.getNextEntry()) != null) {
+			if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+				continue;
+			}
+			byte[] bytes = inspectFeatures ? readAll(zip) : readChunk(zip);
+			if (!scanClass(bytes, inspectFeatures, report)) {
+				report.malformed = true;
+			}
+			report.classCount++;
+			if (report.malformed || report.maxMajorVersion > maxMajorVersion || report.usesNewFeatures()) {
+				report.firstOffender = entry.getName();
+				break;
+			}
+		}
+		return report;
+	}
 
-					if (entry == null)
-						break;
+	private static Report scanEntries(ZipFile zip, List<ZipEntry> entries, int offset, int step,
+			int maxMajorVersion, boolean inspectFeatures, AtomicBoolean stop) throws IOException {
+		Report report = new Report();
+		for (int i = offset; i < entries.size() && !stop.get(); i += step) {
+			ZipEntry entry = entries.get(i);
+			byte[] bytes;
+			try (InputStream in = zip.getInputStream(entry)) {
+				bytes = inspectFeatures ? readAll(in) : readChunk(in);
+			}
+			if (!scanClass(bytes, inspectFeatures, report)) {
+				report.malformed = true;
+			}
+			report.classCount++;
+			if (report.malformed || report.maxMajorVersion > maxMajorVersion || report.usesNewFeatures()) {
+				report.firstOffender = entry.getName();
+				stop.set(true);
+			}
+		}
+		return report;
+	}
 
-					String elementName = entry.getName();
-					if (!elementName.endsWith(".class"))
-						continue;
+	private static byte[] readChunk(InputStream in) throws IOException {
+		byte[] chunk = new byte[chunkLength];
+		int bytesRead = 0;
+		while (bytesRead < chunkLength) {
+			int read = in.read(chunk, bytesRead, chunkLength - bytesRead);
+			if (read == -1) {
+				break;
+			}
+			bytesRead += read;
+		}
+		if (bytesRead == chunkLength) {
+			return chunk;
+		}
+		byte[] truncated = new byte[bytesRead];
+		System.arraycopy(chunk, 0, truncated, 0, bytesRead);
+		return truncated;
+	}
 
-					byte[] chunk = new byte[chunkLength];
-					int bytesRead = zip.read(chunk, 0, chunkLength);
-					zip.closeEntry();
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
 
-					if (bytesRead != chunkLength) {
-						success = false;
-						continue;
-					}
+	/**
+	 * @return false if the class file is malformed
+	 */
+	private static boolean scanClass(byte[] bytes, boolean inspectFeatures, Report report) {
+		if (bytes.length < chunkLength) {
+			return false;
+		}
+		for (int i = 0; i < expectedMagicNumber.length; i++) {
+			if (bytes[i] != expectedMagicNumber[i]) {
+				return false;
+			}
+		}
 
-					for (int i = 0; i < expectedMagicNumber.length; i++) {
-						if (chunk[i] != expectedMagicNumber[i]) {
-							success = false;
-							continue entryLoop;
-						}
-					}
+		int major = u2(bytes, chunkLength - 2);
+		report.maxMajorVersion = Math.max(report.maxMajorVersion, major);
+		report.minMajorVersion = Math.min(report.minMajorVersion, major);
 
-					int major = ((chunk[chunkLength - 2] & 0xff) << 8) + (chunk[chunkLength - 1] & 0xff);
+		if (!inspectFeatures) {
+			return true;
+		}
+		try {
+			scanStructure(bytes, report);
+			return true;
+		} catch (IndexOutOfBoundsException e) {
+			// truncated class file
+			return false;
+		}
+	}
 
-					if (!(low <= major && major <= high)) {
-						success = false;
-					}
+	/**
+	 * Walks the constant pool, fields and methods just far enough to see the
+	 * class attributes, no bytecode is decoded.
+	 */
+	private static void scanStructure(byte[] bytes, Report report) {
+		int count = u2(bytes, chunkLength);
+		String[] utf8 = new String[count];
+		int pos = chunkLength + 2;
+		for (int i = 1; i < count; i++) {
+			int tag = bytes[pos] & 0xff;
+			pos++;
+			switch (tag) {
+				case CONSTANT_Utf8: {
+					int length = u2(bytes, pos);
+					// attribute names are plain ascii, others are never compared
+					utf8[i] = new String(bytes, pos + 2, length, StandardCharsets.ISO_8859_1);
+					pos += 2 + length;
+					break;
 				}
-			} catch (EOFException ignored) {
+				case CONSTANT_Integer:
+				case CONSTANT_Float:
+				case CONSTANT_Fieldref:
+				case CONSTANT_Methodref:
+				case CONSTANT_InterfaceMethodref:
+				case CONSTANT_NameAndType:
+				case CONSTANT_Dynamic:
+					pos += 4;
+					break;
+				case CONSTANT_InvokeDynamic:
+					report.invokeDynamic = true;
+					pos += 4;
+					break;
+				case CONSTANT_Long:
+				case CONSTANT_Double:
+					pos += 8;
+					// takes two constant pool slots
+					i++;
+					break;
+				case CONSTANT_Class:
+				case CONSTANT_String:
+				case CONSTANT_MethodType:
+				case CONSTANT_Module:
+				case CONSTANT_Package:
+					pos += 2;
+					break;
+				case CONSTANT_MethodHandle:
+					pos += 3;
+					break;
+				default:
+					throw new ArrayIndexOutOfBoundsException("unknown constant pool tag " + tag);
 			}
+		}
 
-			zip.close();
-			return success;
-		} catch (IOException e) {
-			return false;
+		// access flags, this class, super class
+		pos += 6;
+		pos += 2 + 2 * u2(bytes, pos);
+		// fields, then methods
+		for (int member = 0; member < 2; member++) {
+			int memberCount = u2(bytes, pos);
+			pos += 2;
+			for (int i = 0; i < memberCount; i++) {
+				pos = skipAttributes(bytes, pos + 6);
+			}
+		}
+
+		int attributeCount = u2(bytes, pos);
+		pos += 2;
+		for (int i = 0; i < attributeCount; i++) {
+			String name = utf8[u2(bytes, pos)];
+			if ("NestHost".equals(name) || "NestMembers".equals(name)) {
+				report.nestAttributes = true;
+			} else if ("Record".equals(name)) {
+				report.recordAttribute = true;
+			}
+			pos += 6 + u4(bytes, pos + 2);
+		}
+	}
+
+	private static int skipAttributes(byte[] bytes, int pos) {
+		int attributeCount = u2(bytes, pos);
+		pos += 2;
+		for (int i = 0; i < attributeCount; i++) {
+			pos += 6 + u4(bytes, pos + 2);
+		}
+		return pos;
+	}
+
+	private static int u2(byte[] bytes, int pos) {
+		return ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+	}
+
+	private static int u4(byte[] bytes, int pos) {
+		return (u2(bytes, pos) << 16) | u2(bytes, pos + 2);
+	}
+
+	/**
+	 * Result of a jar scan. Features are only reported when they were inspected.
+	 */
+	public static final class Report {
+
+		private int classCount;
+		private int minMajorVersion = Integer.MAX_VALUE;
+		private int maxMajorVersion;
+		private boolean malformed;
+		private boolean invokeDynamic;
+		private boolean nestAttributes;
+		private boolean recordAttribute;
+		private String firstOffender;
+
+		/**
+		 * @return the number of classes scanned before the scan completed or stopped
+		 */
+		public int getClassCount() {
+			return classCount;
+		}
+
+		/**
+		 * @return the newest class file major version seen, 0 if there are no classes
+		 */
+		public int getMaxMajorVersion() {
+			return maxMajorVersion;
+		}
+
+		public boolean isMalformed() {
+			return malformed;
+		}
+
+		public boolean usesInvokeDynamic() {
+			return invokeDynamic;
+		}
+
+		public boolean hasNestAttributes() {
+			return nestAttributes;
+		}
+
+		public boolean hasRecordAttribute() {
+			return recordAttribute;
+		}
+
+		/**
+		 * @return true if any class needs desugaring before it can be dexed for old devices
+		 */
+		public boolean usesNewFeatures() {
+			return invokeDynamic || nestAttributes || recordAttribute;
+		}
+
+		/**
+		 * @return the class that stopped the scan, or null if every class was scanned
+		 */
+		public String getFirstOffender() {
+			return firstOffender;
+		}
+
+		/**
+		 * @return true if every class is well formed and its major version in the range
+		 */
+		public boolean isWithin(int low, int high) {
+			return !malformed && (classCount == 0 || (low <= minMajorVersion && maxMajorVersion <= high));
+		}
+
+		private void merge(Report other) {
+			classCount += other.classCount;
+			minMajorVersion = Math.min(minMajorVersion, other.minMajorVersion);
+			maxMajorVersion = Math.max(maxMajorVersion, other.maxMajorVersion);
+			malformed |= other.malformed;
+			invokeDynamic |= other.invokeDynamic;
+			nestAttributes |= other.nestAttributes;
+			recordAttribute |= other.recordAttribute;
+			if (firstOffender == null) {
+				firstOffender = other.firstOffender;
+			}
 		}
 	}
 }
@@ -0,0 +1,45 @@
+/*
+ *  MIT License
+ *  Copyright (c) 2023 EUP
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package eup.dependency.haven.api;
+
+import eup.dependency.haven.model.Dependency;
+import java.util.List;
+
+/**
+ * An index of libraries whose processed output is already current.
+ *
+ * <p>When attached to a {@link eup.dependency.haven.resolver.DependencyResolver} the resolver
+ * consults the index before searching repositories, so that already processed dependencies do not
+ * need their POM downloaded or parsed again.
+ *
+ * @author EUP
+ */
+public interface ProcessedLibraryIndex {
+
+  /**
+   * Gets the direct dependencies recorded for an already processed library.
+   *
+   * @param dependency the dependency to look up
+   * @return the recorded direct dependencies if the processed output is current, or {@code null}
+   *     if the dependency must be resolved and processed again
+   */
+  List<Dependency> getProcessedDependencies(Dependency dependency);
+}
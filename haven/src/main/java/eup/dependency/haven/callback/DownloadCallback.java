@@ -46,9 +46,11 @@ public interface DownloadCallback {
   void warning(String message);
 
   /**
-   * Called when downloading files for the given dependencies has completed
+   * Called when downloading files for the given dependencies has completed. Only used by {@link
+   * eup.dependency.haven.repository.StorageFactory#downloadLibraries}, callers that download one
+   * library at a time need not implement it.
    *
    * @param cachedLibraryList the list of the downloaded files in cache
    */
-  void done(List<CachedLibrary> cachedLibraryList);
+  default void done(List<CachedLibrary> cachedLibraryList) {}
 }
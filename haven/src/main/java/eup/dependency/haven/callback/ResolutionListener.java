@@ -0,0 +1,45 @@
+/*
+ *  MIT License
+ *  Copyright (c) 2023 EUP
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package eup.dependency.haven.callback;
+
+import eup.dependency.haven.model.Dependency;
+
+/**
+ * An interface to receive dependencies one at a time while a resolution is still running.
+ *
+ * <p>Both methods are called on the resolution thread, so an implementation that blocks slows
+ * down resolution.
+ *
+ * @author EUP
+ */
+public interface ResolutionListener {
+
+  /**
+   * Called as soon as a dependency is resolved, its packaging and direct dependencies are known
+   * at this point.
+   *
+   * @param dependency the resolved dependency
+   */
+  void onDependencyResolved(Dependency dependency);
+
+  /** Called once when resolution stops, whether it succeeded, failed or was cancelled. */
+  void onResolutionFinished();
+}
@@ -266,14 +266,9 @@ public class LocalStorageFactory implements StorageFactory {
         continue; // Ignore this null entry and proceed to the next dependency
       }
 
-      File library = getLibrary(new Pom(dependency));
+      CachedLibrary cachedLibrary = downloadLibrary(dependency);
       // track all cached libraries
-      if (library != null) {
-        CachedLibrary cachedLibrary = new CachedLibrary();
-        cachedLibrary.setSourcePath(library.getAbsolutePath());
-        // add the dependency coordinates to pom
-        Pom cachedPom = new Pom(dependency.getCoordinates());
-        cachedLibrary.setLibraryPom(cachedPom);
+      if (cachedLibrary != null) {
         cachedLibraryList.add(cachedLibrary);
       }
     }
@@ -283,6 +278,35 @@ public class LocalStorageFactory implements StorageFactory {
     }
   }
 
+  @Override
+  public CachedLibrary downloadLibrary(Dependency dependency) {
+    // add the dependency coordinates and its direct dependencies to pom
+    Pom cachedPom = new Pom(dependency.getCoordinates());
+    cachedPom.setDependency(dependency);
+    if (resolver != null) {
+      cachedPom.setDependencies(new ArrayList<>(resolver.getDirectDependencies(dependency)));
+    }
+
+    // already processed libraries need no artifact, they are tracked without a source file
+    if (resolver != null && resolver.isProcessed(dependency)) {
+      if (downloadCallback != null) {
+        downloadCallback.info("Skipped downloading already processed " + dependency);
+      }
+      CachedLibrary cachedLibrary = new CachedLibrary();
+      cachedLibrary.setLibraryPom(cachedPom);
+      return cachedLibrary;
+    }
+
+    File library = getLibrary(new Pom(dependency));
+    if (library == null) {
+      return null;
+    }
+    CachedLibrary cachedLibrary = new CachedLibrary();
+    cachedLibrary.setSourcePath(library.getAbsolutePath());
+    cachedLibrary.setLibraryPom(cachedPom);
+    return cachedLibrary;
+  }
+
   @Override
   public void setDownloadCallback(DownloadCallback callback) {
     if (callback == null) {
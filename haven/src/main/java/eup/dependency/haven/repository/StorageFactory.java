@@ -20,6 +20,7 @@
 
 package eup.dependency.haven.repository;
 
+import eup.dependency.haven.api.CachedLibrary;
 import eup.dependency.haven.callback.DownloadCallback;
 import eup.dependency.haven.model.Dependency;
 import eup.dependency.haven.model.Pom;
@@ -81,6 +82,17 @@ public interface StorageFactory {
    */
   void downloadLibraries(Pom pom);
 
+  /**
+   * Downloads the library of a single resolved dependency.
+   *
+   * <p>Safe to call from several threads at once, which lets libraries be fetched while
+   * resolution is still running.
+   *
+   * @param dependency The resolved dependency.
+   * @return The cached library, or null if no artifact was found.
+   */
+  CachedLibrary downloadLibrary(Dependency dependency);
+
   /**
    * Sets the download callback for the factory.
    *
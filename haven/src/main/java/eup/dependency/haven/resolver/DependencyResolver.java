@@ -1,7 +1,9 @@
 package eup.dependency.haven.resolver;
 
+import eup.dependency.haven.api.ProcessedLibraryIndex;
 import eup.dependency.haven.async.AsyncTaskExecutor;
 import eup.dependency.haven.callback.DependencyResolutionCallback;
+import eup.dependency.haven.callback.ResolutionListener;
 import eup.dependency.haven.model.Coordinates;
 import eup.dependency.haven.model.Dependency;
 import eup.dependency.haven.model.Pom;
@@ -28,6 +30,7 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -55,6 +58,15 @@ public class DependencyResolver implements Repository {
   private DependencyResolutionSkipper skipper;
   public final List<RemoteRepository> repositories;
   private boolean skipInnerDependencies = false;
+  // index of already processed libraries, used to skip resolving current subtrees
+  private ProcessedLibraryIndex processedLibraryIndex;
+  // direct dependencies of every resolved dependency keyed by its coordinates, read by
+  // resolution listeners on other threads while resolution is still running
+  private final Map<String, List<Dependency>> directDependencies = new ConcurrentHashMap<>();
+  // coordinates of resolved dependencies whose processed output is already current
+  private final Set<String> processedDependencies = ConcurrentHashMap.newKeySet();
+  // receives each dependency as soon as it resolves
+  private ResolutionListener resolutionListener;
 
   // TODO: REWORK THIS CLASS TO USE POM INSTEAD OF DEPENDEBCY WHILE ITERATING
   // SO THAT I CLOUD PRIORITIZE HIGHER VERSIONS OF POMS USING MAP WITH OREFERENCE TO HIGHER POM
@@ -99,6 +111,8 @@ public class DependencyResolver implements Repository {
     this.unresolvedDependencies.clear();
     this.seen.clear();
     this.queue.clear();
+    this.directDependencies.clear();
+    this.processedDependencies.clear();
 
     try {
         long startTime = System.currentTimeMillis();
@@ -106,80 +120,13 @@ public class DependencyResolver implements Repository {
 
         AsyncTaskExecutor.loadTaskAsync(
             () -> {
-                Dependency rootDependency = new Dependency(coordinates);
-                
-                if (skipInnerDependencies) {
-                    InputStream pomStream = searchRepositories(rootDependency);
-                    if (pomStream == null) {
-                        unresolvedDependencies.add(rootDependency);
-                        return null; // Failure
-                    }
-                    try {
-                        Pom parsedPom = resolvePom(pomStream);
-                        String packaging = parsedPom.getCoordinates().getPackaging();
-                        if (packaging != null && !packaging.isEmpty()) {
-                            rootDependency.setType(packaging);
-                        }
-                        resolvedDependencies.add(rootDependency);
-                    } finally {
-                        pomStream.close();
-                    }
-                    return resolvedDependencies;
-                }
-
-                // --- Start: Full Transitive Dependency Resolution (BFS) ---
-                queue.add(rootDependency);
-                seen.add(rootDependency);
-
-                while (!queue.isEmpty()) {
-                    if (isCancelled) break;
-
-                    Dependency currentDependency = queue.poll();
-                    callback.info("Resolving: " + currentDependency);
-                    
-                    InputStream pomStream = searchRepositories(currentDependency);
-                    if (pomStream == null) {
-                        callback.warning("Could not find POM for: " + currentDependency);
-                        unresolvedDependencies.add(currentDependency);
-                        continue; // Skip to next dependency in queue
-                    }
-
-                    try {
-                        Pom parsedPom = resolvePom(pomStream);
-                        
-                        // Set packaging type if not already set
-                        if (currentDependency.getType() == null || currentDependency.getType().isEmpty()) {
-                            String packaging = parsedPom.getCoordinates().getPackaging();
-                            if (packaging != null && !packaging.isEmpty()) {
-                                currentDependency.setType(packaging);
-                            }
-                        }
-                        
-                        // Add the successfully resolved dependency to the final list
-                        if (!resolvedDependencies.contains(currentDependency)) {
-                            resolvedDependencies.add(currentDependency);
-                        }
-                        
-                        // Add its children to the queue
-                        for (Dependency child : parsedPom.getDependencies()) {
-                            if (!seen.contains(child)) {
-                                seen.add(child);
-                                queue.add(child);
-                            }
-                        }
-                    } finally {
-                        pomStream.close();
-                    }
+              try {
+                return resolveAll();
+              } finally {
+                if (resolutionListener != null) {
+                  resolutionListener.onResolutionFinished();
                 }
-                // --- End: Full Transitive Dependency Resolution (BFS) ---
-
-                if (isCancelled) return Collections.emptyList();
-                
-                if (resolvedDependencies.isEmpty()) {
-                    return null; // Indicate failure
-                }
-
-                return resolvedDependencies;
+              }
             },
             (List<Dependency> resultDependencies) -> {
                 long endTime = System.currentTimeMillis();
@@ -201,6 +148,120 @@ public class DependencyResolver implements Repository {
     }
 }
 
+  /**
+   * Resolves the root coordinates, and unless inner dependencies are skipped all transitive
+   * dependencies breadth first.
+   *
+   * @return the resolved dependencies, or null if nothing could be resolved
+   */
+  private List<Dependency> resolveAll() throws IOException {
+    Dependency rootDependency = new Dependency(coordinates);
+    
+    if (skipInnerDependencies) {
+        if (getProcessedDependencies(rootDependency) != null) {
+            callback.info("Already processed: " + rootDependency + ", skipping POM resolution");
+            resolvedDependencies.add(rootDependency);
+            notifyResolved(rootDependency);
+            return resolvedDependencies;
+        }
+        InputStream pomStream = searchRepositories(rootDependency);
+        if (pomStream == null) {
+            unresolvedDependencies.add(rootDependency);
+            return null; // Failure
+        }
+        try {
+            Pom parsedPom = resolvePom(pomStream);
+            String packaging = parsedPom.getCoordinates().getPackaging();
+            if (packaging != null && !packaging.isEmpty()) {
+                rootDependency.setType(packaging);
+            }
+            // Recorded like in the full resolution, the manifest of the
+            // library lists them for later transitive resolutions
+            directDependencies.put(rootDependency.toString(), parsedPom.getDependencies());
+            resolvedDependencies.add(rootDependency);
+            notifyResolved(rootDependency);
+        } finally {
+            pomStream.close();
+        }
+        return resolvedDependencies;
+    }
+
+    // --- Start: Full Transitive Dependency Resolution (BFS) ---
+    queue.add(rootDependency);
+    seen.add(rootDependency);
+
+    while (!queue.isEmpty()) {
+        if (isCancelled) break;
+
+        Dependency currentDependency = queue.poll();
+        callback.info("Resolving: " + currentDependency);
+
+        // Short-circuit libraries whose processed output is current, their
+        // recorded children are queued without touching the POM at all
+        List<Dependency> processedChildren = getProcessedDependencies(currentDependency);
+        if (processedChildren != null) {
+            callback.info("Already processed: " + currentDependency + ", skipping POM resolution");
+            if (!resolvedDependencies.contains(currentDependency)) {
+                resolvedDependencies.add(currentDependency);
+                notifyResolved(currentDependency);
+            }
+            for (Dependency child : processedChildren) {
+                if (!seen.contains(child)) {
+                    seen.add(child);
+                    queue.add(child);
+                }
+            }
+            continue;
+        }
+        
+        InputStream pomStream = searchRepositories(currentDependency);
+        if (pomStream == null) {
+            callback.warning("Could not find POM for: " + currentDependency);
+            unresolvedDependencies.add(currentDependency);
+            continue; // Skip to next dependency in queue
+        }
+
+        try {
+            Pom parsedPom = resolvePom(pomStream);
+            
+            // Set packaging type if not already set
+            if (currentDependency.getType() == null || currentDependency.getType().isEmpty()) {
+                String packaging = parsedPom.getCoordinates().getPackaging();
+                if (packaging != null && !packaging.isEmpty()) {
+                    currentDependency.setType(packaging);
+                }
+            }
+            
+            directDependencies.put(currentDependency.toString(), parsedPom.getDependencies());
+
+            // Add the successfully resolved dependency to the final list
+            if (!resolvedDependencies.contains(currentDependency)) {
+                resolvedDependencies.add(currentDependency);
+                notifyResolved(currentDependency);
+            }
+
+            // Add its children to the queue
+            for (Dependency child : parsedPom.getDependencies()) {
+                if (!seen.contains(child)) {
+                    seen.add(child);
+                    queue.add(child);
+                }
+            }
+        } finally {
+            pomStream.close();
+        }
+    }
+    // --- End: Full Transitive Dependency Resolution (BFS) ---
+
+    if (isCancelled) return Collections.emptyList();
+    
+    if (resolvedDependencies.isEmpty()) {
+        return null; // Indicate failure
+    }
+
+    return resolvedDependencies;
+  }
+
   /**
    * Resolves a dependency and adds its direct and transitive to list
    *
@@ -374,6 +435,67 @@ public class DependencyResolver implements Repository {
     this.skipInnerDependencies = enabled;
   }
 
+  /**
+   * Sets a listener that receives each dependency as soon as it resolves, so its artifact can be
+   * fetched while the rest of the tree is still being resolved
+   *
+   * @param resolutionListener the listener, or {@code null} to only report the complete result
+   */
+  public void setResolutionListener(ResolutionListener resolutionListener) {
+    this.resolutionListener = resolutionListener;
+  }
+
+  private void notifyResolved(Dependency dependency) {
+    if (resolutionListener != null && !isCancelled) {
+      resolutionListener.onDependencyResolved(dependency);
+    }
+  }
+
+  /**
+   * Sets the index used to skip resolving libraries that have already been processed
+   *
+   * @param processedLibraryIndex the index to consult, or {@code null} to always resolve
+   */
+  public void setProcessedLibraryIndex(ProcessedLibraryIndex processedLibraryIndex) {
+    this.processedLibraryIndex = processedLibraryIndex;
+  }
+
+  /**
+   * Checks whether a resolved dependency was satisfied by the {@link ProcessedLibraryIndex}
+   *
+   * @param dependency the resolved dependency
+   * @return {@code true} if its processed output is already current
+   */
+  public boolean isProcessed(Dependency dependency) {
+    return dependency != null && processedDependencies.contains(dependency.toString());
+  }
+
+  /**
+   * Gets the direct dependencies recorded while resolving a dependency
+   *
+   * @param dependency the resolved dependency
+   * @return the direct dependencies, empty if none were recorded
+   */
+  public List<Dependency> getDirectDependencies(Dependency dependency) {
+    if (dependency == null) {
+      return Collections.emptyList();
+    }
+    List<Dependency> dependencies = directDependencies.get(dependency.toString());
+    return dependencies != null ? dependencies : Collections.emptyList();
+  }
+
+  private List<Dependency> getProcessedDependencies(Dependency dependency) {
+    if (processedLibraryIndex == null) {
+      return null;
+    }
+    List<Dependency> dependencies = processedLibraryIndex.getProcessedDependencies(dependency);
+    if (dependencies != null) {
+      processedDependencies.add(dependency.toString());
+      directDependencies.put(dependency.toString(), dependencies);
+    }
+    return dependencies;
+  }
+
   /**
    * Applies DFS (Depth First Search) to recrusively transverse a tree in order to all trace
    * transitive dependencies